@@ -21,7 +21,12 @@ public class Clothing extends Product {
     @Override
     public double calculateProfit() {
         // Clothing: lợi nhuận 30-40% (cao hơn vì giá trị gia tăng)
-        return (salePrice - importPrice) * stockQuantity * 1.1;
+        return (salePrice - importPrice) * getStockQuantity() * 1.1;
+    }
+
+    @Override
+    public Clothing copy() {
+        return new Clothing(id, name, category, importPrice, salePrice, getStockQuantity(), size, material);
     }
 
     @Override
@@ -32,7 +37,7 @@ public class Clothing extends Product {
     @Override
     public String toCSV() {
         return String.format("%s,%s,%s,%s,%.0f,%.0f,%d,%s,%s",
-                id, getProductType(), name, category, importPrice, salePrice, stockQuantity, size, material);
+                id, getProductType(), name, category, importPrice, salePrice, getStockQuantity(), size, material);
     }
 
     public String getSize() { return size; }
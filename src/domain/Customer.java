@@ -1,7 +1,5 @@
 package domain;
 
-import java.util.UUID;
-
 public class Customer {
     private String id;
     private String name;
@@ -12,7 +10,7 @@ public class Customer {
 
     // Constructor khi tạo mới
     public Customer(String name, String phone, String email, String address, CustomerType type) {
-        this.id = "CUS-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        this.id = EntityIds.next("CUS-");
         this.name = name;
         this.phone = phone;
         this.email = email;
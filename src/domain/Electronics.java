@@ -18,7 +18,12 @@ public class Electronics extends Product {
     @Override
     public double calculateProfit() {
         // Electronics: lợi nhuận 15-20% (tính trên tổng giá trị tồn kho)
-        return (salePrice - importPrice) * stockQuantity;
+        return (salePrice - importPrice) * getStockQuantity();
+    }
+
+    @Override
+    public Electronics copy() {
+        return new Electronics(id, name, category, importPrice, salePrice, getStockQuantity(), warrantyMonths);
     }
 
     @Override
@@ -29,7 +34,7 @@ public class Electronics extends Product {
     @Override
     public String toCSV() {
         return String.format("%s,%s,%s,%s,%.0f,%.0f,%d,%d,",
-                id, getProductType(), name, category, importPrice, salePrice, stockQuantity, warrantyMonths);
+                id, getProductType(), name, category, importPrice, salePrice, getStockQuantity(), warrantyMonths);
     }
 
     public int getWarrantyMonths() { return warrantyMonths; }
@@ -0,0 +1,34 @@
+package domain;
+
+import interfaces.IdGenerator;
+
+/**
+ * Nơi các entity lấy ID khi tạo mới.
+ * Mặc định dùng SnowflakeIdGenerator với mã node lấy từ thuộc tính hệ thống
+ * "warehouse.nodeId" (mặc định 0); có thể thay bằng cài đặt khác qua setGenerator().
+ */
+public final class EntityIds {
+    private static volatile IdGenerator generator =
+            new SnowflakeIdGenerator(Integer.getInteger("warehouse.nodeId", 0));
+
+    private EntityIds() {
+    }
+
+    public static IdGenerator getGenerator() {
+        return generator;
+    }
+
+    public static void setGenerator(IdGenerator generator) {
+        if (generator == null) {
+            throw new IllegalArgumentException("IdGenerator không được null");
+        }
+        EntityIds.generator = generator;
+    }
+
+    /**
+     * Sinh ID mới có tiền tố
+     */
+    public static String next(String prefix) {
+        return generator.nextId(prefix);
+    }
+}
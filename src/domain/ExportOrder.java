@@ -4,12 +4,14 @@ import java.time.LocalDate;
 
 public class ExportOrder extends Order {
     private Customer customer;
+    private CustomerType customerType; // loại khách chụp lúc gán khách và lúc xác nhận đơn
     private String deliveryAddress;
 
     // Constructor khi tạo mới
     public ExportOrder(LocalDate orderDate, Customer customer, String deliveryAddress) {
         super(orderDate);
         this.customer = customer;
+        this.customerType = customer != null ? customer.getType() : null;
         this.deliveryAddress = deliveryAddress;
     }
 
@@ -18,9 +20,21 @@ public class ExportOrder extends Order {
                        OrderStatus status, Customer customer, String deliveryAddress) {
         super(id, orderDate, totalAmount, status);
         this.customer = customer;
+        this.customerType = customer != null ? customer.getType() : null;
         this.deliveryAddress = deliveryAddress;
     }
 
+    /**
+     * Chụp loại khách và giá vốn của từng item tại thời điểm xác nhận, để doanh số/lợi nhuận
+     * của đơn không đổi theo các lần sửa khách hàng/giá nhập sau đó
+     */
+    public void captureConfirmationValues() {
+        customerType = customer != null ? customer.getType() : null;
+        for (OrderItem item : items) {
+            item.captureUnitCost();
+        }
+    }
+
     @Override
     public String getOrderType() {
         return "EXPORT";
@@ -28,7 +42,7 @@ public class ExportOrder extends Order {
 
     @Override
     protected String generateOrderId() {
-        return "EXP-" + System.currentTimeMillis();
+        return EntityIds.next("EXP-");
     }
 
     @Override
@@ -40,6 +54,16 @@ public class ExportOrder extends Order {
         this.totalAmount = total;
     }
 
+    @Override
+    public ExportOrder copy() {
+        ExportOrder copy = new ExportOrder(id, orderDate, totalAmount, status, customer, deliveryAddress);
+        copy.customerType = customerType;
+        for (OrderItem item : items) {
+            copy.items.add(item.copy());
+        }
+        return copy;
+    }
+
     @Override
     public String toCSV() {
         return String.format("%s,%s,%s,%.0f,%s,%s",
@@ -52,7 +76,11 @@ public class ExportOrder extends Order {
     }
 
     public Customer getCustomer() { return customer; }
-    public void setCustomer(Customer customer) { this.customer = customer; }
+    public void setCustomer(Customer customer) {
+        this.customer = customer;
+        this.customerType = customer != null ? customer.getType() : null;
+    }
+    public CustomerType getCustomerType() { return customerType; }
     public String getDeliveryAddress() { return deliveryAddress; }
     public void setDeliveryAddress(String deliveryAddress) { this.deliveryAddress = deliveryAddress; }
 
@@ -22,7 +22,7 @@ public class Food extends Product {
     @Override
     public double calculateProfit() {
         // Food: lợi nhuận 10-15% (thấp hơn vì dễ hỏng)
-        double baseProfit = (salePrice - importPrice) * stockQuantity;
+        double baseProfit = (salePrice - importPrice) * getStockQuantity();
         // Nếu gần hết hạn (< 30 ngày) thì giảm lợi nhuận
         if (isNearExpiry()) {
             return baseProfit * 0.7;
@@ -30,6 +30,11 @@ public class Food extends Product {
         return baseProfit * 0.9;
     }
 
+    @Override
+    public Food copy() {
+        return new Food(id, name, category, importPrice, salePrice, getStockQuantity(), expiryDate);
+    }
+
     @Override
     public String getProductType() {
         return "FOOD";
@@ -38,7 +43,7 @@ public class Food extends Product {
     @Override
     public String toCSV() {
         return String.format("%s,%s,%s,%s,%.0f,%.0f,%d,%s,",
-                id, getProductType(), name, category, importPrice, salePrice, stockQuantity,
+                id, getProductType(), name, category, importPrice, salePrice, getStockQuantity(),
                 expiryDate.format(DATE_FORMAT));
     }
 
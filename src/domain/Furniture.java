@@ -21,7 +21,12 @@ public class Furniture extends Product {
     @Override
     public double calculateProfit() {
         // Furniture: lợi nhuận 20-25%
-        return (salePrice - importPrice) * stockQuantity;
+        return (salePrice - importPrice) * getStockQuantity();
+    }
+
+    @Override
+    public Furniture copy() {
+        return new Furniture(id, name, category, importPrice, salePrice, getStockQuantity(), dimensions, weight);
     }
 
     @Override
@@ -32,7 +37,7 @@ public class Furniture extends Product {
     @Override
     public String toCSV() {
         return String.format("%s,%s,%s,%s,%.0f,%.0f,%d,%s,%.1f",
-                id, getProductType(), name, category, importPrice, salePrice, stockQuantity,
+                id, getProductType(), name, category, importPrice, salePrice, getStockQuantity(),
                 dimensions, weight);
     }
 
@@ -28,7 +28,7 @@ public class ImportOrder extends Order {
 
     @Override
     protected String generateOrderId() {
-        return "IMP-" + System.currentTimeMillis();
+        return EntityIds.next("IMP-");
     }
 
     @Override
@@ -40,6 +40,15 @@ public class ImportOrder extends Order {
         this.totalAmount = total;
     }
 
+    @Override
+    public ImportOrder copy() {
+        ImportOrder copy = new ImportOrder(id, orderDate, totalAmount, status, supplier, warehouseLocation);
+        for (OrderItem item : items) {
+            copy.items.add(item.copy());
+        }
+        return copy;
+    }
+
     @Override
     public String toCSV() {
         return String.format("%s,%s,%s,%.0f,%s,%s",
@@ -38,6 +38,9 @@ public abstract class Order {
     public abstract void calculateTotal();
     public abstract String toCSV();
 
+    // Bản sao với trạng thái hiện tại (các item và sản phẩm trong item cũng được sao chép)
+    public abstract Order copy();
+
     // Generate unique order ID
     protected abstract String generateOrderId();
 
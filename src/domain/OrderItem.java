@@ -4,11 +4,25 @@ public class OrderItem {
     private Product product;
     private int quantity;
     private double unitPrice;
+    private double unitCost; // giá vốn 1 đơn vị, chụp lúc tạo item và lúc xác nhận đơn xuất
 
     public OrderItem(Product product, int quantity, double unitPrice) {
         this.product = product;
         this.quantity = quantity;
         this.unitPrice = unitPrice;
+        this.unitCost = product.getImportPrice();
+    }
+
+    // Bản sao độc lập (kể cả sản phẩm) để snapshot không thấy các thay đổi sau này
+    public OrderItem copy() {
+        OrderItem copy = new OrderItem(product.copy(), quantity, unitPrice);
+        copy.unitCost = unitCost;
+        return copy;
+    }
+
+    // Chụp giá nhập hiện tại của sản phẩm làm giá vốn (khi xác nhận đơn xuất)
+    public void captureUnitCost() {
+        this.unitCost = product.getImportPrice();
     }
 
     // Tính tổng tiền cho item này
@@ -23,6 +37,7 @@ public class OrderItem {
     public void setQuantity(int quantity) { this.quantity = quantity; }
     public double getUnitPrice() { return unitPrice; }
     public void setUnitPrice(double unitPrice) { this.unitPrice = unitPrice; }
+    public double getUnitCost() { return unitCost; }
 
     // Convert to CSV
     public String toCSV(String orderId) {
@@ -1,6 +1,6 @@
 package domain;
 
-import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class Product {
     protected String id;
@@ -8,16 +8,17 @@ public abstract class Product {
     protected String category;
     protected double importPrice;
     protected double salePrice;
-    protected int stockQuantity;
+    // Tồn kho dạng ô nguyên tử (CAS): cập nhật an toàn từ nhiều luồng mà không cần khóa
+    private final AtomicInteger stockQuantity;
 
     // Constructor khi tạo mới
     public Product(String name, String category, double importPrice, double salePrice, int stockQuantity) {
-        this.id = UUID.randomUUID().toString().substring(0, 8);
+        this.id = EntityIds.next("P");
         this.name = name;
         this.category = category;
         this.importPrice = importPrice;
         this.salePrice = salePrice;
-        this.stockQuantity = stockQuantity;
+        this.stockQuantity = new AtomicInteger(stockQuantity);
     }
 
     // Constructor khi load từ CSV
@@ -27,7 +28,7 @@ public abstract class Product {
         this.category = category;
         this.importPrice = importPrice;
         this.salePrice = salePrice;
-        this.stockQuantity = stockQuantity;
+        this.stockQuantity = new AtomicInteger(stockQuantity);
     }
 
     // Abstract method - mỗi loại sản phẩm tính lợi nhuận khác nhau
@@ -36,19 +37,47 @@ public abstract class Product {
     // Abstract method - lấy loại sản phẩm
     public abstract String getProductType();
 
+    // Bản sao độc lập với giá trị hiện tại (dùng cho snapshot báo cáo)
+    public abstract Product copy();
+
     // Tăng tồn kho (khi nhập hàng)
     public void increaseStock(int quantity) {
-        this.stockQuantity += quantity;
+        stockQuantity.addAndGet(quantity);
     }
 
-    // Giảm tồn kho (khi xuất hàng)
+    // Giảm tồn kho (khi xuất hàng), không kiểm tra số lượng
     public void decreaseStock(int quantity) {
-        this.stockQuantity -= quantity;
+        stockQuantity.addAndGet(-quantity);
+    }
+
+    /**
+     * Giảm tồn kho nếu còn ít nhất quantity (compare-and-set, không khóa).
+     * Kiểm tra và trừ là 1 thao tác nguyên tử nên tồn kho không bao giờ bị âm.
+     * @return false nếu không đủ hàng (tồn kho giữ nguyên)
+     */
+    public boolean tryDecreaseStock(int quantity) {
+        while (true) {
+            int current = stockQuantity.get();
+            if (current < quantity) {
+                return false;
+            }
+            if (stockQuantity.compareAndSet(current, current - quantity)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Đặt tồn kho mới (điều chỉnh tay) trong 1 thao tác nguyên tử
+     * @return tồn kho ngay trước khi đặt
+     */
+    public int replaceStock(int quantity) {
+        return stockQuantity.getAndSet(quantity);
     }
 
     // Kiểm tra còn đủ hàng không
     public boolean hasEnoughStock(int quantity) {
-        return this.stockQuantity >= quantity;
+        return stockQuantity.get() >= quantity;
     }
 
     // Convert to CSV string
@@ -64,12 +93,12 @@ public abstract class Product {
     public void setImportPrice(double importPrice) { this.importPrice = importPrice; }
     public double getSalePrice() { return salePrice; }
     public void setSalePrice(double salePrice) { this.salePrice = salePrice; }
-    public int getStockQuantity() { return stockQuantity; }
-    public void setStockQuantity(int stockQuantity) { this.stockQuantity = stockQuantity; }
+    public int getStockQuantity() { return stockQuantity.get(); }
+    public void setStockQuantity(int stockQuantity) { this.stockQuantity.set(stockQuantity); }
 
     @Override
     public String toString() {
         return String.format("%-10s | %-25s | %-15s | %,15.0f | %,15.0f | %8d",
-                id, name, category, importPrice, salePrice, stockQuantity);
+                id, name, category, importPrice, salePrice, getStockQuantity());
     }
 }
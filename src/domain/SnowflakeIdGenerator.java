@@ -0,0 +1,48 @@
+package domain;
+
+import interfaces.IdGenerator;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sinh ID kiểu Snowflake (64 bit), không dùng khóa:
+ *   41 bit thời gian (ms kể từ EPOCH) | 10 bit mã node | 12 bit số thứ tự trong cùng 1 ms
+ * Mỗi node sinh được 4096 ID/ms. Thời gian và số thứ tự được giữ chung trong 1 AtomicLong
+ * và chỉ tăng (CAS): hết số thứ tự trong 1 ms hoặc đồng hồ bị lùi thì mượn ms kế tiếp,
+ * nên ID luôn tăng dần và không trùng mà không phải chờ đồng hồ.
+ * Các node (máy/tiến trình) khác nhau phải dùng mã node khác nhau.
+ */
+public class SnowflakeIdGenerator implements IdGenerator {
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+
+    public static final long EPOCH = 1735689600000L; // 2025-01-01T00:00:00Z
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+
+    private final long nodeId;
+    private final AtomicLong lastState = new AtomicLong(); // (thời gian << SEQUENCE_BITS) | số thứ tự
+
+    /**
+     * @param nodeId mã node từ 0 đến MAX_NODE_ID
+     */
+    public SnowflakeIdGenerator(int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Mã node phải từ 0 đến " + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public long nextId() {
+        long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+        long state = lastState.accumulateAndGet(now, (last, current) -> Math.max(current, last + 1));
+
+        long timestamp = state >>> SEQUENCE_BITS;
+        long sequence = state & ((1L << SEQUENCE_BITS) - 1);
+        return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+    }
+
+    public int getNodeId() {
+        return (int) nodeId;
+    }
+}
@@ -1,7 +1,5 @@
 package domain;
 
-import java.util.UUID;
-
 public class Supplier {
     private String id;
     private String name;
@@ -12,7 +10,7 @@ public class Supplier {
 
     // Constructor khi tạo mới
     public Supplier(String name, String phone, String email, String address, String productCategories) {
-        this.id = "SUP-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        this.id = EntityIds.next("SUP-");
         this.name = name;
         this.phone = phone;
         this.email = email;
@@ -0,0 +1,23 @@
+package interfaces;
+
+/**
+ * Interface sinh ID cho entity mới (đơn hàng, sản phẩm, khách hàng, nhà cung cấp)
+ * Cài đặt phải an toàn khi nhiều luồng cùng gọi và không bao giờ trả về ID trùng
+ */
+public interface IdGenerator {
+
+    /**
+     * Sinh ID số mới (không âm, tăng dần)
+     * @return ID chưa từng được trả về
+     */
+    long nextId();
+
+    /**
+     * Sinh ID dạng chuỗi: tiền tố + ID số ở hệ cơ số 36 (chữ hoa)
+     * @param prefix Tiền tố theo loại entity (vd: "EXP-")
+     * @return ID dạng chuỗi
+     */
+    default String nextId(String prefix) {
+        return prefix + Long.toString(nextId(), Character.MAX_RADIX).toUpperCase();
+    }
+}
@@ -9,11 +9,25 @@ import java.io.IOException;
 public interface Persistable {
 
     /**
-     * Lưu toàn bộ dữ liệu vào file CSV
+     * Lưu dữ liệu vào file CSV (chỉ khi có thay đổi).
+     * Ở chế độ nhật ký (journal) chỉ đảm bảo các thay đổi đã được ghi nối vào nhật ký,
+     * không ghi lại toàn bộ file.
      * @throws IOException nếu có lỗi khi ghi file
      */
     void save() throws IOException;
 
+    /**
+     * @return true nếu có thay đổi (thêm/sửa/xóa) chưa được lưu;
+     *         save() không ghi gì khi không có thay đổi
+     */
+    boolean isDirty();
+
+    /**
+     * Đẩy dữ liệu đã lưu bằng save() xuống đĩa (fsync) để không mất khi mất điện
+     * @throws IOException nếu có lỗi khi ghi file
+     */
+    void sync() throws IOException;
+
     /**
      * Đọc toàn bộ dữ liệu từ file CSV
      * @throws IOException nếu có lỗi khi đọc file
@@ -30,4 +44,37 @@ public interface Persistable {
      * Xóa toàn bộ dữ liệu (clear cache trong memory)
      */
     void clear();
+
+    /**
+     * Bật/tắt chế độ nhật ký: mỗi thay đổi (thêm/sửa/xóa) được ghi nối 1 bản ghi nhỏ
+     * vào file nhật ký thay vì ghi lại toàn bộ file CSV
+     * @param enabled true để bật
+     */
+    void setJournalEnabled(boolean enabled);
+
+    /**
+     * @return true nếu đang ở chế độ nhật ký
+     */
+    boolean isJournalEnabled();
+
+    /**
+     * Gộp nhật ký vào file CSV snapshot rồi xóa phần nhật ký đã gộp
+     * @throws IOException nếu có lỗi khi ghi file
+     */
+    void compact() throws IOException;
+
+    /**
+     * Ghi toàn bộ dữ liệu trong bộ nhớ ra file snapshot nhị phân để lần khởi động sau
+     * không phải phân tích CSV
+     * @throws IOException nếu có lỗi khi ghi file
+     */
+    void saveSnapshot() throws IOException;
+
+    /**
+     * Đọc dữ liệu từ file snapshot nhị phân (thay cho load())
+     * @return false nếu không dùng được snapshot (không có, bị hỏng, hoặc file CSV/nhật ký
+     *         đã thay đổi sau khi ghi snapshot) - khi đó cần gọi load() để đọc CSV
+     * @throws IOException nếu có lỗi khi đọc file
+     */
+    boolean loadSnapshot() throws IOException;
 }
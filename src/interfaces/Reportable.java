@@ -16,6 +16,13 @@ public interface Reportable {
      */
     String generateInventoryReport();
 
+    /**
+     * Ghi báo cáo tồn kho thẳng ra out (console, file...) theo từng dòng, không dựng chuỗi
+     * @param out Nơi nhận báo cáo (vd: System.out, Writer)
+     * @throws IOException nếu có lỗi khi ghi
+     */
+    void generateInventoryReport(Appendable out) throws IOException;
+
     /**
      * Tạo báo cáo nhập-xuất-tồn theo khoảng thời gian
      * @param fromDate Từ ngày
@@ -24,6 +31,12 @@ public interface Reportable {
      */
     String generateImportExportReport(LocalDate fromDate, LocalDate toDate);
 
+    /**
+     * Ghi báo cáo nhập-xuất-tồn thẳng ra out
+     * @throws IOException nếu có lỗi khi ghi
+     */
+    void generateImportExportReport(LocalDate fromDate, LocalDate toDate, Appendable out) throws IOException;
+
     /**
      * Tạo báo cáo doanh thu theo khoảng thời gian
      * @param fromDate Từ ngày
@@ -32,6 +45,12 @@ public interface Reportable {
      */
     String generateRevenueReport(LocalDate fromDate, LocalDate toDate);
 
+    /**
+     * Ghi báo cáo doanh thu thẳng ra out
+     * @throws IOException nếu có lỗi khi ghi
+     */
+    void generateRevenueReport(LocalDate fromDate, LocalDate toDate, Appendable out) throws IOException;
+
     /**
      * Xuất báo cáo ra file CSV
      * @param reportContent Nội dung báo cáo
@@ -40,10 +59,26 @@ public interface Reportable {
      */
     void exportToCSV(String reportContent, String fileName) throws IOException;
 
+    /**
+     * Xuất báo cáo ra file CSV, nội dung được ghi thẳng vào file trong lúc tạo
+     * @param report Phần ghi nội dung (vd: out -> generateInventoryReport(out))
+     * @param fileName Tên file xuất
+     * @throws IOException nếu có lỗi khi ghi file
+     */
+    void exportToCSV(ReportBody report, String fileName) throws IOException;
+
     /**
      * Lấy danh sách top N sản phẩm bán chạy
      * @param topN Số lượng top (ví dụ: 5)
      * @return Danh sách product ID và số lượng đã bán
      */
     List<String> getTopSellingProducts(int topN);
+
+    /**
+     * Nội dung 1 báo cáo, được ghi vào nơi nhận do người gọi chọn
+     */
+    @FunctionalInterface
+    interface ReportBody {
+        void writeTo(Appendable out) throws IOException;
+    }
 }
@@ -0,0 +1,314 @@
+package repository;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.zip.CRC32;
+
+/**
+ * File snapshot nhị phân giúp khởi động nhanh (không phải phân tích CSV).
+ * Cấu trúc file (big-endian):
+ *   MAGIC (int), VERSION (int), loại dữ liệu (chuỗi)
+ *   dấu vân tay các file nguồn: số file, rồi (thời điểm sửa, kích thước) của từng file
+ *   dữ liệu do repository ghi
+ *   CRC32 (long) của toàn bộ phần phía trước
+ * Chuỗi ghi dạng độ dài + byte UTF-8 (-1 là null), ngày ghi dạng epoch-day, enum ghi theo ordinal.
+ * Snapshot chỉ được dùng khi các file CSV/nhật ký nguồn không thay đổi kể từ lúc ghi snapshot.
+ */
+public final class BinarySnapshot {
+    public static final String EXTENSION = ".snap";
+
+    private static final int MAGIC = 0x57534E50; // "WSNP"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private BinarySnapshot() {
+    }
+
+    /**
+     * Đường dẫn snapshot đặt cạnh file CSV (vd: data/products.csv -> data/products.snap)
+     */
+    public static String pathFor(String csvPath) {
+        return baseOf(csvPath) + EXTENSION;
+    }
+
+    /**
+     * Các file nguồn của các file CSV: chính nó và nhật ký đi kèm
+     */
+    public static String[] sourcesOf(String... csvPaths) {
+        String[] sources = new String[csvPaths.length * 3];
+        for (int i = 0; i < csvPaths.length; i++) {
+            String base = baseOf(csvPaths[i]);
+            sources[i * 3] = csvPaths[i];
+            sources[i * 3 + 1] = base + ".journal";
+            sources[i * 3 + 2] = base + ".journal.old";
+        }
+        return sources;
+    }
+
+    private static String baseOf(String csvPath) {
+        return csvPath.endsWith(".csv") ? csvPath.substring(0, csvPath.length() - 4) : csvPath;
+    }
+
+    /**
+     * Ghi snapshot ra file tạm rồi đổi tên (atomic)
+     * @param kind loại dữ liệu (để không đọc nhầm snapshot của repository khác)
+     * @param sources các file nguồn mà snapshot phản ánh
+     */
+    public static void write(String path, String kind, String[] sources, BodyWriter body) throws IOException {
+        Path target = Paths.get(path);
+        Path temp = Paths.get(path + ".tmp");
+
+        try (Output out = new Output(new FileOutputStream(temp.toFile()))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeString(kind);
+            writeFingerprint(out, sources);
+
+            body.write(out);
+
+            out.finish();
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Đọc snapshot nếu hợp lệ
+     * @return false nếu không có snapshot, khác phiên bản/loại, đã cũ so với file nguồn,
+     *         hoặc bị hỏng (sai CRC, thiếu dữ liệu) - khi đó cần đọc lại từ CSV
+     */
+    public static boolean read(String path, String kind, String[] sources, BodyReader reader) throws IOException {
+        File file = new File(path);
+        if (!file.exists() || file.length() <= Long.BYTES || file.length() > Integer.MAX_VALUE) {
+            return false;
+        }
+
+        // Đọc hết vào bộ nhớ rồi đóng file ngay: vùng ánh xạ (FileChannel.map) sẽ khóa file
+        // trên Windows đến khi được GC thu hồi, làm lần ghi snapshot sau không đổi tên được
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+
+        int payloadLength = buffer.limit() - Long.BYTES;
+        ByteBuffer payload = buffer.duplicate();
+        payload.limit(payloadLength);
+        Input in = new Input(payload);
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !kind.equals(in.readString())) {
+                return false;
+            }
+            if (!matchesFingerprint(in, sources)) {
+                return false; // File nguồn đã thay đổi sau khi ghi snapshot
+            }
+
+            // Kiểm tra CRC trước khi dựng đối tượng
+            CRC32 crc = new CRC32();
+            ByteBuffer checked = buffer.duplicate();
+            checked.position(0).limit(payloadLength);
+            crc.update(checked);
+            if (buffer.getLong(payloadLength) != crc.getValue()) {
+                return false;
+            }
+
+            reader.read(in);
+            return !payload.hasRemaining(); // Còn dữ liệu thừa là snapshot không đúng định dạng
+        } catch (StreamCorruptedException | RuntimeException e) {
+            return false; // Snapshot hỏng
+        }
+    }
+
+    private static void writeFingerprint(Output out, String[] sources) throws IOException {
+        out.writeInt(sources.length);
+        for (String source : sources) {
+            File file = new File(source);
+            out.writeLong(file.exists() ? file.lastModified() : -1);
+            out.writeLong(file.exists() ? file.length() : -1);
+        }
+    }
+
+    private static boolean matchesFingerprint(Input in, String[] sources) {
+        if (in.readInt() != sources.length) {
+            return false;
+        }
+        boolean matches = true;
+        for (String source : sources) {
+            File file = new File(source);
+            long modified = in.readLong();
+            long length = in.readLong();
+            if (modified != (file.exists() ? file.lastModified() : -1)
+                    || length != (file.exists() ? file.length() : -1)) {
+                matches = false;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Luồng ghi: số có độ dài cố định, chuỗi có tiền tố độ dài, ngày dạng epoch-day.
+     * Ghi qua bộ đệm riêng (không đồng bộ hóa) và tính CRC theo từng khối.
+     */
+    public static final class Output implements Closeable {
+        private final OutputStream out;
+        private final CRC32 crc = new CRC32();
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        Output(OutputStream out) {
+            this.out = out;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            crc.update(buffer.array(), 0, buffer.position());
+            out.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+
+        public void writeByte(int value) throws IOException {
+            ensure(Byte.BYTES);
+            buffer.put((byte) value);
+        }
+
+        public void writeInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        public void writeLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        public void writeDouble(double value) throws IOException {
+            ensure(Double.BYTES);
+            buffer.putDouble(value);
+        }
+
+        public void writeString(String value) throws IOException {
+            if (value == null) {
+                writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            if (bytes.length > buffer.capacity()) {
+                drain();
+                crc.update(bytes, 0, bytes.length);
+                out.write(bytes);
+                return;
+            }
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        public void writeDate(LocalDate date) throws IOException {
+            writeLong(date == null ? Long.MIN_VALUE : date.toEpochDay());
+        }
+
+        public void writeEnum(Enum<?> value) throws IOException {
+            writeByte(value == null ? -1 : value.ordinal());
+        }
+
+        // Ghi phần còn lại rồi CRC (CRC không nằm trong phần được kiểm tra)
+        void finish() throws IOException {
+            drain();
+            buffer.putLong(crc.getValue());
+            out.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Luồng đọc tương ứng với Output, đọc trực tiếp trên nội dung file đã nạp vào bộ nhớ.
+     * Đọc quá cuối dữ liệu ném BufferUnderflowException (snapshot bị cắt cụt).
+     */
+    public static final class Input {
+        private final ByteBuffer buffer;
+        private byte[] scratch = new byte[64];
+
+        Input(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public byte readByte() {
+            return buffer.get();
+        }
+
+        public int readInt() {
+            return buffer.getInt();
+        }
+
+        public long readLong() {
+            return buffer.getLong();
+        }
+
+        public double readDouble() {
+            return buffer.getDouble();
+        }
+
+        public String readString() throws IOException {
+            int length = buffer.getInt();
+            if (length == -1) {
+                return null;
+            }
+            if (length < 0 || length > buffer.remaining()) {
+                throw new StreamCorruptedException("Độ dài chuỗi không hợp lệ: " + length);
+            }
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        public LocalDate readDate() {
+            long epochDay = buffer.getLong();
+            return epochDay == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(epochDay);
+        }
+
+        /**
+         * @param values mảng hằng số của enum (nên lưu sẵn)
+         */
+        public <E extends Enum<E>> E readEnum(E[] values) {
+            byte ordinal = buffer.get();
+            return ordinal == -1 ? null : values[ordinal];
+        }
+
+        /**
+         * Đọc số lượng phần tử (kiểm tra để không cấp phát quá lớn khi file hỏng)
+         */
+        public int readCount() throws IOException {
+            int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining()) {
+                throw new StreamCorruptedException("Số phần tử không hợp lệ: " + count);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Ghi phần dữ liệu của snapshot
+     */
+    public interface BodyWriter {
+        void write(Output out) throws IOException;
+    }
+
+    /**
+     * Đọc phần dữ liệu của snapshot
+     */
+    public interface BodyReader {
+        void read(Input in) throws IOException;
+    }
+}
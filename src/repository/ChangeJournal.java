@@ -0,0 +1,352 @@
+package repository;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Nhật ký thay đổi dạng append-only (write-ahead journal) đặt cạnh file CSV.
+ * Repository đánh dấu ID đã thay đổi, khi save() chỉ các ID này được ghi nối:
+ *   U,&lt;dòng CSV&gt;   - thêm mới / cập nhật
+ *   D,&lt;id&gt;         - xóa
+ * Khi nhật ký đủ lớn, luồng nền sẽ gộp (compact) vào file CSV snapshot.
+ */
+public class ChangeJournal {
+    public static final int COMPACT_THRESHOLD = 1000;
+
+    private static final String UPSERT = "U";
+    private static final String DELETE = "D";
+
+    // Luồng nền dùng chung để gộp nhật ký vào snapshot
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "journal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String journalPath;
+    private final String rotatedPath;
+    private final Map<String, String> pending; // id -> U/D, các entity thay đổi chưa lưu (dirty)
+    private FileOutputStream stream; // để fsync nhật ký
+    private BufferedWriter writer;
+    private int records;
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean(false);
+    // Các lần gộp của cùng nhật ký (luồng nền hoặc gọi trực tiếp lúc thoát) chạy lần lượt
+    private final Object compactionLock = new Object();
+
+    /**
+     * @param snapshotPath đường dẫn file CSV snapshot (vd: data/products.csv)
+     */
+    public ChangeJournal(String snapshotPath) {
+        String base = snapshotPath.endsWith(".csv")
+                ? snapshotPath.substring(0, snapshotPath.length() - 4) : snapshotPath;
+        this.journalPath = base + ".journal";
+        this.rotatedPath = base + ".journal.old";
+        this.pending = new LinkedHashMap<>();
+    }
+
+    // Đánh dấu entity vừa được thêm/sửa
+    public synchronized void markChanged(String id) {
+        pending.put(id, UPSERT);
+    }
+
+    // Đánh dấu entity vừa bị xóa
+    public synchronized void markDeleted(String id) {
+        pending.put(id, DELETE);
+    }
+
+    /**
+     * Có entity thay đổi chưa lưu (dùng cả khi tắt chế độ nhật ký)
+     */
+    public synchronized boolean hasPendingChanges() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Ghi nối các thay đổi đang chờ (mỗi entity 1 dòng)
+     * @param currentLine trả về dòng CSV hiện tại của entity, null nếu đã bị xóa
+     */
+    public synchronized void flush(Function<String, String> currentLine) throws IOException {
+        flushGroups(id -> {
+            String line = currentLine.apply(id);
+            return line == null ? null : Collections.singletonList(line);
+        }, false);
+    }
+
+    /**
+     * Ghi nối các thay đổi đang chờ theo nhóm (vd: toàn bộ item của 1 đơn).
+     * Mỗi nhóm được ghi là "D,id" rồi các dòng "U,..." để thay thế nhóm cũ khi đọc lại.
+     * @param currentLines trả về các dòng CSV hiện tại của nhóm, null nếu đã bị xóa
+     */
+    public synchronized void flushGroups(Function<String, List<String>> currentLines) throws IOException {
+        flushGroups(currentLines, true);
+    }
+
+    private void flushGroups(Function<String, List<String>> currentLines, boolean replaceGroup) throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (writer == null) {
+            stream = new FileOutputStream(journalPath, true);
+            writer = new BufferedWriter(new OutputStreamWriter(stream));
+        }
+
+        for (Map.Entry<String, String> entry : pending.entrySet()) {
+            String id = entry.getKey();
+            List<String> lines = DELETE.equals(entry.getValue()) ? null : currentLines.apply(id);
+
+            if (lines == null || replaceGroup) {
+                writeRecord(DELETE, id);
+            }
+            if (lines != null) {
+                for (String line : lines) {
+                    writeRecord(UPSERT, line);
+                }
+            }
+        }
+        writer.flush();
+        pending.clear();
+    }
+
+    private void writeRecord(String op, String payload) throws IOException {
+        writer.write(op + "," + payload);
+        writer.newLine();
+        records++;
+    }
+
+    /**
+     * Đẩy các bản ghi đã ghi nối xuống đĩa (fsync), gọi sau flush()
+     */
+    public synchronized void sync() throws IOException {
+        if (stream != null) {
+            stream.getFD().sync();
+        }
+    }
+
+    /**
+     * Đẩy nội dung 1 file đã ghi xuống đĩa (dùng khi ghi lại toàn bộ file CSV)
+     */
+    public static void force(String filePath) throws IOException {
+        Path path = Paths.get(filePath);
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Số bản ghi đã nối thêm kể từ lần gộp gần nhất
+     */
+    public synchronized int size() {
+        return records;
+    }
+
+    /**
+     * Đọc lại nhật ký (gồm cả phần đã xoay vòng nhưng chưa gộp xong) theo đúng thứ tự ghi.
+     * Bản ghi U được chuyển cho onUpsert với các cột dữ liệu bắt đầu từ cột 1.
+     */
+    public synchronized void replay(UpsertHandler onUpsert, Consumer<String> onDelete) throws IOException {
+        pending.clear();
+        records = 0;
+        replayFile(rotatedPath, onUpsert, onDelete);
+        replayFile(journalPath, onUpsert, onDelete);
+    }
+
+    private void replayFile(String path, UpsertHandler onUpsert, Consumer<String> onDelete) throws IOException {
+        if (!new File(path).exists()) {
+            return;
+        }
+
+        try (CsvBulkReader reader = CsvBulkReader.open(path)) {
+            while (reader.nextRow()) {
+                if (reader.fieldCount() < 2) continue;
+
+                if (reader.fieldEquals(0, UPSERT)) {
+                    onUpsert.accept(reader, 1);
+                } else if (reader.fieldEquals(0, DELETE)) {
+                    onDelete.accept(reader.getString(1));
+                }
+                records++;
+            }
+        }
+    }
+
+    /**
+     * Chụp snapshot và xoay vòng nhật ký trong cùng 1 khóa: phần nhật ký hiện tại
+     * chuyển sang file .old, các thay đổi sau đó ghi vào nhật ký mới.
+     * @param capture hàm chụp các dòng CSV hiện tại trong bộ nhớ
+     * @return các dòng snapshot đã chụp
+     */
+    public synchronized List<String> captureAndRotate(SnapshotCapture capture) throws IOException {
+        List<String> lines = capture.capture();
+
+        if (writer != null) {
+            // Đẩy xuống đĩa trước khi xoay vòng để sync() sau đó không bỏ sót phần đã ghi
+            writer.flush();
+            stream.getFD().sync();
+            writer.close();
+            writer = null;
+            stream = null;
+        }
+
+        Path current = Paths.get(journalPath);
+        if (Files.exists(current)) {
+            Path rotated = Paths.get(rotatedPath);
+            if (Files.exists(rotated)) {
+                // Lần gộp trước chưa xong - nối tiếp vào file .old để giữ thứ tự
+                try (OutputStream out = new FileOutputStream(rotatedPath, true)) {
+                    Files.copy(current, out);
+                }
+                Files.delete(current);
+            } else {
+                Files.move(current, rotated, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        records = 0;
+        return lines;
+    }
+
+    /**
+     * Xóa phần nhật ký đã được gộp vào snapshot
+     */
+    public synchronized void discardRotated() throws IOException {
+        Files.deleteIfExists(Paths.get(rotatedPath));
+    }
+
+    /**
+     * Ghi lại toàn bộ file CSV (khi tắt chế độ nhật ký) rồi xóa nhật ký cũ.
+     * Các đánh dấu đang chờ được lấy ra dưới khóa nhật ký trước khi ghi: đánh dấu thêm trong
+     * lúc đang ghi vẫn còn cho lần lưu sau (isDirty() không báo sai là đã lưu), còn nếu ghi lỗi
+     * thì các đánh dấu đã lấy được trả lại.
+     * @param write ghi toàn bộ dữ liệu hiện tại ra file CSV
+     */
+    public void rewrite(SnapshotWrite write) throws IOException {
+        Map<String, String> saving;
+        synchronized (this) {
+            saving = new LinkedHashMap<>(pending);
+            pending.clear();
+        }
+        try {
+            write.write();
+            discardFiles();
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                // Đánh dấu mới hơn (thêm trong lúc ghi) được giữ nguyên
+                for (Map.Entry<String, String> entry : saving.entrySet()) {
+                    pending.putIfAbsent(entry.getKey(), entry.getValue());
+                }
+            }
+            throw e;
+        }
+    }
+
+    // Xóa toàn bộ nhật ký (file CSV vừa được ghi lại đầy đủ)
+    private synchronized void discardFiles() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+            stream = null;
+        }
+        Files.deleteIfExists(Paths.get(journalPath));
+        Files.deleteIfExists(Paths.get(rotatedPath));
+        records = 0;
+    }
+
+    /**
+     * Chạy 1 lần gộp nhật ký này (chụp + ghi snapshot + xóa .old). Mọi lần gộp đều đi qua đây
+     * và giữ cùng 1 khóa, nên lần gộp gọi trực tiếp không chạy song song với lần gộp nền trên
+     * cùng file .tmp và bản chụp cũ không thể ghi đè file CSV của bản chụp mới hơn.
+     */
+    public void compact(CompactionTask task) throws IOException {
+        synchronized (compactionLock) {
+            task.compact();
+        }
+    }
+
+    /**
+     * Lên lịch gộp nhật ký ở luồng nền nếu đã vượt ngưỡng (mỗi lúc chỉ 1 lần)
+     */
+    public void compactIfNeeded(CompactionTask task) {
+        if (size() < COMPACT_THRESHOLD || !compactionScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        COMPACTOR.submit(() -> {
+            try {
+                task.compact();
+            } catch (IOException e) {
+                System.out.println("Lỗi khi gộp nhật ký " + journalPath + ": " + e.getMessage());
+            } finally {
+                compactionScheduled.set(false);
+            }
+        });
+    }
+
+    /**
+     * Ghi snapshot CSV ra file tạm, fsync rồi mới đổi tên (atomic): sau khi đổi tên, file CSV
+     * chắc chắn đã nằm trên đĩa nên có thể xóa phần nhật ký vừa gộp vào nó
+     */
+    public static void writeSnapshot(String filePath, String header, List<String> lines) throws IOException {
+        Path target = Paths.get(filePath);
+        Path temp = Paths.get(filePath + ".tmp");
+
+        try (FileOutputStream out = new FileOutputStream(temp.toFile());
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out))) {
+            writer.write(header);
+            writer.newLine();
+            for (String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+            writer.flush();
+            out.getChannel().force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Xử lý 1 bản ghi U khi đọc lại nhật ký
+     */
+    public interface UpsertHandler {
+        /**
+         * @param row dòng nhật ký đang đọc
+         * @param offset chỉ số cột đầu tiên của dữ liệu entity
+         */
+        void accept(CsvBulkReader row, int offset);
+    }
+
+    /**
+     * Chụp dữ liệu hiện tại thành các dòng CSV
+     */
+    public interface SnapshotCapture {
+        List<String> capture();
+    }
+
+    /**
+     * Ghi lại toàn bộ file CSV (do repository cung cấp)
+     */
+    public interface SnapshotWrite {
+        void write() throws IOException;
+    }
+
+    /**
+     * Tác vụ gộp nhật ký (do repository cung cấp)
+     */
+    public interface CompactionTask {
+        void compact() throws IOException;
+    }
+}
@@ -0,0 +1,268 @@
+package repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Bộ đọc CSV dùng chung cho các repository: cả file được đọc 1 lần (Files.readAllBytes) vào
+ * 1 mảng byte rồi đóng ngay, nên file không được lớn hơn ~2 GB. Không dùng ánh xạ bộ nhớ
+ * (FileChannel.map) vì trên Windows vùng ánh xạ khóa file cho đến khi được GC thu hồi, làm hỏng
+ * lần ghi lại/đổi tên file CSV sau đó.
+ * Mỗi dòng chỉ được tách thành vị trí [bắt đầu, kết thúc) của từng cột, không tạo String[].
+ * Số, ngày (yyyy-MM-dd) và enum được đọc thẳng từ byte; chỉ tạo String khi gọi getString().
+ * Quy tắc tách cột giống line.split(",", -1): không hỗ trợ dấu ngoặc kép.
+ */
+public class CsvBulkReader implements Closeable {
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+
+    private ByteBuffer buffer;
+    private int position;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int fieldCount;
+    private byte[] scratch = new byte[64];
+
+    private CsvBulkReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+        // Bỏ qua UTF-8 BOM nếu có
+        if (buffer.limit() >= 3 && (buffer.get(0) & 0xFF) == 0xEF
+                && (buffer.get(1) & 0xFF) == 0xBB && (buffer.get(2) & 0xFF) == 0xBF) {
+            position = 3;
+        }
+    }
+
+    /**
+     * Mở file CSV (file phải tồn tại)
+     */
+    public static CsvBulkReader open(String filePath) throws IOException {
+        Path path = Paths.get(filePath);
+        if (Files.size(path) > Integer.MAX_VALUE - 8) {
+            throw new IOException("File quá lớn để đọc: " + filePath);
+        }
+        return new CsvBulkReader(ByteBuffer.wrap(Files.readAllBytes(path)));
+    }
+
+    /**
+     * Chuyển sang dòng tiếp theo
+     * @return false nếu đã hết file
+     */
+    public boolean nextRow() {
+        int limit = buffer.limit();
+        if (position >= limit) {
+            return false;
+        }
+
+        fieldCount = 0;
+        int fieldStart = position;
+        int i = position;
+        while (i < limit) {
+            byte b = buffer.get(i);
+            if (b == '\n') {
+                break;
+            }
+            if (b == ',') {
+                addField(fieldStart, i);
+                fieldStart = i + 1;
+            }
+            i++;
+        }
+
+        int lineEnd = i;
+        if (lineEnd > fieldStart && buffer.get(lineEnd - 1) == '\r') {
+            lineEnd--;
+        }
+        addField(fieldStart, lineEnd);
+        position = i + 1;
+        return true;
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount == starts.length) {
+            starts = Arrays.copyOf(starts, fieldCount * 2);
+            ends = Arrays.copyOf(ends, fieldCount * 2);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        fieldCount++;
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Dòng chỉ gồm khoảng trắng (tương đương line.trim().isEmpty())
+     */
+    public boolean isBlankRow() {
+        if (fieldCount > 1) {
+            return false;
+        }
+        for (int i = starts[0]; i < ends[0]; i++) {
+            if ((buffer.get(i) & 0xFF) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isEmpty(int field) {
+        return starts[field] == ends[field];
+    }
+
+    public String getString(int field) {
+        int start = starts[field];
+        int length = ends[field] - start;
+        if (length == 0) {
+            return "";
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            scratch[i] = buffer.get(start + i);
+        }
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * So sánh cột với chuỗi ASCII mà không tạo String
+     */
+    public boolean fieldEquals(int field, String ascii) {
+        int start = starts[field];
+        int length = ends[field] - start;
+        if (length != ascii.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(start + i) != ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getInt(int field) {
+        long value = parseLong(starts[field], ends[field]);
+        if (value == Long.MIN_VALUE || value != (int) value) {
+            return Integer.parseInt(getString(field)); // Ném NumberFormatException như trước
+        }
+        return (int) value;
+    }
+
+    public double getDouble(int field) {
+        int start = starts[field];
+        int end = ends[field];
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenDot = false;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (seenDot) fractionDigits++;
+            } else if (b == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                digits = -1; // Dạng khác (số mũ, ...) - dùng Double.parseDouble
+                break;
+            }
+        }
+
+        // Chính xác khi mantissa < 2^53 (1 phép chia làm tròn đúng)
+        if (digits <= 0 || digits > 15) {
+            return Double.parseDouble(getString(field));
+        }
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Đọc ngày dạng yyyy-MM-dd
+     */
+    public LocalDate getDate(int field) {
+        int start = starts[field];
+        if (ends[field] - start == 10 && buffer.get(start + 4) == '-' && buffer.get(start + 7) == '-') {
+            int year = digitsAt(start, 4);
+            int month = digitsAt(start + 5, 2);
+            int day = digitsAt(start + 8, 2);
+            if (year >= 0 && month >= 0 && day >= 0) {
+                return LocalDate.of(year, month, day);
+            }
+        }
+        return LocalDate.parse(getString(field));
+    }
+
+    /**
+     * Đọc enum theo tên, so sánh trực tiếp trên byte
+     * @param values mảng hằng số của enum (nên lưu sẵn, vì values() tạo mảng mới mỗi lần gọi)
+     */
+    public <E extends Enum<E>> E getEnum(int field, E[] values) {
+        for (E value : values) {
+            if (fieldEquals(field, value.name())) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("No enum constant " + getString(field));
+    }
+
+    private int digitsAt(int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    // Long.MIN_VALUE nếu không phải số nguyên thập phân đơn giản
+    private long parseLong(int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        if (i == end || end - i > 18) {
+            return Long.MIN_VALUE;
+        }
+
+        long value = 0;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    @Override
+    public void close() {
+        buffer = ByteBuffer.allocate(0);
+        position = 0;
+        fieldCount = 0;
+    }
+}
@@ -7,31 +7,74 @@ import interfaces.Searchable;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
 public class CustomerRepository implements Persistable, Searchable<Customer> {
-    private List<Customer> customers;
+    private static final String HEADER = "id,name,phone,email,address,type";
+    private static final int NAME_FIELD = 0;
+    private static final int PHONE_FIELD = 1;
+    private static final int EMAIL_FIELD = 2;
+    private static final String SNAPSHOT_KIND = "customers";
+    private static final CustomerType[] CUSTOMER_TYPES = CustomerType.values();
+
+    private final IndexedStore<Customer> customers;
+    private final TrigramIndex<Customer> textIndex;
     private final String filePath;
+    private final String snapshotPath;
+    private final ChangeJournal journal;
+    private boolean journalEnabled;
+    // Thêm/sửa/xóa và lúc gộp nhật ký chụp dữ liệu dùng chung khóa này, nên bản chụp
+    // không thấy thao tác dở dang (đã sửa bộ nhớ nhưng chưa đánh dấu nhật ký)
+    private final Object mutationLock = new Object();
 
     public CustomerRepository(String filePath) {
         this.filePath = filePath;
-        this.customers = new ArrayList<>();
+        this.snapshotPath = BinarySnapshot.pathFor(filePath);
+        this.customers = new IndexedStore<>(Customer::getId);
+        // tên, email (chữ thường), SĐT
+        this.textIndex = new TrigramIndex<>(Customer::getId, Arrays.asList(
+                c -> c.getName().toLowerCase(),
+                Customer::getPhone,
+                c -> c.getEmail().toLowerCase()));
+        this.customers.addIndex(textIndex);
+        this.journal = new ChangeJournal(filePath);
     }
 
     @Override
-    public void save() throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            // Header
-            writer.write("id,name,phone,email,address,type");
-            writer.newLine();
-
-            // Data
-            for (Customer customer : customers) {
-                writer.write(customer.toCSV());
+    public synchronized void save() throws IOException {
+        if (!isDirty()) {
+            return; // Không có thay đổi, không ghi lại file
+        }
+
+        if (journalEnabled) {
+            journal.flush(id -> {
+                Customer customer = customers.get(id);
+                return customer != null ? customer.toCSV() : null;
+            });
+            journal.compactIfNeeded(this::compact);
+            return;
+        }
+
+        journal.rewrite(() -> {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
+                // Header
+                writer.write(HEADER);
                 writer.newLine();
+
+                // Data
+                for (Customer customer : customers.values()) {
+                    writer.write(customer.toCSV());
+                    writer.newLine();
+                }
             }
-        }
+        });
+    }
+
+    @Override
+    public boolean isDirty() {
+        return journal.hasPendingChanges();
     }
 
     @Override
@@ -39,30 +82,111 @@ public class CustomerRepository implements Persistable, Searchable<Customer> {
         customers.clear();
 
         File file = new File(filePath);
-        if (!file.exists()) {
-            return;
+        if (file.exists()) {
+            try (CsvBulkReader reader = CsvBulkReader.open(filePath)) {
+                reader.nextRow(); // Skip header
+
+                while (reader.nextRow()) {
+                    Customer customer = parseRow(reader, 0);
+                    if (customer != null) {
+                        customers.put(customer);
+                    }
+                }
+            }
         }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line = reader.readLine(); // Skip header
+        // Áp dụng các thay đổi chưa được gộp vào snapshot
+        journal.replay((row, offset) -> {
+            Customer customer = parseRow(row, offset);
+            if (customer != null) {
+                customers.put(customer);
+            }
+        }, customers::remove);
+    }
+
+    // Đọc 1 khách hàng, các cột bắt đầu từ vị trí offset
+    private Customer parseRow(CsvBulkReader row, int offset) {
+        if (row.isBlankRow()) return null;
+        if (row.fieldCount() - offset < 6) return null;
+
+        String id = row.getString(offset);
+        String name = row.getString(offset + 1);
+        String phone = row.getString(offset + 2);
+        String email = row.getString(offset + 3);
+        String address = row.getString(offset + 4);
+        CustomerType type = row.getEnum(offset + 5, CUSTOMER_TYPES);
 
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) continue;
+        return new Customer(id, name, phone, email, address, type);
+    }
 
-                String[] parts = line.split(",", -1);
-                if (parts.length < 6) continue;
+    @Override
+    public void setJournalEnabled(boolean enabled) {
+        this.journalEnabled = enabled;
+    }
 
-                String id = parts[0];
-                String name = parts[1];
-                String phone = parts[2];
-                String email = parts[3];
-                String address = parts[4];
-                CustomerType type = CustomerType.valueOf(parts[5]);
+    @Override
+    public void sync() throws IOException {
+        if (journalEnabled) {
+            journal.sync();
+        } else {
+            ChangeJournal.force(filePath);
+        }
+    }
 
-                Customer customer = new Customer(id, name, phone, email, address, type);
-                customers.add(customer);
+    @Override
+    public boolean isJournalEnabled() {
+        return journalEnabled;
+    }
+
+    @Override
+    public void compact() throws IOException {
+        journal.compact(() -> {
+            List<String> lines;
+            synchronized (mutationLock) {
+                lines = journal.captureAndRotate(() -> customers.values().stream()
+                        .map(Customer::toCSV)
+                        .collect(Collectors.toList()));
+            }
+            ChangeJournal.writeSnapshot(filePath, HEADER, lines);
+            journal.discardRotated();
+        });
+    }
+
+    @Override
+    public void saveSnapshot() throws IOException {
+        List<Customer> snapshot = customers.values();
+        BinarySnapshot.write(snapshotPath, SNAPSHOT_KIND, BinarySnapshot.sourcesOf(filePath), out -> {
+            out.writeInt(snapshot.size());
+            for (Customer customer : snapshot) {
+                out.writeString(customer.getId());
+                out.writeString(customer.getName());
+                out.writeString(customer.getPhone());
+                out.writeString(customer.getEmail());
+                out.writeString(customer.getAddress());
+                out.writeEnum(customer.getType());
+            }
+        });
+    }
+
+    @Override
+    public boolean loadSnapshot() throws IOException {
+        List<Customer> loaded = new ArrayList<>();
+        boolean valid = BinarySnapshot.read(snapshotPath, SNAPSHOT_KIND, BinarySnapshot.sourcesOf(filePath), in -> {
+            int count = in.readCount();
+            for (int i = 0; i < count; i++) {
+                loaded.add(new Customer(in.readString(), in.readString(), in.readString(),
+                        in.readString(), in.readString(), in.readEnum(CUSTOMER_TYPES)));
             }
+        });
+        if (!valid) {
+            return false;
         }
+
+        customers.clear();
+        for (Customer customer : loaded) {
+            customers.put(customer);
+        }
+        return true;
     }
 
     @Override
@@ -77,52 +201,46 @@ public class CustomerRepository implements Persistable, Searchable<Customer> {
 
     @Override
     public Customer findById(String id) {
-        return customers.stream()
-                .filter(c -> c.getId().equals(id))
-                .findFirst()
-                .orElse(null);
+        return customers.get(id);
     }
 
     @Override
     public List<Customer> findByName(String name) {
-        String lowerName = name.toLowerCase();
-        return customers.stream()
-                .filter(c -> c.getName().toLowerCase().contains(lowerName))
-                .collect(Collectors.toList());
+        return textIndex.search(name.toLowerCase(), NAME_FIELD);
     }
 
     @Override
     public List<Customer> findAll() {
-        return new ArrayList<>(customers);
+        return customers.values();
     }
 
     @Override
     public List<Customer> search(String criteria) {
-        String lower = criteria.toLowerCase();
-        return customers.stream()
-                .filter(c -> c.getName().toLowerCase().contains(lower) ||
-                        c.getPhone().contains(lower) ||
-                        c.getEmail().toLowerCase().contains(lower))
-                .collect(Collectors.toList());
+        return textIndex.search(criteria.toLowerCase(), NAME_FIELD, PHONE_FIELD, EMAIL_FIELD);
     }
 
     // CRUD operations
     public void add(Customer customer) {
-        customers.add(customer);
+        synchronized (mutationLock) {
+            customers.put(customer);
+            journal.markChanged(customer.getId());
+        }
     }
 
     public void update(Customer customer) {
-        Customer existing = findById(customer.getId());
-        if (existing != null) {
-            customers.remove(existing);
-            customers.add(customer);
+        synchronized (mutationLock) {
+            if (customers.contains(customer.getId())) {
+                customers.put(customer);
+                journal.markChanged(customer.getId());
+            }
         }
     }
 
     public void delete(String id) {
-        Customer customer = findById(id);
-        if (customer != null) {
-            customers.remove(customer);
+        synchronized (mutationLock) {
+            if (customers.remove(id) != null) {
+                journal.markDeleted(id);
+            }
         }
     }
 
@@ -0,0 +1,55 @@
+package repository;
+
+import domain.Order;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Chỉ mục đơn hàng theo ngày (orderDate) dùng TreeMap.
+ * Truy vấn theo khoảng ngày chỉ duyệt các ngày nằm trong khoảng.
+ * Các thao tác được đồng bộ hóa để nhiều luồng có thể cập nhật đơn cùng lúc.
+ * @param <T> Loại đơn hàng (nhập/xuất)
+ */
+public class DateIndex<T extends Order> {
+    private final NavigableMap<LocalDate, Map<String, T>> byDate = new TreeMap<>();
+
+    public synchronized void add(T order) {
+        byDate.computeIfAbsent(order.getOrderDate(), d -> new LinkedHashMap<>())
+                .put(order.getId(), order);
+    }
+
+    public synchronized void remove(T order) {
+        Map<String, T> sameDay = byDate.get(order.getOrderDate());
+        if (sameDay == null) {
+            return;
+        }
+        sameDay.remove(order.getId());
+        if (sameDay.isEmpty()) {
+            byDate.remove(order.getOrderDate());
+        }
+    }
+
+    /**
+     * Lấy các đơn có ngày trong [from, to] (bao gồm 2 đầu), sắp xếp theo ngày
+     */
+    public synchronized List<T> range(LocalDate from, LocalDate to) {
+        List<T> result = new ArrayList<>();
+        if (from.isAfter(to)) {
+            return result;
+        }
+        for (Map<String, T> sameDay : byDate.subMap(from, true, to, true).values()) {
+            result.addAll(sameDay.values());
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        byDate.clear();
+    }
+}
@@ -0,0 +1,163 @@
+package repository;
+
+import interfaces.Persistable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ghi gộp (group commit) cho nhiều luồng cùng yêu cầu lưu.
+ * Các yêu cầu commit() được xếp hàng; 1 luồng ghi duy nhất lấy hết các yêu cầu đang chờ,
+ * gọi save() rồi sync() (fsync) các repository 1 lần cho cả nhóm và báo xong cho tất cả.
+ * Trong lúc 1 nhóm đang ghi, các yêu cầu mới dồn lại thành nhóm kế tiếp, nên mỗi yêu cầu
+ * chờ tối đa khoảng 2 lần ghi và số lần fsync không tăng theo số luồng.
+ * Mỗi chương trình dùng 1 writer (ConsoleMenu tạo và đóng khi thoát); luồng ghi không phải
+ * daemon nên JVM không thể dừng giữa lúc đang ghi/fsync.
+ */
+public class GroupCommitWriter implements Closeable {
+    // Đánh dấu cho luồng ghi dừng sau khi đã ghi các yêu cầu xếp trước nó
+    private static final CompletableFuture<Void> STOP = new CompletableFuture<>();
+
+    private final StockLedger stockLedger;
+    private final List<Persistable> repositories;
+    private final BlockingQueue<CompletableFuture<Void>> requests;
+    private final Thread writer;
+    private boolean closed; // chỉ đọc/ghi khi giữ khóa this
+    private final AtomicLong commitCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+
+    /**
+     * @param stockLedger sổ cái tồn kho, luôn được lưu trước (ghi trước - write-ahead) để biến động
+     *                    tồn kho không bị mất khi các file khác đã lưu
+     * @param repositories các repository được lưu sau sổ cái trong mỗi lần ghi
+     */
+    public GroupCommitWriter(StockLedger stockLedger, Persistable... repositories) {
+        this.stockLedger = stockLedger;
+        this.repositories = List.of(repositories);
+        this.requests = new LinkedBlockingQueue<>();
+
+        this.writer = new Thread(this::run, "group-commit");
+        writer.start();
+    }
+
+    /**
+     * Yêu cầu lưu và chờ đến khi các thay đổi đã thực hiện trước lời gọi này nằm trên đĩa
+     * @throws IOException nếu lần ghi chứa yêu cầu này bị lỗi
+     * @throws IllegalStateException nếu writer đã đóng
+     */
+    public void commit() throws IOException {
+        CompletableFuture<Void> request = new CompletableFuture<>();
+        synchronized (this) {
+            // Xếp hàng trong khóa để không có yêu cầu nào lọt vào sau dấu dừng của close()
+            if (closed) {
+                throw new IllegalStateException("GroupCommitWriter đã đóng");
+            }
+            commitCount.incrementAndGet();
+            requests.add(request);
+        }
+
+        try {
+            request.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Số yêu cầu commit() đã nhận
+     */
+    public long getCommitCount() {
+        return commitCount.get();
+    }
+
+    /**
+     * Số lần ghi + fsync thực tế (nhỏ hơn số yêu cầu khi có nhiều luồng cùng lưu)
+     */
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * Không nhận yêu cầu mới, ghi nốt các yêu cầu đang chờ rồi dừng luồng ghi (chờ đến khi xong)
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (!closed) {
+                closed = true;
+                requests.add(STOP);
+            }
+        }
+
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                // Vẫn chờ ghi xong: thoát giữa lúc fsync có thể làm mất dữ liệu đã báo thành công
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<CompletableFuture<Void>> batch = new ArrayList<>();
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(requests.take());
+            } catch (InterruptedException e) {
+                continue; // chỉ dừng qua close() để không bỏ dở yêu cầu đang chờ
+            }
+            requests.drainTo(batch);
+            stopping = batch.remove(STOP);
+            if (batch.isEmpty()) {
+                continue;
+            }
+
+            try {
+                stockLedger.save();
+                for (Persistable repository : repositories) {
+                    repository.save();
+                }
+                stockLedger.sync();
+                for (Persistable repository : repositories) {
+                    repository.sync();
+                }
+                flushCount.incrementAndGet();
+                for (CompletableFuture<Void> request : batch) {
+                    request.complete(null);
+                }
+            } catch (IOException e) {
+                failAll(batch, new UncheckedIOException(e));
+            } catch (RuntimeException e) {
+                failAll(batch, e);
+            }
+            batch.clear();
+        }
+    }
+
+    private static void failAll(List<CompletableFuture<Void>> batch, RuntimeException error) {
+        for (CompletableFuture<Void> request : batch) {
+            request.completeExceptionally(error);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package repository;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Kho lưu trữ trong bộ nhớ dùng chung cho các repository.
+ * Đánh chỉ mục theo ID bằng hash map (tra cứu/cập nhật/xóa O(1))
+ * và giữ nguyên thứ tự thêm vào để findAll() trả về kết quả ổn định.
+ * Các thao tác đơn lẻ được đồng bộ hóa để luồng nền (gộp nhật ký) có thể đọc an toàn.
+ * Có thể gắn thêm chỉ mục phụ (vd: TrigramIndex), được cập nhật cùng lúc với kho.
+ * @param <T> Kiểu entity được lưu
+ */
+public class IndexedStore<T> {
+    private final Map<String, T> entries;
+    private final Function<T, String> idExtractor;
+    private final List<SecondaryIndex<T>> indexes;
+
+    public IndexedStore(Function<T, String> idExtractor) {
+        this.entries = new LinkedHashMap<>();
+        this.idExtractor = idExtractor;
+        this.indexes = new ArrayList<>();
+    }
+
+    /**
+     * Gắn chỉ mục phụ, đánh chỉ mục luôn các entity hiện có
+     */
+    public synchronized void addIndex(SecondaryIndex<T> index) {
+        indexes.add(index);
+        for (T entity : entries.values()) {
+            index.put(entity);
+        }
+    }
+
+    /**
+     * Thêm mới hoặc thay thế entity có cùng ID (giữ nguyên vị trí cũ)
+     * @return entity cũ bị thay thế hoặc null
+     */
+    public synchronized T put(T entity) {
+        T replaced = entries.put(idExtractor.apply(entity), entity);
+        for (SecondaryIndex<T> index : indexes) {
+            index.put(entity);
+        }
+        return replaced;
+    }
+
+    public synchronized T get(String id) {
+        return entries.get(id);
+    }
+
+    public synchronized boolean contains(String id) {
+        return entries.containsKey(id);
+    }
+
+    /**
+     * Xóa entity theo ID
+     * @return entity đã xóa hoặc null nếu không tồn tại
+     */
+    public synchronized T remove(String id) {
+        T removed = entries.remove(id);
+        if (removed != null) {
+            for (SecondaryIndex<T> index : indexes) {
+                index.remove(id);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Bản sao danh sách entity theo thứ tự thêm vào
+     */
+    public synchronized List<T> values() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Duyệt trên bản sao nên an toàn khi luồng khác đang ghi
+     */
+    public Stream<T> stream() {
+        return values().stream();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        for (SecondaryIndex<T> index : indexes) {
+            index.clear();
+        }
+    }
+
+    /**
+     * Chỉ mục phụ được kho cập nhật mỗi khi thêm/sửa/xóa
+     */
+    public interface SecondaryIndex<T> {
+        // Thêm mới hoặc thay thế entity có cùng ID
+        void put(T entity);
+
+        void remove(String id);
+
+        void clear();
+    }
+}
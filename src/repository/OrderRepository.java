@@ -7,19 +7,41 @@ import interfaces.Persistable;
 import java.io.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 public class OrderRepository implements Persistable {
-    private List<ImportOrder> importOrders;
-    private List<ExportOrder> exportOrders;
-    private Map<String, List<OrderItem>> orderItems; // orderId -> List<OrderItem>
+    private static final String IMPORT_HEADER = "orderId,supplierId,orderDate,totalAmount,status,warehouseLocation";
+    private static final String EXPORT_HEADER = "orderId,customerId,orderDate,totalAmount,status,deliveryAddress";
+    private static final String ITEMS_HEADER = "orderId,productId,quantity,unitPrice";
+    private static final OrderStatus[] ORDER_STATUSES = OrderStatus.values();
+    private static final String SNAPSHOT_KIND = "orders";
+
+    private final IndexedStore<ImportOrder> importOrders;
+    private final IndexedStore<ExportOrder> exportOrders;
+    private final Map<String, List<OrderItem>> orderItems; // orderId -> List<OrderItem>
+    private final DateIndex<ImportOrder> importDateIndex;
+    private final DateIndex<ExportOrder> exportDateIndex;
 
     private final String importFilePath;
     private final String exportFilePath;
     private final String itemsFilePath;
+    private final String snapshotPath; // 1 snapshot cho cả 3 file
+
+    private final ChangeJournal importJournal;
+    private final ChangeJournal exportJournal;
+    private final ChangeJournal itemsJournal;
+    private boolean journalEnabled;
+    // Thêm/sửa/xóa đơn (cả bảng đơn, item và chỉ mục ngày) và lúc gộp nhật ký chụp dữ liệu
+    // dùng chung khóa này, nên bản chụp không thấy thao tác dở dang
+    private final Object mutationLock = new Object();
+
+    // Nhóm item của dòng vừa đọc (chỉ dùng trong lúc load)
+    private String lastItemOrderId;
+    private List<OrderItem> lastItemGroup;
 
     private CustomerRepository customerRepository;
     private SupplierRepository supplierRepository;
@@ -29,9 +51,16 @@ public class OrderRepository implements Persistable {
         this.importFilePath = importFilePath;
         this.exportFilePath = exportFilePath;
         this.itemsFilePath = itemsFilePath;
-        this.importOrders = new ArrayList<>();
-        this.exportOrders = new ArrayList<>();
-        this.orderItems = new HashMap<>();
+        this.snapshotPath = new File(new File(importFilePath).getParentFile(),
+                "orders" + BinarySnapshot.EXTENSION).getPath();
+        this.importOrders = new IndexedStore<>(ImportOrder::getId);
+        this.exportOrders = new IndexedStore<>(ExportOrder::getId);
+        this.orderItems = Collections.synchronizedMap(new LinkedHashMap<>());
+        this.importDateIndex = new DateIndex<>();
+        this.exportDateIndex = new DateIndex<>();
+        this.importJournal = new ChangeJournal(importFilePath);
+        this.exportJournal = new ChangeJournal(exportFilePath);
+        this.itemsJournal = new ChangeJournal(itemsFilePath);
     }
 
     // Inject dependencies
@@ -48,173 +77,282 @@ public class OrderRepository implements Persistable {
     }
 
     @Override
-    public void save() throws IOException {
-        saveImportOrders();
-        saveExportOrders();
-        saveOrderItems();
+    public synchronized void save() throws IOException {
+        if (!isDirty()) {
+            return; // Không có thay đổi, không ghi lại file
+        }
+
+        if (journalEnabled) {
+            importJournal.flush(id -> {
+                ImportOrder order = importOrders.get(id);
+                return order != null ? order.toCSV() : null;
+            });
+            exportJournal.flush(id -> {
+                ExportOrder order = exportOrders.get(id);
+                return order != null ? order.toCSV() : null;
+            });
+            itemsJournal.flushGroups(this::itemLines);
+
+            importJournal.compactIfNeeded(this::compactImportOrders);
+            exportJournal.compactIfNeeded(this::compactExportOrders);
+            itemsJournal.compactIfNeeded(this::compactOrderItems);
+            return;
+        }
+
+        // Chỉ ghi lại file có thay đổi
+        if (importJournal.hasPendingChanges()) {
+            saveImportOrders();
+        }
+        if (exportJournal.hasPendingChanges()) {
+            saveExportOrders();
+        }
+        if (itemsJournal.hasPendingChanges()) {
+            saveOrderItems();
+        }
+    }
+
+    @Override
+    public boolean isDirty() {
+        return importJournal.hasPendingChanges() || exportJournal.hasPendingChanges()
+                || itemsJournal.hasPendingChanges();
     }
 
     private void saveImportOrders() throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(importFilePath))) {
-            // Header
-            writer.write("orderId,supplierId,orderDate,totalAmount,status,warehouseLocation");
-            writer.newLine();
-
-            // Data
-            for (ImportOrder order : importOrders) {
-                writer.write(order.toCSV());
+        importJournal.rewrite(() -> {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(importFilePath))) {
+                // Header
+                writer.write(IMPORT_HEADER);
                 writer.newLine();
+
+                // Data
+                for (ImportOrder order : importOrders.values()) {
+                    writer.write(order.toCSV());
+                    writer.newLine();
+                }
             }
-        }
+        });
     }
 
     private void saveExportOrders() throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(exportFilePath))) {
-            // Header
-            writer.write("orderId,customerId,orderDate,totalAmount,status,deliveryAddress");
-            writer.newLine();
-
-            // Data
-            for (ExportOrder order : exportOrders) {
-                writer.write(order.toCSV());
+        exportJournal.rewrite(() -> {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(exportFilePath))) {
+                // Header
+                writer.write(EXPORT_HEADER);
                 writer.newLine();
+
+                // Data
+                for (ExportOrder order : exportOrders.values()) {
+                    writer.write(order.toCSV());
+                    writer.newLine();
+                }
             }
-        }
+        });
     }
 
     private void saveOrderItems() throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(itemsFilePath))) {
-            // Header
-            writer.write("orderId,productId,quantity,unitPrice");
-            writer.newLine();
+        itemsJournal.rewrite(() -> {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(itemsFilePath))) {
+                // Header
+                writer.write(ITEMS_HEADER);
+                writer.newLine();
+
+                // Data
+                for (String line : allItemLines()) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+        });
+    }
 
-            // Data
+    // Các dòng CSV item của 1 đơn, null nếu đơn không còn item
+    private List<String> itemLines(String orderId) {
+        List<OrderItem> items = orderItems.get(orderId);
+        if (items == null) {
+            return null;
+        }
+        List<String> lines = new ArrayList<>();
+        for (OrderItem item : items) {
+            lines.add(item.toCSV(orderId));
+        }
+        return lines;
+    }
+
+    private List<String> allItemLines() {
+        List<String> lines = new ArrayList<>();
+        synchronized (orderItems) {
             for (Map.Entry<String, List<OrderItem>> entry : orderItems.entrySet()) {
                 String orderId = entry.getKey();
                 for (OrderItem item : entry.getValue()) {
-                    writer.write(item.toCSV(orderId));
-                    writer.newLine();
+                    lines.add(item.toCSV(orderId));
                 }
             }
         }
+        return lines;
     }
 
     @Override
     public void load() throws IOException {
-        loadImportOrders();
-        loadExportOrders();
-        loadOrderItems();
+        // 3 file độc lập nhau: đọc song song rồi mới gán item vào đơn
+        StartupLoader.awaitAll(StartupLoader.runAsync(this::loadImportOrders),
+                StartupLoader.runAsync(this::loadExportOrders),
+                StartupLoader.runAsync(this::loadOrderItems));
+        attachOrderItems();
     }
 
     private void loadImportOrders() throws IOException {
         importOrders.clear();
+        importDateIndex.clear();
 
         File file = new File(importFilePath);
-        if (!file.exists()) {
-            return;
+        if (file.exists()) {
+            try (CsvBulkReader reader = CsvBulkReader.open(importFilePath)) {
+                reader.nextRow(); // Skip header
+
+                while (reader.nextRow()) {
+                    ImportOrder order = parseImportOrder(reader, 0);
+                    if (order != null) {
+                        indexImportOrder(order);
+                    }
+                }
+            }
         }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(importFilePath))) {
-            String line = reader.readLine(); // Skip header
+        // Áp dụng các thay đổi chưa được gộp vào snapshot
+        importJournal.replay((row, offset) -> {
+            ImportOrder order = parseImportOrder(row, offset);
+            if (order != null) {
+                indexImportOrder(order);
+            }
+        }, this::unindexImportOrder);
+    }
 
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) continue;
+    private ImportOrder parseImportOrder(CsvBulkReader row, int offset) {
+        if (row.isBlankRow()) return null;
+        if (row.fieldCount() - offset < 6) return null;
 
-                String[] parts = line.split(",", -1);
-                if (parts.length < 6) continue;
+        String orderId = row.getString(offset);
+        LocalDate orderDate = row.getDate(offset + 2);
+        double totalAmount = row.getDouble(offset + 3);
+        OrderStatus status = row.getEnum(offset + 4, ORDER_STATUSES);
+        String warehouseLocation = row.getString(offset + 5);
 
-                String orderId = parts[0];
-                String supplierId = parts[1];
-                LocalDate orderDate = LocalDate.parse(parts[2]);
-                double totalAmount = Double.parseDouble(parts[3]);
-                OrderStatus status = OrderStatus.valueOf(parts[4]);
-                String warehouseLocation = parts[5];
+        Supplier supplier = supplierRepository != null && !row.isEmpty(offset + 1) ?
+                supplierRepository.findById(row.getString(offset + 1)) : null;
 
-                Supplier supplier = supplierRepository != null ?
-                        supplierRepository.findById(supplierId) : null;
-
-                ImportOrder order = new ImportOrder(orderId, orderDate, totalAmount,
-                        status, supplier, warehouseLocation);
-                importOrders.add(order);
-            }
-        }
+        return new ImportOrder(orderId, orderDate, totalAmount,
+                status, supplier, warehouseLocation);
     }
 
     private void loadExportOrders() throws IOException {
         exportOrders.clear();
+        exportDateIndex.clear();
 
         File file = new File(exportFilePath);
-        if (!file.exists()) {
-            return;
+        if (file.exists()) {
+            try (CsvBulkReader reader = CsvBulkReader.open(exportFilePath)) {
+                reader.nextRow(); // Skip header
+
+                while (reader.nextRow()) {
+                    ExportOrder order = parseExportOrder(reader, 0);
+                    if (order != null) {
+                        indexExportOrder(order);
+                    }
+                }
+            }
         }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(exportFilePath))) {
-            String line = reader.readLine(); // Skip header
+        // Áp dụng các thay đổi chưa được gộp vào snapshot
+        exportJournal.replay((row, offset) -> {
+            ExportOrder order = parseExportOrder(row, offset);
+            if (order != null) {
+                indexExportOrder(order);
+            }
+        }, this::unindexExportOrder);
+    }
 
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) continue;
+    private ExportOrder parseExportOrder(CsvBulkReader row, int offset) {
+        if (row.isBlankRow()) return null;
+        if (row.fieldCount() - offset < 6) return null;
 
-                String[] parts = line.split(",", -1);
-                if (parts.length < 6) continue;
+        String orderId = row.getString(offset);
+        LocalDate orderDate = row.getDate(offset + 2);
+        double totalAmount = row.getDouble(offset + 3);
+        OrderStatus status = row.getEnum(offset + 4, ORDER_STATUSES);
+        String deliveryAddress = row.getString(offset + 5);
 
-                String orderId = parts[0];
-                String customerId = parts[1];
-                LocalDate orderDate = LocalDate.parse(parts[2]);
-                double totalAmount = Double.parseDouble(parts[3]);
-                OrderStatus status = OrderStatus.valueOf(parts[4]);
-                String deliveryAddress = parts[5];
+        Customer customer = customerRepository != null && !row.isEmpty(offset + 1) ?
+                customerRepository.findById(row.getString(offset + 1)) : null;
 
-                Customer customer = customerRepository != null ?
-                        customerRepository.findById(customerId) : null;
-
-                ExportOrder order = new ExportOrder(orderId, orderDate, totalAmount,
-                        status, customer, deliveryAddress);
-                exportOrders.add(order);
-            }
-        }
+        return new ExportOrder(orderId, orderDate, totalAmount,
+                status, customer, deliveryAddress);
     }
 
+    /**
+     * Đọc order_items.csv và gom nhóm item theo orderId (1 lượt đọc, tra cứu
+     * sản phẩm qua chỉ mục hash). Việc gán item vào đơn làm ở attachOrderItems().
+     */
     private void loadOrderItems() throws IOException {
         orderItems.clear();
+        lastItemOrderId = null;
+        lastItemGroup = null;
 
         File file = new File(itemsFilePath);
-        if (!file.exists()) {
-            return;
-        }
+        if (file.exists()) {
+            try (CsvBulkReader reader = CsvBulkReader.open(itemsFilePath)) {
+                reader.nextRow(); // Skip header
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(itemsFilePath))) {
-            String line = reader.readLine(); // Skip header
-
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) continue;
+                while (reader.nextRow()) {
+                    addItemRow(reader, 0);
+                }
+            }
+        }
 
-                String[] parts = line.split(",", -1);
-                if (parts.length < 4) continue;
+        // Nhật ký item: "D,orderId" xóa cả nhóm, "U,..." thêm 1 item vào nhóm
+        itemsJournal.replay(this::addItemRow, orderId -> {
+            orderItems.remove(orderId);
+            lastItemOrderId = null;
+            lastItemGroup = null;
+        });
+        lastItemOrderId = null;
+        lastItemGroup = null;
+    }
 
-                String orderId = parts[0];
-                String productId = parts[1];
-                int quantity = Integer.parseInt(parts[2]);
-                double unitPrice = Double.parseDouble(parts[3]);
+    private void addItemRow(CsvBulkReader row, int offset) {
+        if (row.isBlankRow()) return;
+        if (row.fieldCount() - offset < 4) return;
 
-                Product product = productRepository != null ?
-                        productRepository.findById(productId) : null;
+        Product product = productRepository != null ?
+                productRepository.findById(row.getString(offset + 1)) : null;
+        if (product == null) return;
 
-                if (product != null) {
-                    OrderItem item = new OrderItem(product, quantity, unitPrice);
+        int quantity = row.getInt(offset + 2);
+        double unitPrice = row.getDouble(offset + 3);
 
-                    orderItems.computeIfAbsent(orderId, k -> new ArrayList<>()).add(item);
+        // Các dòng cùng đơn thường liền nhau: dùng lại nhóm trước, khỏi tạo lại String orderId
+        if (lastItemOrderId == null || !row.fieldEquals(offset, lastItemOrderId)) {
+            lastItemOrderId = row.getString(offset);
+            lastItemGroup = orderItems.computeIfAbsent(lastItemOrderId, k -> new ArrayList<>());
+        }
+        lastItemGroup.add(new OrderItem(product, quantity, unitPrice));
+    }
 
-                    // Gán items vào order tương ứng
-                    ImportOrder importOrder = findImportOrderById(orderId);
-                    if (importOrder != null) {
-                        importOrder.setItems(orderItems.get(orderId));
-                    }
+    /**
+     * Hash-join: gán mỗi nhóm item vào đơn tương ứng, mỗi đơn chỉ tính tổng tiền 1 lần
+     */
+    private void attachOrderItems() {
+        for (Map.Entry<String, List<OrderItem>> entry : orderItems.entrySet()) {
+            String orderId = entry.getKey();
+            List<OrderItem> items = entry.getValue();
+
+            ImportOrder importOrder = importOrders.get(orderId);
+            if (importOrder != null) {
+                importOrder.setItems(items);
+            }
 
-                    ExportOrder exportOrder = findExportOrderById(orderId);
-                    if (exportOrder != null) {
-                        exportOrder.setItems(orderItems.get(orderId));
-                    }
-                }
+            ExportOrder exportOrder = exportOrders.get(orderId);
+            if (exportOrder != null) {
+                exportOrder.setItems(items);
             }
         }
     }
@@ -229,75 +367,343 @@ public class OrderRepository implements Persistable {
         importOrders.clear();
         exportOrders.clear();
         orderItems.clear();
+        importDateIndex.clear();
+        exportDateIndex.clear();
+    }
+
+    @Override
+    public void setJournalEnabled(boolean enabled) {
+        this.journalEnabled = enabled;
+    }
+
+    @Override
+    public void sync() throws IOException {
+        if (journalEnabled) {
+            importJournal.sync();
+            exportJournal.sync();
+            itemsJournal.sync();
+        } else {
+            ChangeJournal.force(importFilePath);
+            ChangeJournal.force(exportFilePath);
+            ChangeJournal.force(itemsFilePath);
+        }
+    }
+
+    @Override
+    public boolean isJournalEnabled() {
+        return journalEnabled;
+    }
+
+    @Override
+    public void compact() throws IOException {
+        compactImportOrders();
+        compactExportOrders();
+        compactOrderItems();
+    }
+
+    private void compactImportOrders() throws IOException {
+        importJournal.compact(() -> {
+            List<String> lines;
+            synchronized (mutationLock) {
+                lines = importJournal.captureAndRotate(() -> importOrders.values().stream()
+                        .map(ImportOrder::toCSV)
+                        .collect(Collectors.toList()));
+            }
+            ChangeJournal.writeSnapshot(importFilePath, IMPORT_HEADER, lines);
+            importJournal.discardRotated();
+        });
+    }
+
+    private void compactExportOrders() throws IOException {
+        exportJournal.compact(() -> {
+            List<String> lines;
+            synchronized (mutationLock) {
+                lines = exportJournal.captureAndRotate(() -> exportOrders.values().stream()
+                        .map(ExportOrder::toCSV)
+                        .collect(Collectors.toList()));
+            }
+            ChangeJournal.writeSnapshot(exportFilePath, EXPORT_HEADER, lines);
+            exportJournal.discardRotated();
+        });
+    }
+
+    private void compactOrderItems() throws IOException {
+        itemsJournal.compact(() -> {
+            List<String> lines;
+            synchronized (mutationLock) {
+                lines = itemsJournal.captureAndRotate(this::allItemLines);
+            }
+            ChangeJournal.writeSnapshot(itemsFilePath, ITEMS_HEADER, lines);
+            itemsJournal.discardRotated();
+        });
+    }
+
+    private String[] snapshotSources() {
+        return BinarySnapshot.sourcesOf(importFilePath, exportFilePath, itemsFilePath);
+    }
+
+    @Override
+    public void saveSnapshot() throws IOException {
+        List<ImportOrder> imports = importOrders.values();
+        List<ExportOrder> exports = exportOrders.values();
+        Map<String, List<OrderItem>> groups;
+        synchronized (orderItems) {
+            groups = new LinkedHashMap<>(orderItems);
+        }
+
+        BinarySnapshot.write(snapshotPath, SNAPSHOT_KIND, snapshotSources(), out -> {
+            out.writeInt(imports.size());
+            for (ImportOrder order : imports) {
+                out.writeString(order.getId());
+                out.writeString(order.getSupplier() != null ? order.getSupplier().getId() : null);
+                out.writeDate(order.getOrderDate());
+                out.writeDouble(order.getTotalAmount());
+                out.writeEnum(order.getStatus());
+                out.writeString(order.getWarehouseLocation());
+            }
+
+            out.writeInt(exports.size());
+            for (ExportOrder order : exports) {
+                out.writeString(order.getId());
+                out.writeString(order.getCustomer() != null ? order.getCustomer().getId() : null);
+                out.writeDate(order.getOrderDate());
+                out.writeDouble(order.getTotalAmount());
+                out.writeEnum(order.getStatus());
+                out.writeString(order.getDeliveryAddress());
+            }
+
+            out.writeInt(groups.size());
+            for (Map.Entry<String, List<OrderItem>> entry : groups.entrySet()) {
+                out.writeString(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (OrderItem item : entry.getValue()) {
+                    out.writeString(item.getProduct().getId());
+                    out.writeInt(item.getQuantity());
+                    out.writeDouble(item.getUnitPrice());
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean loadSnapshot() throws IOException {
+        List<ImportOrder> imports = new ArrayList<>();
+        List<ExportOrder> exports = new ArrayList<>();
+        Map<String, List<OrderItem>> groups = new LinkedHashMap<>();
+
+        boolean valid = BinarySnapshot.read(snapshotPath, SNAPSHOT_KIND, snapshotSources(), in -> {
+            int importCount = in.readCount();
+            for (int i = 0; i < importCount; i++) {
+                String orderId = in.readString();
+                String supplierId = in.readString();
+                LocalDate orderDate = in.readDate();
+                double totalAmount = in.readDouble();
+                OrderStatus status = in.readEnum(ORDER_STATUSES);
+                String warehouseLocation = in.readString();
+
+                Supplier supplier = supplierRepository != null && supplierId != null ?
+                        supplierRepository.findById(supplierId) : null;
+                imports.add(new ImportOrder(orderId, orderDate, totalAmount,
+                        status, supplier, warehouseLocation));
+            }
+
+            int exportCount = in.readCount();
+            for (int i = 0; i < exportCount; i++) {
+                String orderId = in.readString();
+                String customerId = in.readString();
+                LocalDate orderDate = in.readDate();
+                double totalAmount = in.readDouble();
+                OrderStatus status = in.readEnum(ORDER_STATUSES);
+                String deliveryAddress = in.readString();
+
+                Customer customer = customerRepository != null && customerId != null ?
+                        customerRepository.findById(customerId) : null;
+                exports.add(new ExportOrder(orderId, orderDate, totalAmount,
+                        status, customer, deliveryAddress));
+            }
+
+            int groupCount = in.readCount();
+            for (int i = 0; i < groupCount; i++) {
+                String orderId = in.readString();
+                int itemCount = in.readCount();
+                List<OrderItem> items = new ArrayList<>(itemCount);
+                for (int j = 0; j < itemCount; j++) {
+                    String productId = in.readString();
+                    int quantity = in.readInt();
+                    double unitPrice = in.readDouble();
+
+                    // Bỏ qua item của sản phẩm không còn tồn tại (giống khi đọc CSV)
+                    Product product = productRepository != null ?
+                            productRepository.findById(productId) : null;
+                    if (product != null) {
+                        items.add(new OrderItem(product, quantity, unitPrice));
+                    }
+                }
+                if (!items.isEmpty()) {
+                    groups.put(orderId, items);
+                }
+            }
+        });
+        if (!valid) {
+            return false;
+        }
+
+        clear();
+        for (ImportOrder order : imports) {
+            indexImportOrder(order);
+        }
+        for (ExportOrder order : exports) {
+            indexExportOrder(order);
+        }
+        orderItems.putAll(groups);
+        attachOrderItems();
+        return true;
+    }
+
+    /**
+     * Đăng ký nhận thông báo mỗi khi đơn nhập được thêm/sửa/xóa
+     * (các đơn hiện có được báo như vừa thêm)
+     */
+    public void addImportOrderListener(IndexedStore.SecondaryIndex<ImportOrder> listener) {
+        importOrders.addIndex(listener);
+    }
+
+    /**
+     * Đăng ký nhận thông báo mỗi khi đơn xuất được thêm/sửa/xóa
+     */
+    public void addExportOrderListener(IndexedStore.SecondaryIndex<ExportOrder> listener) {
+        exportOrders.addIndex(listener);
     }
 
     // Import Order operations
     public void addImportOrder(ImportOrder order) {
-        importOrders.add(order);
-        if (!order.getItems().isEmpty()) {
-            orderItems.put(order.getId(), order.getItems());
+        synchronized (mutationLock) {
+            indexImportOrder(order);
+            importJournal.markChanged(order.getId());
+            if (!order.getItems().isEmpty()) {
+                orderItems.put(order.getId(), order.getItems());
+                itemsJournal.markChanged(order.getId());
+            }
+        }
+    }
+
+    /**
+     * Ghi nhận thay đổi của đơn đã có (vd: đổi trạng thái) để lần save() sau lưu lại
+     */
+    public void updateImportOrder(ImportOrder order) {
+        synchronized (mutationLock) {
+            if (importOrders.contains(order.getId())) {
+                indexImportOrder(order);
+                importJournal.markChanged(order.getId());
+            }
+        }
+    }
+
+    private void indexImportOrder(ImportOrder order) {
+        ImportOrder replaced = importOrders.put(order);
+        if (replaced != null) {
+            importDateIndex.remove(replaced);
+        }
+        importDateIndex.add(order);
+    }
+
+    private void unindexImportOrder(String id) {
+        ImportOrder order = importOrders.remove(id);
+        if (order != null) {
+            importDateIndex.remove(order);
         }
     }
 
     public ImportOrder findImportOrderById(String id) {
-        return importOrders.stream()
-                .filter(o -> o.getId().equals(id))
-                .findFirst()
-                .orElse(null);
+        return importOrders.get(id);
     }
 
     public List<ImportOrder> findAllImportOrders() {
-        return new ArrayList<>(importOrders);
+        return importOrders.values();
     }
 
     public void deleteImportOrder(String id) throws OrderNotFoundException {
-        ImportOrder order = findImportOrderById(id);
-        if (order == null) {
-            throw new OrderNotFoundException(id, "IMPORT");
+        synchronized (mutationLock) {
+            ImportOrder order = importOrders.remove(id);
+            if (order == null) {
+                throw new OrderNotFoundException(id, "IMPORT");
+            }
+            importDateIndex.remove(order);
+            importJournal.markDeleted(id);
+            if (orderItems.remove(id) != null) {
+                itemsJournal.markDeleted(id);
+            }
         }
-        importOrders.remove(order);
-        orderItems.remove(id);
     }
 
     // Export Order operations
     public void addExportOrder(ExportOrder order) {
-        exportOrders.add(order);
-        if (!order.getItems().isEmpty()) {
-            orderItems.put(order.getId(), order.getItems());
+        synchronized (mutationLock) {
+            indexExportOrder(order);
+            exportJournal.markChanged(order.getId());
+            if (!order.getItems().isEmpty()) {
+                orderItems.put(order.getId(), order.getItems());
+                itemsJournal.markChanged(order.getId());
+            }
+        }
+    }
+
+    /**
+     * Ghi nhận thay đổi của đơn đã có (vd: đổi trạng thái) để lần save() sau lưu lại
+     */
+    public void updateExportOrder(ExportOrder order) {
+        synchronized (mutationLock) {
+            if (exportOrders.contains(order.getId())) {
+                indexExportOrder(order);
+                exportJournal.markChanged(order.getId());
+            }
+        }
+    }
+
+    private void indexExportOrder(ExportOrder order) {
+        ExportOrder replaced = exportOrders.put(order);
+        if (replaced != null) {
+            exportDateIndex.remove(replaced);
+        }
+        exportDateIndex.add(order);
+    }
+
+    private void unindexExportOrder(String id) {
+        ExportOrder order = exportOrders.remove(id);
+        if (order != null) {
+            exportDateIndex.remove(order);
         }
     }
 
     public ExportOrder findExportOrderById(String id) {
-        return exportOrders.stream()
-                .filter(o -> o.getId().equals(id))
-                .findFirst()
-                .orElse(null);
+        return exportOrders.get(id);
     }
 
     public List<ExportOrder> findAllExportOrders() {
-        return new ArrayList<>(exportOrders);
+        return exportOrders.values();
     }
 
     public void deleteExportOrder(String id) throws OrderNotFoundException {
-        ExportOrder order = findExportOrderById(id);
-        if (order == null) {
-            throw new OrderNotFoundException(id, "EXPORT");
+        synchronized (mutationLock) {
+            ExportOrder order = exportOrders.remove(id);
+            if (order == null) {
+                throw new OrderNotFoundException(id, "EXPORT");
+            }
+            exportDateIndex.remove(order);
+            exportJournal.markDeleted(id);
+            if (orderItems.remove(id) != null) {
+                itemsJournal.markDeleted(id);
+            }
         }
-        exportOrders.remove(order);
-        orderItems.remove(id);
     }
 
     // Statistics
     public List<ImportOrder> getImportOrdersByDateRange(LocalDate from, LocalDate to) {
-        return importOrders.stream()
-                .filter(o -> !o.getOrderDate().isBefore(from) && !o.getOrderDate().isAfter(to))
-                .collect(Collectors.toList());
+        return importDateIndex.range(from, to);
     }
 
     public List<ExportOrder> getExportOrdersByDateRange(LocalDate from, LocalDate to) {
-        return exportOrders.stream()
-                .filter(o -> !o.getOrderDate().isBefore(from) && !o.getOrderDate().isAfter(to))
-                .collect(Collectors.toList());
+        return exportDateIndex.range(from, to);
     }
 
     public int countImportOrders() {
@@ -8,31 +8,80 @@ import interfaces.Searchable;
 import java.io.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
 public class ProductRepository implements Persistable, Searchable<Product> {
-    private List<Product> products;
+    private static final String HEADER = "id,productType,name,category,importPrice,salePrice,stockQuantity,extra1,extra2";
+    private static final String SNAPSHOT_KIND = "products";
+
+    // Vị trí các trường trong chỉ mục tìm kiếm
+    private static final int NAME_FIELD = 0;
+    private static final int CATEGORY_FIELD = 1;
+    private static final int ID_FIELD = 2;
+
+    // Mã loại sản phẩm trong snapshot nhị phân
+    private static final byte ELECTRONICS = 0;
+    private static final byte CLOTHING = 1;
+    private static final byte FOOD = 2;
+    private static final byte FURNITURE = 3;
+
+    private final IndexedStore<Product> products;
+    private final TrigramIndex<Product> textIndex; // tên, danh mục, ID (chữ thường)
     private final String filePath;
+    private final String snapshotPath;
+    private final ChangeJournal journal;
+    private boolean journalEnabled;
+    // Thêm/sửa/xóa và lúc gộp nhật ký chụp dữ liệu dùng chung khóa này, nên bản chụp
+    // không thấy thao tác dở dang (đã sửa bộ nhớ nhưng chưa đánh dấu nhật ký)
+    private final Object mutationLock = new Object();
 
     public ProductRepository(String filePath) {
         this.filePath = filePath;
-        this.products = new ArrayList<>();
+        this.snapshotPath = BinarySnapshot.pathFor(filePath);
+        this.products = new IndexedStore<>(Product::getId);
+        this.textIndex = new TrigramIndex<>(Product::getId, Arrays.asList(
+                p -> p.getName().toLowerCase(),
+                p -> p.getCategory().toLowerCase(),
+                p -> p.getId().toLowerCase()));
+        this.products.addIndex(textIndex);
+        this.journal = new ChangeJournal(filePath);
     }
 
     @Override
-    public void save() throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            // Header
-            writer.write("id,productType,name,category,importPrice,salePrice,stockQuantity,extra1,extra2");
-            writer.newLine();
-
-            // Data
-            for (Product product : products) {
-                writer.write(product.toCSV());
+    public synchronized void save() throws IOException {
+        if (!isDirty()) {
+            return; // Không có thay đổi, không ghi lại file
+        }
+
+        if (journalEnabled) {
+            journal.flush(id -> {
+                Product product = products.get(id);
+                return product != null ? product.toCSV() : null;
+            });
+            journal.compactIfNeeded(this::compact);
+            return;
+        }
+
+        journal.rewrite(() -> {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
+                // Header
+                writer.write(HEADER);
                 writer.newLine();
+
+                // Data
+                for (Product product : products.values()) {
+                    writer.write(product.toCSV());
+                    writer.newLine();
+                }
             }
-        }
+        });
+    }
+
+    @Override
+    public boolean isDirty() {
+        return journal.hasPendingChanges();
     }
 
     @Override
@@ -40,61 +89,186 @@ public class ProductRepository implements Persistable, Searchable<Product> {
         products.clear();
 
         File file = new File(filePath);
-        if (!file.exists()) {
-            return; // File chưa tồn tại, return empty list
-        }
+        if (file.exists()) { // File chưa tồn tại thì chỉ đọc nhật ký
+            try (CsvBulkReader reader = CsvBulkReader.open(filePath)) {
+                reader.nextRow(); // Skip header
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line = reader.readLine(); // Skip header
-
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) continue;
-
-                String[] parts = line.split(",", -1); // -1 để giữ empty strings
-                if (parts.length < 9) continue;
-
-                String id = parts[0];
-                String productType = parts[1];
-                String name = parts[2];
-                String category = parts[3];
-                double importPrice = Double.parseDouble(parts[4]);
-                double salePrice = Double.parseDouble(parts[5]);
-                int stockQuantity = Integer.parseInt(parts[6]);
-
-                Product product = null;
-
-                switch (productType) {
-                    case "ELECTRONICS":
-                        int warrantyMonths = Integer.parseInt(parts[7]);
-                        product = new Electronics(id, name, category, importPrice,
-                                salePrice, stockQuantity, warrantyMonths);
-                        break;
-
-                    case "CLOTHING":
-                        String size = parts[7];
-                        String material = parts[8];
-                        product = new Clothing(id, name, category, importPrice,
-                                salePrice, stockQuantity, size, material);
-                        break;
-
-                    case "FOOD":
-                        LocalDate expiryDate = LocalDate.parse(parts[7]);
-                        product = new Food(id, name, category, importPrice,
-                                salePrice, stockQuantity, expiryDate);
-                        break;
-
-                    case "FURNITURE":
-                        String dimensions = parts[7];
-                        double weight = Double.parseDouble(parts[8]);
-                        product = new Furniture(id, name, category, importPrice,
-                                salePrice, stockQuantity, dimensions, weight);
-                        break;
+                while (reader.nextRow()) {
+                    Product product = parseRow(reader, 0);
+                    if (product != null) {
+                        products.put(product);
+                    }
                 }
+            }
+        }
 
-                if (product != null) {
-                    products.add(product);
-                }
+        // Áp dụng các thay đổi chưa được gộp vào snapshot
+        journal.replay((row, offset) -> {
+            Product product = parseRow(row, offset);
+            if (product != null) {
+                products.put(product);
+            }
+        }, products::remove);
+    }
+
+    // Đọc 1 sản phẩm, các cột bắt đầu từ vị trí offset
+    private Product parseRow(CsvBulkReader row, int offset) {
+        if (row.isBlankRow()) return null;
+        if (row.fieldCount() - offset < 9) return null;
+
+        int typeField = offset + 1;
+        String id = row.getString(offset);
+        String name = row.getString(offset + 2);
+        String category = row.getString(offset + 3);
+        double importPrice = row.getDouble(offset + 4);
+        double salePrice = row.getDouble(offset + 5);
+        int stockQuantity = row.getInt(offset + 6);
+
+        Product product = null;
+
+        if (row.fieldEquals(typeField, "ELECTRONICS")) {
+            int warrantyMonths = row.getInt(offset + 7);
+            product = new Electronics(id, name, category, importPrice,
+                    salePrice, stockQuantity, warrantyMonths);
+        } else if (row.fieldEquals(typeField, "CLOTHING")) {
+            String size = row.getString(offset + 7);
+            String material = row.getString(offset + 8);
+            product = new Clothing(id, name, category, importPrice,
+                    salePrice, stockQuantity, size, material);
+        } else if (row.fieldEquals(typeField, "FOOD")) {
+            LocalDate expiryDate = row.getDate(offset + 7);
+            product = new Food(id, name, category, importPrice,
+                    salePrice, stockQuantity, expiryDate);
+        } else if (row.fieldEquals(typeField, "FURNITURE")) {
+            String dimensions = row.getString(offset + 7);
+            double weight = row.getDouble(offset + 8);
+            product = new Furniture(id, name, category, importPrice,
+                    salePrice, stockQuantity, dimensions, weight);
+        }
+
+        return product;
+    }
+
+    @Override
+    public void setJournalEnabled(boolean enabled) {
+        this.journalEnabled = enabled;
+    }
+
+    @Override
+    public void sync() throws IOException {
+        if (journalEnabled) {
+            journal.sync();
+        } else {
+            ChangeJournal.force(filePath);
+        }
+    }
+
+    @Override
+    public boolean isJournalEnabled() {
+        return journalEnabled;
+    }
+
+    @Override
+    public void compact() throws IOException {
+        journal.compact(() -> {
+            List<String> lines;
+            synchronized (mutationLock) {
+                lines = journal.captureAndRotate(() -> products.values().stream()
+                        .map(Product::toCSV)
+                        .collect(Collectors.toList()));
             }
+            ChangeJournal.writeSnapshot(filePath, HEADER, lines);
+            journal.discardRotated();
+        });
+    }
+
+    @Override
+    public void saveSnapshot() throws IOException {
+        List<Product> snapshot = products.values();
+        BinarySnapshot.write(snapshotPath, SNAPSHOT_KIND, BinarySnapshot.sourcesOf(filePath), out -> {
+            out.writeInt(snapshot.size());
+            for (Product product : snapshot) {
+                writeProduct(out, product);
+            }
+        });
+    }
+
+    @Override
+    public boolean loadSnapshot() throws IOException {
+        List<Product> loaded = new ArrayList<>();
+        boolean valid = BinarySnapshot.read(snapshotPath, SNAPSHOT_KIND, BinarySnapshot.sourcesOf(filePath), in -> {
+            int count = in.readCount();
+            for (int i = 0; i < count; i++) {
+                loaded.add(readProduct(in));
+            }
+        });
+        if (!valid) {
+            return false;
+        }
+
+        products.clear();
+        for (Product product : loaded) {
+            products.put(product);
+        }
+        return true;
+    }
+
+    private void writeProduct(BinarySnapshot.Output out, Product product) throws IOException {
+        out.writeString(product.getId());
+        if (product instanceof Electronics) {
+            out.writeByte(ELECTRONICS);
+        } else if (product instanceof Clothing) {
+            out.writeByte(CLOTHING);
+        } else if (product instanceof Food) {
+            out.writeByte(FOOD);
+        } else if (product instanceof Furniture) {
+            out.writeByte(FURNITURE);
+        } else {
+            throw new IOException("Loại sản phẩm không hỗ trợ: " + product.getProductType());
+        }
+        out.writeString(product.getName());
+        out.writeString(product.getCategory());
+        out.writeDouble(product.getImportPrice());
+        out.writeDouble(product.getSalePrice());
+        out.writeInt(product.getStockQuantity());
+
+        if (product instanceof Electronics) {
+            out.writeInt(((Electronics) product).getWarrantyMonths());
+        } else if (product instanceof Clothing) {
+            out.writeString(((Clothing) product).getSize());
+            out.writeString(((Clothing) product).getMaterial());
+        } else if (product instanceof Food) {
+            out.writeDate(((Food) product).getExpiryDate());
+        } else {
+            out.writeString(((Furniture) product).getDimensions());
+            out.writeDouble(((Furniture) product).getWeight());
+        }
+    }
+
+    private Product readProduct(BinarySnapshot.Input in) throws IOException {
+        String id = in.readString();
+        byte type = in.readByte();
+        String name = in.readString();
+        String category = in.readString();
+        double importPrice = in.readDouble();
+        double salePrice = in.readDouble();
+        int stockQuantity = in.readInt();
+
+        switch (type) {
+            case ELECTRONICS:
+                return new Electronics(id, name, category, importPrice, salePrice, stockQuantity,
+                        in.readInt());
+            case CLOTHING:
+                return new Clothing(id, name, category, importPrice, salePrice, stockQuantity,
+                        in.readString(), in.readString());
+            case FOOD:
+                return new Food(id, name, category, importPrice, salePrice, stockQuantity,
+                        in.readDate());
+            case FURNITURE:
+                return new Furniture(id, name, category, importPrice, salePrice, stockQuantity,
+                        in.readString(), in.readDouble());
+            default:
+                throw new StreamCorruptedException("Loại sản phẩm không hợp lệ: " + type);
         }
     }
 
@@ -110,55 +284,57 @@ public class ProductRepository implements Persistable, Searchable<Product> {
 
     @Override
     public Product findById(String id) {
-        return products.stream()
-                .filter(p -> p.getId().equals(id))
-                .findFirst()
-                .orElse(null);
+        return products.get(id);
     }
 
     @Override
     public List<Product> findByName(String name) {
-        String lowerName = name.toLowerCase();
-        return products.stream()
-                .filter(p -> p.getName().toLowerCase().contains(lowerName))
-                .collect(Collectors.toList());
+        return textIndex.search(name.toLowerCase(), NAME_FIELD);
     }
 
     @Override
     public List<Product> findAll() {
-        return new ArrayList<>(products);
+        return products.values();
     }
 
     @Override
     public List<Product> search(String criteria) {
-        String lower = criteria.toLowerCase();
-        return products.stream()
-                .filter(p -> p.getName().toLowerCase().contains(lower) ||
-                        p.getCategory().toLowerCase().contains(lower) ||
-                        p.getId().toLowerCase().contains(lower))
-                .collect(Collectors.toList());
+        return textIndex.search(criteria.toLowerCase(), NAME_FIELD, CATEGORY_FIELD, ID_FIELD);
+    }
+
+    /**
+     * Đăng ký nhận thông báo mỗi khi sản phẩm được thêm/sửa/xóa
+     * (các sản phẩm hiện có được báo như vừa thêm)
+     */
+    public void addChangeListener(IndexedStore.SecondaryIndex<Product> listener) {
+        products.addIndex(listener);
     }
 
     // CRUD operations
     public void add(Product product) {
-        products.add(product);
+        synchronized (mutationLock) {
+            products.put(product);
+            journal.markChanged(product.getId());
+        }
     }
 
     public void update(Product product) throws ProductNotFoundException {
-        Product existing = findById(product.getId());
-        if (existing == null) {
-            throw new ProductNotFoundException(product.getId(), "ID");
+        synchronized (mutationLock) {
+            if (!products.contains(product.getId())) {
+                throw new ProductNotFoundException(product.getId(), "ID");
+            }
+            products.put(product);
+            journal.markChanged(product.getId());
         }
-        products.remove(existing);
-        products.add(product);
     }
 
     public void delete(String id) throws ProductNotFoundException {
-        Product product = findById(id);
-        if (product == null) {
-            throw new ProductNotFoundException(id, "ID");
+        synchronized (mutationLock) {
+            if (products.remove(id) == null) {
+                throw new ProductNotFoundException(id, "ID");
+            }
+            journal.markDeleted(id);
         }
-        products.remove(product);
     }
 
     public int count() {
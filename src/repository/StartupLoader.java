@@ -0,0 +1,144 @@
+package repository;
+
+import interfaces.Persistable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tải dữ liệu lúc khởi động theo thứ tự phụ thuộc:
+ *   Giai đoạn 1 - sản phẩm, khách hàng, nhà cung cấp (độc lập, tải song song)
+ *   Giai đoạn 2 - đơn hàng (cần tra cứu 3 repository trên)
+ * Mỗi repository ưu tiên đọc snapshot nhị phân, chỉ đọc CSV khi snapshot không dùng được.
+ * Thời gian của từng phần được ghi lại để xem thời gian khởi động tốn ở đâu.
+ */
+public class StartupLoader {
+    // Luồng tải dữ liệu (daemon để không giữ chương trình khi thoát)
+    private static final ExecutorService LOADER = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "startup-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ProductRepository productRepository;
+    private final CustomerRepository customerRepository;
+    private final SupplierRepository supplierRepository;
+    private final OrderRepository orderRepository;
+    private final Map<String, Long> timings; // tên phần -> thời gian (ms)
+
+    public StartupLoader(ProductRepository productRepository,
+                         CustomerRepository customerRepository,
+                         SupplierRepository supplierRepository,
+                         OrderRepository orderRepository) {
+        this.productRepository = productRepository;
+        this.customerRepository = customerRepository;
+        this.supplierRepository = supplierRepository;
+        this.orderRepository = orderRepository;
+        this.timings = Collections.synchronizedMap(new LinkedHashMap<>());
+    }
+
+    public void load() throws IOException {
+        timings.clear();
+        long start = System.nanoTime();
+
+        // Giai đoạn 1: các repository không phụ thuộc nhau
+        long phaseStart = System.nanoTime();
+        awaitAll(runAsync(loadPreferringSnapshot("Sản phẩm", productRepository)),
+                runAsync(loadPreferringSnapshot("Khách hàng", customerRepository)),
+                runAsync(loadPreferringSnapshot("Nhà cung cấp", supplierRepository)));
+        timings.put("Giai đoạn 1 (song song)", elapsedMillis(phaseStart));
+
+        // Giai đoạn 2: đơn hàng (tự đọc song song 3 file bên trong)
+        loadPreferringSnapshot("Giai đoạn 2 (đơn hàng)", orderRepository).run();
+
+        timings.put("Tổng", elapsedMillis(start));
+    }
+
+    /**
+     * Thời gian của từng phần trong lần tải gần nhất (ms), theo thứ tự hoàn thành
+     */
+    public Map<String, Long> getTimings() {
+        synchronized (timings) {
+            return new LinkedHashMap<>(timings);
+        }
+    }
+
+    public void printTimings() {
+        for (Map.Entry<String, Long> entry : getTimings().entrySet()) {
+            System.out.printf("  %-25s %6d ms%n", entry.getKey(), entry.getValue());
+        }
+    }
+
+    private LoadTask loadPreferringSnapshot(String name, Persistable repository) {
+        return () -> {
+            long taskStart = System.nanoTime();
+            boolean fromSnapshot = repository.loadSnapshot();
+            if (!fromSnapshot) {
+                repository.load();
+            }
+            timings.put(name + (fromSnapshot ? " [snapshot]" : " [CSV]"), elapsedMillis(taskStart));
+        };
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    /**
+     * Chạy tác vụ tải ở luồng nền
+     */
+    static CompletableFuture<Void> runAsync(LoadTask task) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                task.run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, LOADER);
+    }
+
+    /**
+     * Chờ tất cả tác vụ xong, ném lại lỗi IOException đầu tiên (nếu có)
+     */
+    static void awaitAll(CompletableFuture<?>... tasks) throws IOException {
+        List<Throwable> errors = new ArrayList<>();
+        for (CompletableFuture<?> task : tasks) {
+            try {
+                task.join();
+            } catch (CompletionException e) {
+                errors.add(e.getCause() != null ? e.getCause() : e);
+            }
+        }
+        if (errors.isEmpty()) {
+            return;
+        }
+
+        Throwable first = errors.get(0);
+        if (first instanceof UncheckedIOException) {
+            throw ((UncheckedIOException) first).getCause();
+        }
+        if (first instanceof RuntimeException) {
+            throw (RuntimeException) first;
+        }
+        if (first instanceof Error) {
+            throw (Error) first;
+        }
+        throw new IOException(first);
+    }
+
+    /**
+     * Tác vụ tải có thể ném IOException
+     */
+    interface LoadTask {
+        void run() throws IOException;
+    }
+}
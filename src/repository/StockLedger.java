@@ -0,0 +1,304 @@
+package repository;
+
+import domain.Product;
+
+import java.io.*;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sổ cái tồn kho dạng event sourcing: mọi biến động tồn kho (nhập, xuất, điều chỉnh tay, hủy đơn)
+ * được ghi nối thành 1 sự kiện vào file sổ cái, không ghi đè giá trị tồn kho:
+ *   số thứ tự,thời điểm,loại,ID sản phẩm,số lượng,tham chiếu (ID đơn)
+ * Tồn kho hiện tại là phép chiếu (projection) = checkpoint gần nhất + các sự kiện sau nó.
+ * Cứ CHECKPOINT_INTERVAL sự kiện thì ghi 1 checkpoint (tồn kho của mọi sản phẩm) và chuyển
+ * phần sổ cái đã được checkpoint sang file lưu trữ, nên khôi phục chỉ đọc checkpoint + phần đuôi;
+ * chỉ giữ MAX_ARCHIVES file lưu trữ gần nhất.
+ * Sản phẩm chỉ được chiếu sau khi có mốc (sự kiện OPENING hoặc có trong checkpoint);
+ * sản phẩm chưa có mốc (dữ liệu cũ, sản phẩm mới thêm) được lấy tồn kho hiện tại làm mốc.
+ */
+public class StockLedger {
+    public static final int CHECKPOINT_INTERVAL = ChangeJournal.COMPACT_THRESHOLD;
+    public static final int MAX_ARCHIVES = 3;
+
+    /**
+     * Loại biến động tồn kho
+     */
+    public enum Reason {
+        OPENING,    // mốc tồn kho (số lượng là giá trị tuyệt đối)
+        IMPORT,     // xác nhận nhập (+)
+        EXPORT,     // xác nhận xuất (-)
+        ADJUSTMENT, // điều chỉnh tay (chênh lệch so với tồn kho cũ)
+        CANCEL;     // hủy đơn xuất: trả lại phần đặt trước, tồn kho thực tế không đổi
+
+        boolean changesStock() {
+            return this == IMPORT || this == EXPORT || this == ADJUSTMENT;
+        }
+    }
+
+    private final String ledgerPath;
+    private final String checkpointPath;
+    private final Map<String, Integer> projection; // productId -> tồn kho (chỉ sản phẩm đã có mốc)
+    private final List<String> pending;            // sự kiện chưa ghi nối ra file
+    private long sequence;                         // số thứ tự của sự kiện gần nhất
+    private long checkpointSequence;               // sự kiện cuối cùng đã nằm trong checkpoint
+    private FileOutputStream stream; // để fsync sổ cái
+    private BufferedWriter writer;
+
+    /**
+     * @param ledgerPath đường dẫn file sổ cái (vd: data/stock.ledger);
+     *                   checkpoint nằm cạnh với đuôi .checkpoint
+     */
+    public StockLedger(String ledgerPath) {
+        this.ledgerPath = ledgerPath;
+        String base = ledgerPath.endsWith(".ledger")
+                ? ledgerPath.substring(0, ledgerPath.length() - 7) : ledgerPath;
+        this.checkpointPath = base + ".checkpoint";
+        this.projection = new LinkedHashMap<>();
+        this.pending = new ArrayList<>();
+    }
+
+    /**
+     * Sổ cái đặt cùng thư mục với file sản phẩm (vd: data/products.csv -> data/stock.ledger)
+     */
+    public static StockLedger besides(String productFilePath) {
+        Path parent = Paths.get(productFilePath).toAbsolutePath().getParent();
+        return new StockLedger(parent.resolve("stock.ledger").toString());
+    }
+
+    /**
+     * Ghi nhận 1 biến động tồn kho (ghi ra file ở lần save() kế tiếp)
+     * @param quantity số lượng thay đổi (âm khi xuất); với CANCEL là số lượng được trả lại
+     *                 phần đặt trước; với OPENING là tồn kho tuyệt đối
+     * @param reference ID đơn hàng liên quan (có thể rỗng)
+     */
+    public synchronized void record(String productId, Reason reason, int quantity, String reference) {
+        sequence++;
+        pending.add(sequence + "," + LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS) + ","
+                + reason + "," + productId + "," + quantity + "," + (reference != null ? reference : ""));
+        apply(productId, reason, quantity);
+    }
+
+    private void apply(String productId, Reason reason, int quantity) {
+        if (reason == Reason.OPENING) {
+            projection.put(productId, quantity);
+        } else if (reason.changesStock()) {
+            projection.computeIfPresent(productId, (id, stock) -> stock + quantity);
+        }
+    }
+
+    /**
+     * Đưa tồn kho của các sản phẩm về giá trị chiếu từ sổ cái. Sản phẩm chưa có mốc
+     * được ghi sự kiện OPENING với tồn kho hiện tại.
+     * @return các sản phẩm bị đổi tồn kho (cần cập nhật vào repository)
+     */
+    public synchronized List<Product> project(Collection<Product> products) {
+        List<Product> changed = new ArrayList<>();
+        for (Product product : products) {
+            Integer stock = projection.get(product.getId());
+            if (stock == null) {
+                record(product.getId(), Reason.OPENING, product.getStockQuantity(), "");
+            } else if (stock != product.getStockQuantity()) {
+                product.setStockQuantity(stock);
+                changed.add(product);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Tồn kho theo sổ cái, -1 nếu sản phẩm chưa có mốc
+     */
+    public synchronized int getStock(String productId) {
+        Integer stock = projection.get(productId);
+        return stock != null ? stock : -1;
+    }
+
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Số sự kiện chưa được checkpoint (phần phải đọc lại khi khôi phục)
+     */
+    public synchronized long getTailSize() {
+        return sequence - checkpointSequence;
+    }
+
+    /**
+     * Ghi nối các sự kiện đang chờ; ghi checkpoint khi phần đuôi đã đủ dài
+     */
+    public synchronized void save() throws IOException {
+        appendPending();
+        if (getTailSize() >= CHECKPOINT_INTERVAL) {
+            checkpoint();
+        }
+    }
+
+    private void appendPending() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (writer == null) {
+            openWriter();
+        }
+        for (String line : pending) {
+            writer.write(line);
+            writer.newLine();
+        }
+        writer.flush();
+        pending.clear();
+    }
+
+    private void openWriter() throws IOException {
+        File file = new File(ledgerPath);
+        boolean tornTail = file.length() > 0 && !endsWithNewline(file);
+        stream = new FileOutputStream(file, true);
+        writer = new BufferedWriter(new OutputStreamWriter(stream));
+        if (tornTail) {
+            // Dòng cuối bị ghi dở (mất điện): kết thúc dòng đó để sự kiện mới không dính vào
+            writer.newLine();
+        }
+    }
+
+    private static boolean endsWithNewline(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(file.length() - 1);
+            return raf.read() == '\n';
+        }
+    }
+
+    /**
+     * @return true nếu còn sự kiện chưa ghi ra file
+     */
+    public synchronized boolean isDirty() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Đẩy các sự kiện đã ghi bằng save() xuống đĩa (fsync)
+     */
+    public synchronized void sync() throws IOException {
+        if (stream != null) {
+            stream.getFD().sync();
+        }
+    }
+
+    /**
+     * Khôi phục phép chiếu: đọc checkpoint rồi các sự kiện có số thứ tự lớn hơn checkpoint
+     */
+    public synchronized void load() throws IOException {
+        clear();
+
+        if (new File(checkpointPath).exists()) {
+            try (CsvBulkReader reader = CsvBulkReader.open(checkpointPath)) {
+                // Dòng đầu: checkpoint,<số thứ tự sự kiện cuối>; sau đó: productId,tồn kho
+                if (reader.nextRow() && reader.fieldCount() >= 2) {
+                    checkpointSequence = Long.parseLong(reader.getString(1));
+                }
+                while (reader.nextRow()) {
+                    if (reader.fieldCount() < 2) continue;
+                    projection.put(reader.getString(0), reader.getInt(1));
+                }
+            }
+        }
+        sequence = checkpointSequence;
+
+        if (new File(ledgerPath).exists()) {
+            try (CsvBulkReader reader = CsvBulkReader.open(ledgerPath)) {
+                while (reader.nextRow()) {
+                    if (reader.fieldCount() < 6) continue;
+                    try {
+                        long eventSequence = Long.parseLong(reader.getString(0));
+                        if (eventSequence <= checkpointSequence) {
+                            continue; // đã nằm trong checkpoint (lần checkpoint trước chưa kịp chuyển sổ)
+                        }
+                        Reason reason = Reason.valueOf(reader.getString(2));
+                        apply(reader.getString(3), reason, reader.getInt(4));
+                        sequence = Math.max(sequence, eventSequence);
+                    } catch (IllegalArgumentException e) {
+                        // Dòng ghi dở do mất điện - bỏ qua
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Ghi checkpoint (tồn kho của mọi sản phẩm đã có mốc) rồi chuyển phần sổ cái hiện tại
+     * sang file lưu trữ stock.ledger.&lt;số thứ tự&gt;; các sự kiện sau đó ghi vào sổ mới.
+     * Nếu dừng giữa 2 bước, lần khôi phục sau bỏ qua các sự kiện đã có trong checkpoint.
+     * Checkpoint đã fsync nên các file lưu trữ cũ hơn MAX_ARCHIVES file gần nhất được xóa.
+     */
+    public synchronized void checkpoint() throws IOException {
+        appendPending();
+        if (sequence == checkpointSequence && new File(checkpointPath).exists()) {
+            return; // không có sự kiện mới kể từ checkpoint trước
+        }
+        if (writer != null) {
+            writer.flush();
+            stream.getFD().sync();
+            writer.close();
+            writer = null;
+            stream = null;
+        }
+
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : projection.entrySet()) {
+            lines.add(entry.getKey() + "," + entry.getValue());
+        }
+        ChangeJournal.writeSnapshot(checkpointPath, "checkpoint," + sequence, lines); // đã fsync trước khi đổi tên
+
+        Path current = Paths.get(ledgerPath);
+        if (Files.exists(current)) {
+            Files.move(current, Paths.get(ledgerPath + "." + sequence), StandardCopyOption.ATOMIC_MOVE);
+        }
+        checkpointSequence = sequence;
+        pruneArchives();
+    }
+
+    // Xóa các file lưu trữ stock.ledger.<số thứ tự>, chỉ giữ MAX_ARCHIVES file mới nhất
+    private void pruneArchives() throws IOException {
+        Path ledger = Paths.get(ledgerPath).toAbsolutePath();
+        String prefix = ledger.getFileName() + ".";
+        List<Long> archives = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(ledger.getParent(), prefix + "*")) {
+            for (Path file : files) {
+                String suffix = file.getFileName().toString().substring(prefix.length());
+                try {
+                    archives.add(Long.parseLong(suffix));
+                } catch (NumberFormatException e) {
+                    // Không phải file lưu trữ (vd: stock.ledger.tmp) - bỏ qua
+                }
+            }
+        }
+        archives.sort(null);
+        for (int i = 0; i < archives.size() - MAX_ARCHIVES; i++) {
+            Files.deleteIfExists(ledger.resolveSibling(prefix + archives.get(i)));
+        }
+    }
+
+    public String getFilePath() {
+        return ledgerPath;
+    }
+
+    /**
+     * Xóa phép chiếu và các sự kiện chưa ghi trong bộ nhớ (file sổ cái giữ nguyên)
+     */
+    public synchronized void clear() {
+        projection.clear();
+        pending.clear();
+        sequence = 0;
+        checkpointSequence = 0;
+    }
+}
@@ -6,31 +6,73 @@ import interfaces.Searchable;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
 public class SupplierRepository implements Persistable, Searchable<Supplier> {
-    private List<Supplier> suppliers;
+    private static final String HEADER = "id,name,phone,email,address,productCategories";
+    private static final int NAME_FIELD = 0;
+    private static final int PHONE_FIELD = 1;
+    private static final int CATEGORIES_FIELD = 2;
+    private static final String SNAPSHOT_KIND = "suppliers";
+
+    private final IndexedStore<Supplier> suppliers;
+    private final TrigramIndex<Supplier> textIndex;
     private final String filePath;
+    private final String snapshotPath;
+    private final ChangeJournal journal;
+    private boolean journalEnabled;
+    // Thêm/sửa/xóa và lúc gộp nhật ký chụp dữ liệu dùng chung khóa này, nên bản chụp
+    // không thấy thao tác dở dang (đã sửa bộ nhớ nhưng chưa đánh dấu nhật ký)
+    private final Object mutationLock = new Object();
 
     public SupplierRepository(String filePath) {
         this.filePath = filePath;
-        this.suppliers = new ArrayList<>();
+        this.snapshotPath = BinarySnapshot.pathFor(filePath);
+        this.suppliers = new IndexedStore<>(Supplier::getId);
+        // tên, loại hàng cung cấp (chữ thường), SĐT
+        this.textIndex = new TrigramIndex<>(Supplier::getId, Arrays.asList(
+                s -> s.getName().toLowerCase(),
+                Supplier::getPhone,
+                s -> s.getProductCategories().toLowerCase()));
+        this.suppliers.addIndex(textIndex);
+        this.journal = new ChangeJournal(filePath);
     }
 
     @Override
-    public void save() throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            // Header
-            writer.write("id,name,phone,email,address,productCategories");
-            writer.newLine();
-
-            // Data
-            for (Supplier supplier : suppliers) {
-                writer.write(supplier.toCSV());
+    public synchronized void save() throws IOException {
+        if (!isDirty()) {
+            return; // Không có thay đổi, không ghi lại file
+        }
+
+        if (journalEnabled) {
+            journal.flush(id -> {
+                Supplier supplier = suppliers.get(id);
+                return supplier != null ? supplier.toCSV() : null;
+            });
+            journal.compactIfNeeded(this::compact);
+            return;
+        }
+
+        journal.rewrite(() -> {
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
+                // Header
+                writer.write(HEADER);
                 writer.newLine();
+
+                // Data
+                for (Supplier supplier : suppliers.values()) {
+                    writer.write(supplier.toCSV());
+                    writer.newLine();
+                }
             }
-        }
+        });
+    }
+
+    @Override
+    public boolean isDirty() {
+        return journal.hasPendingChanges();
     }
 
     @Override
@@ -38,30 +80,111 @@ public class SupplierRepository implements Persistable, Searchable<Supplier> {
         suppliers.clear();
 
         File file = new File(filePath);
-        if (!file.exists()) {
-            return;
+        if (file.exists()) {
+            try (CsvBulkReader reader = CsvBulkReader.open(filePath)) {
+                reader.nextRow(); // Skip header
+
+                while (reader.nextRow()) {
+                    Supplier supplier = parseRow(reader, 0);
+                    if (supplier != null) {
+                        suppliers.put(supplier);
+                    }
+                }
+            }
         }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line = reader.readLine(); // Skip header
+        // Áp dụng các thay đổi chưa được gộp vào snapshot
+        journal.replay((row, offset) -> {
+            Supplier supplier = parseRow(row, offset);
+            if (supplier != null) {
+                suppliers.put(supplier);
+            }
+        }, suppliers::remove);
+    }
+
+    // Đọc 1 nhà cung cấp, các cột bắt đầu từ vị trí offset
+    private Supplier parseRow(CsvBulkReader row, int offset) {
+        if (row.isBlankRow()) return null;
+        if (row.fieldCount() - offset < 6) return null;
+
+        String id = row.getString(offset);
+        String name = row.getString(offset + 1);
+        String phone = row.getString(offset + 2);
+        String email = row.getString(offset + 3);
+        String address = row.getString(offset + 4);
+        String productCategories = row.getString(offset + 5);
+
+        return new Supplier(id, name, phone, email, address, productCategories);
+    }
+
+    @Override
+    public void setJournalEnabled(boolean enabled) {
+        this.journalEnabled = enabled;
+    }
+
+    @Override
+    public void sync() throws IOException {
+        if (journalEnabled) {
+            journal.sync();
+        } else {
+            ChangeJournal.force(filePath);
+        }
+    }
 
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) continue;
+    @Override
+    public boolean isJournalEnabled() {
+        return journalEnabled;
+    }
 
-                String[] parts = line.split(",", -1);
-                if (parts.length < 6) continue;
+    @Override
+    public void compact() throws IOException {
+        journal.compact(() -> {
+            List<String> lines;
+            synchronized (mutationLock) {
+                lines = journal.captureAndRotate(() -> suppliers.values().stream()
+                        .map(Supplier::toCSV)
+                        .collect(Collectors.toList()));
+            }
+            ChangeJournal.writeSnapshot(filePath, HEADER, lines);
+            journal.discardRotated();
+        });
+    }
 
-                String id = parts[0];
-                String name = parts[1];
-                String phone = parts[2];
-                String email = parts[3];
-                String address = parts[4];
-                String productCategories = parts[5];
+    @Override
+    public void saveSnapshot() throws IOException {
+        List<Supplier> snapshot = suppliers.values();
+        BinarySnapshot.write(snapshotPath, SNAPSHOT_KIND, BinarySnapshot.sourcesOf(filePath), out -> {
+            out.writeInt(snapshot.size());
+            for (Supplier supplier : snapshot) {
+                out.writeString(supplier.getId());
+                out.writeString(supplier.getName());
+                out.writeString(supplier.getPhone());
+                out.writeString(supplier.getEmail());
+                out.writeString(supplier.getAddress());
+                out.writeString(supplier.getProductCategories());
+            }
+        });
+    }
 
-                Supplier supplier = new Supplier(id, name, phone, email, address, productCategories);
-                suppliers.add(supplier);
+    @Override
+    public boolean loadSnapshot() throws IOException {
+        List<Supplier> loaded = new ArrayList<>();
+        boolean valid = BinarySnapshot.read(snapshotPath, SNAPSHOT_KIND, BinarySnapshot.sourcesOf(filePath), in -> {
+            int count = in.readCount();
+            for (int i = 0; i < count; i++) {
+                loaded.add(new Supplier(in.readString(), in.readString(), in.readString(),
+                        in.readString(), in.readString(), in.readString()));
             }
+        });
+        if (!valid) {
+            return false;
+        }
+
+        suppliers.clear();
+        for (Supplier supplier : loaded) {
+            suppliers.put(supplier);
         }
+        return true;
     }
 
     @Override
@@ -76,52 +199,46 @@ public class SupplierRepository implements Persistable, Searchable<Supplier> {
 
     @Override
     public Supplier findById(String id) {
-        return suppliers.stream()
-                .filter(s -> s.getId().equals(id))
-                .findFirst()
-                .orElse(null);
+        return suppliers.get(id);
     }
 
     @Override
     public List<Supplier> findByName(String name) {
-        String lowerName = name.toLowerCase();
-        return suppliers.stream()
-                .filter(s -> s.getName().toLowerCase().contains(lowerName))
-                .collect(Collectors.toList());
+        return textIndex.search(name.toLowerCase(), NAME_FIELD);
     }
 
     @Override
     public List<Supplier> findAll() {
-        return new ArrayList<>(suppliers);
+        return suppliers.values();
     }
 
     @Override
     public List<Supplier> search(String criteria) {
-        String lower = criteria.toLowerCase();
-        return suppliers.stream()
-                .filter(s -> s.getName().toLowerCase().contains(lower) ||
-                        s.getPhone().contains(lower) ||
-                        s.getProductCategories().toLowerCase().contains(lower))
-                .collect(Collectors.toList());
+        return textIndex.search(criteria.toLowerCase(), NAME_FIELD, PHONE_FIELD, CATEGORIES_FIELD);
     }
 
     // CRUD operations
     public void add(Supplier supplier) {
-        suppliers.add(supplier);
+        synchronized (mutationLock) {
+            suppliers.put(supplier);
+            journal.markChanged(supplier.getId());
+        }
     }
 
     public void update(Supplier supplier) {
-        Supplier existing = findById(supplier.getId());
-        if (existing != null) {
-            suppliers.remove(existing);
-            suppliers.add(supplier);
+        synchronized (mutationLock) {
+            if (suppliers.contains(supplier.getId())) {
+                suppliers.put(supplier);
+                journal.markChanged(supplier.getId());
+            }
         }
     }
 
     public void delete(String id) {
-        Supplier supplier = findById(id);
-        if (supplier != null) {
-            suppliers.remove(supplier);
+        synchronized (mutationLock) {
+            if (suppliers.remove(id) != null) {
+                journal.markDeleted(id);
+            }
         }
     }
 
@@ -0,0 +1,324 @@
+package repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Chỉ mục n-gram (3 ký tự) cho tìm kiếm chuỗi con trên các trường văn bản.
+ * Giá trị các trường được chuẩn hóa (vd: chữ thường) 1 lần khi thêm/sửa, nên khi tìm
+ * không phải gọi toLowerCase() cho từng dòng. Truy vấn từ 3 ký tự trở lên chỉ kiểm tra
+ * các dòng chứa trigram hiếm nhất của truy vấn thay vì toàn bộ danh sách.
+ * Được gắn vào IndexedStore để tự cập nhật khi thêm/sửa/xóa.
+ * @param <T> Kiểu entity được đánh chỉ mục
+ */
+public class TrigramIndex<T> implements IndexedStore.SecondaryIndex<T> {
+    private static final int GRAM = 3;
+
+    private final Function<T, String> idExtractor;
+    private final List<Function<T, String>> fields; // mỗi hàm trả về giá trị đã chuẩn hóa
+    private final Map<String, Entry<T>> entries;
+    private final List<Entry<T>> slots; // vị trí (theo thứ tự thêm vào) -> entry, null nếu đã xóa
+    private final GramTable postings;   // trigram -> các vị trí chứa trigram đó (tăng dần)
+    private int removedSlots;
+    private long[] gramBuffer = new long[64];
+
+    /**
+     * @param idExtractor hàm lấy ID entity
+     * @param fields các trường được tìm kiếm, mỗi hàm trả về giá trị đã chuẩn hóa
+     */
+    public TrigramIndex(Function<T, String> idExtractor, List<Function<T, String>> fields) {
+        this.idExtractor = idExtractor;
+        this.fields = new ArrayList<>(fields);
+        this.entries = new HashMap<>();
+        this.slots = new ArrayList<>();
+        this.postings = new GramTable();
+    }
+
+    @Override
+    public synchronized void put(T entity) {
+        String id = idExtractor.apply(entity);
+        String[] values = new String[fields.size()];
+        for (int i = 0; i < values.length; i++) {
+            String value = fields.get(i).apply(entity);
+            values[i] = value != null ? value : "";
+        }
+
+        Entry<T> old = entries.get(id);
+        if (old != null) {
+            // Cập nhật tại chỗ: giữ nguyên thứ tự, chỉ đánh lại chỉ mục khi nội dung đổi
+            old.entity = entity;
+            if (!Arrays.equals(old.values, values)) {
+                int count = trigramsOf(old.values);
+                for (int i = 0; i < count; i++) {
+                    postings.get(gramBuffer[i]).removeValue(old.slot);
+                }
+                old.values = values;
+                count = trigramsOf(values);
+                for (int i = 0; i < count; i++) {
+                    postings.getOrCreate(gramBuffer[i]).insertSorted(old.slot);
+                }
+            }
+            return;
+        }
+
+        Entry<T> entry = new Entry<>(entity, values, slots.size());
+        entries.put(id, entry);
+        slots.add(entry);
+        int count = trigramsOf(values);
+        for (int i = 0; i < count; i++) {
+            postings.getOrCreate(gramBuffer[i]).add(entry.slot); // vị trí mới luôn lớn nhất
+        }
+    }
+
+    @Override
+    public synchronized void remove(String id) {
+        Entry<T> entry = entries.remove(id);
+        if (entry == null) {
+            return;
+        }
+        // Chỉ đánh dấu xóa, danh sách vị trí được dọn khi số ô trống đủ lớn
+        slots.set(entry.slot, null);
+        removedSlots++;
+        if (removedSlots > 1024 && removedSlots > slots.size() / 2) {
+            rebuild();
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        entries.clear();
+        slots.clear();
+        postings.clear();
+        removedSlots = 0;
+    }
+
+    /**
+     * Tìm các entity có ít nhất 1 trường (trong các trường chỉ định) chứa chuỗi truy vấn
+     * @param query chuỗi truy vấn đã chuẩn hóa giống giá trị các trường
+     * @param fieldIndexes vị trí các trường cần so khớp (theo thứ tự truyền vào constructor)
+     * @return kết quả theo thứ tự thêm vào
+     */
+    public synchronized List<T> search(String query, int... fieldIndexes) {
+        List<T> result = new ArrayList<>();
+
+        if (query.length() < GRAM) {
+            // Truy vấn quá ngắn: duyệt hết (vẫn không phải chuẩn hóa lại)
+            for (Entry<T> entry : slots) {
+                if (entry != null && entry.matches(query, fieldIndexes)) {
+                    result.add(entry.entity);
+                }
+            }
+            return result;
+        }
+
+        // Chỉ kiểm tra các dòng thuộc danh sách ngắn nhất trong các trigram của truy vấn
+        IntList smallest = null;
+        for (int i = 0; i + GRAM <= query.length(); i++) {
+            IntList posting = postings.get(trigram(query, i));
+            if (posting == null || posting.size == 0) {
+                return result; // Có trigram không xuất hiện ở đâu cả
+            }
+            if (smallest == null || posting.size < smallest.size) {
+                smallest = posting;
+            }
+        }
+
+        for (int i = 0; i < smallest.size; i++) {
+            Entry<T> entry = slots.get(smallest.values[i]);
+            if (entry != null && entry.matches(query, fieldIndexes)) {
+                result.add(entry.entity);
+            }
+        }
+        return result;
+    }
+
+    // Đánh số lại các vị trí (bỏ ô đã xóa) và dựng lại danh sách trigram
+    private void rebuild() {
+        List<Entry<T>> live = new ArrayList<>(entries.size());
+        for (Entry<T> entry : slots) {
+            if (entry != null) {
+                live.add(entry);
+            }
+        }
+
+        slots.clear();
+        postings.clear();
+        removedSlots = 0;
+        for (Entry<T> entry : live) {
+            entry.slot = slots.size();
+            slots.add(entry);
+            int count = trigramsOf(entry.values);
+            for (int i = 0; i < count; i++) {
+                postings.getOrCreate(gramBuffer[i]).add(entry.slot);
+            }
+        }
+    }
+
+    /**
+     * Tính các trigram khác nhau của các trường vào gramBuffer
+     * (trigram không vượt qua ranh giới giữa 2 trường)
+     * @return số trigram
+     */
+    private int trigramsOf(String[] values) {
+        int total = 0;
+        for (String value : values) {
+            total += Math.max(0, value.length() - GRAM + 1);
+        }
+        if (gramBuffer.length < total) {
+            gramBuffer = new long[Math.max(total, gramBuffer.length * 2)];
+        }
+
+        int count = 0;
+        for (String value : values) {
+            for (int i = 0; i + GRAM <= value.length(); i++) {
+                gramBuffer[count++] = trigram(value, i);
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        Arrays.sort(gramBuffer, 0, count);
+        int distinct = 1;
+        for (int i = 1; i < count; i++) {
+            if (gramBuffer[i] != gramBuffer[distinct - 1]) {
+                gramBuffer[distinct++] = gramBuffer[i];
+            }
+        }
+        return distinct;
+    }
+
+    private static long trigram(String text, int start) {
+        return ((long) text.charAt(start) << 32)
+                | ((long) text.charAt(start + 1) << 16)
+                | text.charAt(start + 2);
+    }
+
+    private static final class Entry<T> {
+        private T entity;
+        private String[] values;
+        private int slot;
+
+        Entry(T entity, String[] values, int slot) {
+            this.entity = entity;
+            this.values = values;
+            this.slot = slot;
+        }
+
+        boolean matches(String query, int[] fieldIndexes) {
+            for (int field : fieldIndexes) {
+                if (values[field].contains(query)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Danh sách số nguyên tăng dần (không boxing)
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void insertSorted(int value) {
+            int position = Arrays.binarySearch(values, 0, size, value);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            System.arraycopy(values, position, values, position + 1, size - position);
+            values[position] = value;
+            size++;
+        }
+
+        void removeValue(int value) {
+            int position = Arrays.binarySearch(values, 0, size, value);
+            if (position >= 0) {
+                System.arraycopy(values, position + 1, values, position, size - position - 1);
+                size--;
+            }
+        }
+    }
+
+    /**
+     * Bảng băm địa chỉ mở: trigram (long) -> danh sách vị trí
+     */
+    private static final class GramTable {
+        private long[] keys = new long[1024];
+        private IntList[] lists = new IntList[1024];
+        private int size;
+
+        IntList get(long key) {
+            int mask = keys.length - 1;
+            for (int i = mix(key) & mask; lists[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return lists[i];
+                }
+            }
+            return null;
+        }
+
+        IntList getOrCreate(long key) {
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            for (; lists[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return lists[i];
+                }
+            }
+
+            IntList list = new IntList();
+            keys[i] = key;
+            lists[i] = list;
+            if (++size * 2 > keys.length) {
+                grow();
+            }
+            return list;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            IntList[] oldLists = lists;
+            keys = new long[oldKeys.length * 2];
+            lists = new IntList[oldLists.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldLists[j] != null) {
+                    int i = mix(oldKeys[j]) & mask;
+                    while (lists[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    lists[i] = oldLists[j];
+                }
+            }
+        }
+
+        void clear() {
+            keys = new long[1024];
+            lists = new IntList[1024];
+            size = 0;
+        }
+
+        private static int mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
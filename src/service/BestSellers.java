@@ -0,0 +1,103 @@
+package service;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Số lượng đã bán theo sản phẩm (từ các đơn xuất hoàn tất), bất biến và đi kèm mỗi
+ * InventorySnapshot. Được cập nhật tăng dần theo các đơn vừa hoàn tất/bị hủy, nên lấy top K
+ * chỉ cần duyệt các bộ đếm với 1 heap K phần tử: O(số sản phẩm x log K), không phụ thuộc
+ * số dòng hàng đã bán và không phải sắp xếp toàn bộ.
+ * Các bộ đếm nằm trong PersistentTreeMap nên phiên bản kế tiếp chỉ tạo lại phần của các sản
+ * phẩm trong đơn vừa đổi (O(số dòng hàng x log số sản phẩm)), phần còn lại dùng chung.
+ */
+public final class BestSellers {
+    public static final BestSellers EMPTY = new BestSellers(PersistentTreeMap.empty(), PersistentTreeMap.empty());
+
+    // Bán nhiều hơn đứng trước; bằng nhau thì ID nhỏ hơn đứng trước
+    private static final Comparator<Map.Entry<String, Long>> RANKING =
+            Map.Entry.<String, Long>comparingByValue().reversed()
+                    .thenComparing(Map.Entry.comparingByKey());
+
+    private final PersistentTreeMap<String, Long> unitsSold;     // productId -> số lượng đã bán (> 0)
+    private final PersistentTreeMap<String, String> productNames; // productId -> tên lúc bán gần nhất (dự phòng)
+
+    private BestSellers(PersistentTreeMap<String, Long> unitsSold, PersistentTreeMap<String, String> productNames) {
+        this.unitsSold = unitsSold;
+        this.productNames = productNames;
+    }
+
+    public long getUnitsSold(String productId) {
+        Long units = unitsSold.get(productId);
+        return units != null ? units : 0L;
+    }
+
+    /**
+     * Tên sản phẩm lúc bán gần nhất. Báo cáo lấy tên hiện tại từ danh mục sản phẩm của
+     * snapshot; tên này chỉ dùng khi sản phẩm đã bị xóa khỏi danh mục.
+     */
+    public String getProductName(String productId) {
+        return productNames.get(productId);
+    }
+
+    /**
+     * K sản phẩm bán chạy nhất (productId -> số lượng), bán nhiều nhất trước
+     */
+    public List<Map.Entry<String, Long>> top(int k) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+
+        // Heap nhỏ nhất theo thứ hạng: phần tử đầu là phần tử yếu nhất trong K phần tử đang giữ
+        PriorityQueue<Map.Entry<String, Long>> heap = new PriorityQueue<>(k + 1, RANKING.reversed());
+        unitsSold.forEach((productId, units) -> {
+            Map.Entry<String, Long> entry = new AbstractMap.SimpleImmutableEntry<>(productId, units);
+            if (heap.size() < k) {
+                heap.add(entry);
+            } else if (RANKING.compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        });
+
+        List<Map.Entry<String, Long>> result = new ArrayList<>(heap);
+        result.sort(RANKING);
+        return result;
+    }
+
+    /**
+     * Phiên bản kế tiếp sau khi trừ phần của các đơn bị hủy/sửa và cộng phần của đơn mới hoàn tất
+     */
+    BestSellers apply(Iterable<SalesCube.Contribution> removed, Iterable<SalesCube.Contribution> added) {
+        // Chỉ các sản phẩm trong đơn đã đổi được ghi lại, các bộ đếm khác dùng chung với phiên bản trước
+        PersistentTreeMap<String, Long> units = unitsSold;
+        PersistentTreeMap<String, String> names = productNames;
+
+        for (SalesCube.Contribution contribution : removed) {
+            for (Map.Entry<String, Integer> entry : contribution.unitsByProduct().entrySet()) {
+                Long sold = units.get(entry.getKey());
+                long remaining = (sold != null ? sold : 0L) - entry.getValue();
+                if (remaining <= 0) {
+                    units = units.minus(entry.getKey());
+                    names = names.minus(entry.getKey());
+                } else {
+                    units = units.plus(entry.getKey(), remaining);
+                }
+            }
+        }
+        for (SalesCube.Contribution contribution : added) {
+            for (Map.Entry<String, Integer> entry : contribution.unitsByProduct().entrySet()) {
+                Long sold = units.get(entry.getKey());
+                units = units.plus(entry.getKey(), (sold != null ? sold : 0L) + entry.getValue());
+            }
+            for (Map.Entry<String, String> entry : contribution.productNames().entrySet()) {
+                names = names.plus(entry.getKey(), entry.getValue());
+            }
+        }
+        return new BestSellers(units, names);
+    }
+}
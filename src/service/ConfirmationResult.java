@@ -0,0 +1,38 @@
+package service;
+
+/**
+ * Kết quả xác nhận (hoặc hủy) 1 đơn trong lần xác nhận hàng loạt / lô lệnh của OrderPipeline
+ */
+public class ConfirmationResult {
+    private final String orderId;
+    private final boolean success;
+    private final String message;
+
+    private ConfirmationResult(String orderId, boolean success, String message) {
+        this.orderId = orderId;
+        this.success = success;
+        this.message = message;
+    }
+
+    public static ConfirmationResult confirmed(String orderId) {
+        return new ConfirmationResult(orderId, true, "Đã xác nhận");
+    }
+
+    public static ConfirmationResult cancelled(String orderId) {
+        return new ConfirmationResult(orderId, true, "Đã hủy");
+    }
+
+    public static ConfirmationResult failed(String orderId, String reason) {
+        return new ConfirmationResult(orderId, false, reason);
+    }
+
+    // Getters
+    public String getOrderId() { return orderId; }
+    public boolean isSuccess() { return success; }
+    public String getMessage() { return message; }
+
+    @Override
+    public String toString() {
+        return String.format("%s %-15s %s", success ? "✅" : "❌", orderId, message);
+    }
+}
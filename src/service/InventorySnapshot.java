@@ -0,0 +1,116 @@
+package service;
+
+import domain.ExportOrder;
+import domain.ImportOrder;
+import domain.Product;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Ảnh chụp bất biến của sản phẩm và đơn hàng tại 1 phiên bản (do SnapshotPublisher tạo).
+ * Các entity trong ảnh là bản sao, nên báo cáo chạy lâu trên ảnh này luôn thấy dữ liệu
+ * nhất quán (không thấy đơn xác nhận dở dang) trong khi kho vẫn tiếp tục ghi.
+ * Thứ tự sản phẩm/đơn giống thứ tự trong repository.
+ * Các map là SnapshotMap dùng chung cấu trúc với phiên bản trước; đơn hàng có sẵn chỉ mục
+ * theo ngày được cập nhật tăng dần, nên truy vấn theo khoảng ngày không phải sắp xếp lại.
+ */
+public final class InventorySnapshot {
+    private final long version;
+    private final SnapshotMap<Product> products;
+    private final SnapshotMap<ImportOrder> importOrders;
+    private final SnapshotMap<ExportOrder> exportOrders;
+    private final InventoryTotals totals;
+    private final SalesCube sales;
+    private final BestSellers bestSellers;
+
+    /**
+     * @param products các map bất biến; importOrders/exportOrders có chỉ mục theo ngày đặt hàng
+     * @param totals tổng tồn kho theo loại của đúng các sản phẩm trong products
+     * @param sales khối doanh số của đúng các đơn xuất hoàn tất trong exportOrders
+     * @param bestSellers số lượng đã bán theo sản phẩm của cùng các đơn đó
+     */
+    InventorySnapshot(long version, SnapshotMap<Product> products,
+                      SnapshotMap<ImportOrder> importOrders, SnapshotMap<ExportOrder> exportOrders,
+                      InventoryTotals totals, SalesCube sales, BestSellers bestSellers) {
+        this.version = version;
+        this.products = products;
+        this.importOrders = importOrders;
+        this.exportOrders = exportOrders;
+        this.totals = totals;
+        this.sales = sales;
+        this.bestSellers = bestSellers;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Tổng tồn kho theo loại sản phẩm (không phải duyệt danh sách sản phẩm)
+     */
+    public InventoryTotals getTotals() {
+        return totals;
+    }
+
+    /**
+     * Doanh số tổng hợp sẵn theo ngày x loại sản phẩm x loại khách hàng
+     */
+    public SalesCube getSales() {
+        return sales;
+    }
+
+    /**
+     * Số lượng đã bán theo sản phẩm, lấy top K không phải duyệt các đơn xuất
+     */
+    public BestSellers getBestSellers() {
+        return bestSellers;
+    }
+
+    public int getProductCount() {
+        return products.size();
+    }
+
+    public Product findProduct(String id) {
+        return products.get(id);
+    }
+
+    public List<Product> getProducts() {
+        return products.values();
+    }
+
+    public List<ImportOrder> getImportOrders() {
+        return importOrders.values();
+    }
+
+    public List<ExportOrder> getExportOrders() {
+        return exportOrders.values();
+    }
+
+    /**
+     * Các đơn nhập có ngày trong [from, to], sắp theo ngày (cùng ngày giữ thứ tự thêm vào)
+     */
+    public List<ImportOrder> getImportOrdersByDateRange(LocalDate from, LocalDate to) {
+        return importOrders.between(from, to);
+    }
+
+    /**
+     * Các đơn xuất có ngày trong [from, to], sắp theo ngày (cùng ngày giữ thứ tự thêm vào)
+     */
+    public List<ExportOrder> getExportOrdersByDateRange(LocalDate from, LocalDate to) {
+        return exportOrders.between(from, to);
+    }
+
+    // Các map bên trong (chỉ đọc), để SnapshotPublisher tạo phiên bản kế tiếp
+    SnapshotMap<Product> productMap() {
+        return products;
+    }
+
+    SnapshotMap<ImportOrder> importOrderMap() {
+        return importOrders;
+    }
+
+    SnapshotMap<ExportOrder> exportOrderMap() {
+        return exportOrders;
+    }
+}
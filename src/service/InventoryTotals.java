@@ -0,0 +1,141 @@
+package service;
+
+import domain.Product;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Tổng tồn kho theo loại sản phẩm (số mặt hàng, số đơn vị, giá trị = tồn kho x giá nhập),
+ * bất biến và đi kèm mỗi InventorySnapshot.
+ * Phiên bản mới được cập nhật tăng dần từ phiên bản trước: chỉ trừ phần đóng góp cũ và cộng
+ * phần mới của các sản phẩm vừa đổi tồn kho/giá, nên phần tổng hợp của báo cáo tốn
+ * O(số loại) thay vì duyệt lại cả danh mục. Giá trị cộng dồn bằng BigDecimal để cộng/trừ
+ * nhiều lần không bị sai số tích lũy.
+ */
+public final class InventoryTotals {
+    public static final InventoryTotals EMPTY = new InventoryTotals(Collections.emptyMap());
+
+    private final Map<String, TypeTotals> byType; // loại -> tổng (không có loại rỗng)
+
+    private InventoryTotals(Map<String, TypeTotals> byType) {
+        this.byType = byType;
+    }
+
+    /**
+     * Tính lại từ đầu (khi repository vừa được nạp lại toàn bộ)
+     */
+    public static InventoryTotals of(Collection<Product> products) {
+        Map<String, TypeTotals> byType = new HashMap<>();
+        for (Product product : products) {
+            byType.merge(product.getProductType(), TypeTotals.of(product), TypeTotals::plus);
+        }
+        return new InventoryTotals(byType);
+    }
+
+    /**
+     * Phiên bản kế tiếp sau khi các sản phẩm trong changedIds đổi từ before sang after
+     * (sản phẩm không có trong before là mới thêm, không có trong after là đã xóa)
+     */
+    InventoryTotals update(Collection<String> changedIds,
+                           Function<String, Product> before, Function<String, Product> after) {
+        if (changedIds.isEmpty()) {
+            return this;
+        }
+        // Giữ cùng kích thước bảng băm như khi tính từ đầu để thứ tự các loại không đổi
+        Map<String, TypeTotals> next = new HashMap<>();
+        next.putAll(byType);
+        for (String id : changedIds) {
+            Product old = before.apply(id);
+            if (old != null) {
+                TypeTotals remaining = next.get(old.getProductType()).minus(TypeTotals.of(old));
+                if (remaining.count == 0) {
+                    next.remove(old.getProductType());
+                } else {
+                    next.put(old.getProductType(), remaining);
+                }
+            }
+            Product current = after.apply(id);
+            if (current != null) {
+                next.merge(current.getProductType(), TypeTotals.of(current), TypeTotals::plus);
+            }
+        }
+        return new InventoryTotals(next);
+    }
+
+    public Set<String> getTypes() {
+        return Collections.unmodifiableSet(byType.keySet());
+    }
+
+    public TypeTotals get(String type) {
+        TypeTotals totals = byType.get(type);
+        return totals != null ? totals : TypeTotals.ZERO;
+    }
+
+    public long getTotalCount() {
+        long count = 0;
+        for (TypeTotals totals : byType.values()) {
+            count += totals.count;
+        }
+        return count;
+    }
+
+    public long getTotalUnits() {
+        long units = 0;
+        for (TypeTotals totals : byType.values()) {
+            units += totals.units;
+        }
+        return units;
+    }
+
+    public double getTotalValue() {
+        BigDecimal value = BigDecimal.ZERO;
+        for (TypeTotals totals : byType.values()) {
+            value = value.add(totals.value);
+        }
+        return value.doubleValue();
+    }
+
+    /**
+     * Tổng của 1 loại sản phẩm
+     */
+    public static final class TypeTotals {
+        static final TypeTotals ZERO = new TypeTotals(0, 0, BigDecimal.ZERO);
+
+        private final long count;
+        private final long units;
+        private final BigDecimal value;
+
+        private TypeTotals(long count, long units, BigDecimal value) {
+            this.count = count;
+            this.units = units;
+            this.value = value;
+        }
+
+        static TypeTotals of(Product product) {
+            int stock = product.getStockQuantity();
+            return new TypeTotals(1, stock,
+                    new BigDecimal(product.getImportPrice()).multiply(BigDecimal.valueOf(stock)));
+        }
+
+        TypeTotals plus(TypeTotals other) {
+            return new TypeTotals(count + other.count, units + other.units, value.add(other.value));
+        }
+
+        TypeTotals minus(TypeTotals other) {
+            return new TypeTotals(count - other.count, units - other.units, value.subtract(other.value));
+        }
+
+        // Số mặt hàng
+        public long getCount() { return count; }
+        // Tổng số đơn vị tồn kho
+        public long getUnits() { return units; }
+        // Giá trị tồn kho theo giá nhập
+        public double getValue() { return value.doubleValue(); }
+    }
+}
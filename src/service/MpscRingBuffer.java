@@ -0,0 +1,92 @@
+package service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Hàng đợi vòng có giới hạn, nhiều luồng ghi - 1 luồng đọc (MPSC), không dùng khóa.
+ * Luồng ghi giành 1 ô bằng CAS trên chỉ số cuối rồi mới đặt phần tử vào ô; luồng đọc chỉ lấy
+ * ô đầu khi phần tử đã được đặt, nên thứ tự đọc đúng bằng thứ tự giành ô.
+ * Đầy thì offer() trả về false (áp lực ngược cho luồng ghi), không cấp phát thêm bộ nhớ.
+ */
+public class MpscRingBuffer<E> {
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong(); // ô kế tiếp sẽ được giành (luồng ghi)
+    private final AtomicLong head = new AtomicLong(); // ô kế tiếp sẽ được đọc (chỉ luồng đọc sửa)
+
+    /**
+     * @param minCapacity sức chứa tối thiểu (làm tròn lên lũy thừa của 2)
+     */
+    public MpscRingBuffer(int minCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(1, minCapacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Thêm phần tử (gọi từ nhiều luồng)
+     * @return false nếu hàng đợi đầy
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        while (true) {
+            long current = tail.get();
+            if (current - head.get() >= capacity()) {
+                return false;
+            }
+            if (tail.compareAndSet(current, current + 1)) {
+                slots.set((int) current & mask, element);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Lấy phần tử đầu (chỉ gọi từ luồng đọc)
+     * @return null nếu rỗng hoặc phần tử đầu chưa được đặt xong
+     */
+    public E poll() {
+        long current = head.get();
+        int index = (int) current & mask;
+        E element = slots.get(index);
+        if (element == null) {
+            return null;
+        }
+        slots.lazySet(index, null);
+        head.lazySet(current + 1); // ô được trả lại cho luồng ghi sau khi đã dọn
+        return element;
+    }
+
+    /**
+     * Lấy tối đa limit phần tử liên tiếp (chỉ gọi từ luồng đọc)
+     * @return số phần tử đã lấy
+     */
+    public int drain(Consumer<? super E> consumer, int limit) {
+        int count = 0;
+        E element;
+        while (count < limit && (element = poll()) != null) {
+            consumer.accept(element);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Số phần tử đang chờ (gần đúng khi có luồng đang ghi)
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
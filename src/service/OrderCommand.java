@@ -0,0 +1,46 @@
+package service;
+
+/**
+ * 1 lệnh xử lý đơn hàng gửi vào OrderPipeline
+ */
+public class OrderCommand {
+
+    public enum Type {
+        CONFIRM_IMPORT,
+        CONFIRM_EXPORT,
+        CANCEL_IMPORT,
+        CANCEL_EXPORT
+    }
+
+    private final Type type;
+    private final String orderId;
+
+    public OrderCommand(Type type, String orderId) {
+        this.type = type;
+        this.orderId = orderId;
+    }
+
+    public static OrderCommand confirmImport(String orderId) {
+        return new OrderCommand(Type.CONFIRM_IMPORT, orderId);
+    }
+
+    public static OrderCommand confirmExport(String orderId) {
+        return new OrderCommand(Type.CONFIRM_EXPORT, orderId);
+    }
+
+    /**
+     * @param orderType "IMPORT" hoặc "EXPORT" (như WarehouseService.cancelOrder)
+     */
+    public static OrderCommand cancel(String orderId, String orderType) {
+        return new OrderCommand(orderType.equals("IMPORT") ? Type.CANCEL_IMPORT : Type.CANCEL_EXPORT, orderId);
+    }
+
+    // Getters
+    public Type getType() { return type; }
+    public String getOrderId() { return orderId; }
+
+    @Override
+    public String toString() {
+        return type + " " + orderId;
+    }
+}
@@ -0,0 +1,199 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Chế độ nhận lệnh đơn hàng qua 1 luồng ghi duy nhất (single writer), thay cho việc mỗi quầy
+ * tự khóa trong WarehouseService.
+ * Các quầy (nhiều luồng) đẩy lệnh vào MpscRingBuffer không khóa; luồng ghi lấy lần lượt
+ * tối đa MAX_BATCH lệnh, thực hiện tuần tự rồi lưu file 1 lần cho cả lô. Sản phẩm bán chạy
+ * không còn bị tranh khóa giữa các quầy, và khi hàng đợi đầy thì submit() phải chờ
+ * (áp lực ngược) thay vì dồn lệnh vô hạn trong bộ nhớ.
+ */
+public class OrderPipeline implements AutoCloseable {
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final int MAX_BATCH = 256;
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long CLOSE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final WarehouseService warehouseService;
+    private final MpscRingBuffer<Entry> ring;
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile boolean aborted; // close() hết thời gian chờ: bỏ các lệnh chưa thực hiện
+    private volatile boolean writerIdle;
+
+    public OrderPipeline(WarehouseService warehouseService) {
+        this(warehouseService, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity số lệnh tối đa đang chờ (làm tròn lên lũy thừa của 2)
+     */
+    public OrderPipeline(WarehouseService warehouseService, int capacity) {
+        this.warehouseService = warehouseService;
+        this.ring = new MpscRingBuffer<>(capacity);
+        this.writer = new Thread(this::run, "order-pipeline");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Gửi lệnh; chờ khi hàng đợi đầy
+     * @return kết quả của lệnh sau khi đã được lưu xuống đĩa
+     */
+    public CompletableFuture<ConfirmationResult> submit(OrderCommand command) {
+        ensureRunning();
+        Entry entry = new Entry(command);
+        int attempts = 0;
+        while (!ring.offer(entry)) {
+            ensureRunning();
+            // Đầy: nhường CPU cho luồng ghi, chờ lâu dần
+            if (++attempts < 100) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(IDLE_PARK_NANOS / 10);
+            }
+        }
+        wakeWriter();
+        return entry.result;
+    }
+
+    /**
+     * Gửi lệnh nếu hàng đợi còn chỗ
+     * @return null nếu hàng đợi đầy
+     */
+    public CompletableFuture<ConfirmationResult> trySubmit(OrderCommand command) {
+        ensureRunning();
+        Entry entry = new Entry(command);
+        if (!ring.offer(entry)) {
+            return null;
+        }
+        wakeWriter();
+        return entry.result;
+    }
+
+    public CompletableFuture<ConfirmationResult> confirmImport(String orderId) {
+        return submit(OrderCommand.confirmImport(orderId));
+    }
+
+    public CompletableFuture<ConfirmationResult> confirmExport(String orderId) {
+        return submit(OrderCommand.confirmExport(orderId));
+    }
+
+    /**
+     * @param orderType "IMPORT" hoặc "EXPORT"
+     */
+    public CompletableFuture<ConfirmationResult> cancelOrder(String orderId, String orderType) {
+        return submit(OrderCommand.cancel(orderId, orderType));
+    }
+
+    /**
+     * Số lệnh đang chờ luồng ghi
+     */
+    public int getBacklog() {
+        return ring.size();
+    }
+
+    private void ensureRunning() {
+        if (!running) {
+            throw new IllegalStateException("OrderPipeline đã đóng");
+        }
+    }
+
+    private void wakeWriter() {
+        if (writerIdle) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>(MAX_BATCH);
+        List<OrderCommand> commands = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            if (aborted) {
+                failPending();
+                return;
+            }
+            ring.drain(batch::add, MAX_BATCH);
+            if (batch.isEmpty()) {
+                if (!running && ring.isEmpty()) {
+                    return;
+                }
+                // Báo đang rảnh rồi kiểm tra lại để không bỏ lỡ lệnh vừa được đẩy vào
+                writerIdle = true;
+                if (ring.isEmpty()) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                writerIdle = false;
+                continue;
+            }
+
+            for (Entry entry : batch) {
+                commands.add(entry.command);
+            }
+            try {
+                List<ConfirmationResult> results = warehouseService.execute(commands);
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).result.complete(results.get(i));
+                }
+            } catch (Throwable e) {
+                for (Entry entry : batch) {
+                    entry.result.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+            commands.clear();
+        }
+    }
+
+    /**
+     * Không nhận lệnh mới, chờ luồng ghi xử lý hết các lệnh đã gửi (tối đa 30 giây).
+     * Quá hạn hoặc bị ngắt khi đang chờ thì luồng ghi làm xong lô đang chạy, các lệnh còn lại
+     * thất bại với IllegalStateException.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+
+        boolean interrupted = false;
+        try {
+            writer.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+
+        if (writer.isAlive()) {
+            aborted = true;
+            LockSupport.unpark(writer);
+        } else {
+            // Lệnh lọt vào sau khi luồng ghi đã dừng (luồng ghi đã thoát nên có thể đọc ở đây)
+            failPending();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Chỉ gọi từ luồng ghi hoặc sau khi luồng ghi đã thoát (hàng đợi chỉ có 1 bên đọc)
+    private void failPending() {
+        ring.drain(entry -> entry.result.completeExceptionally(
+                new IllegalStateException("OrderPipeline đã đóng")), Integer.MAX_VALUE);
+    }
+
+    // 1 lệnh đang chờ và future trả kết quả cho quầy đã gửi
+    private static final class Entry {
+        final OrderCommand command;
+        final CompletableFuture<ConfirmationResult> result = new CompletableFuture<>();
+
+        Entry(OrderCommand command) {
+            this.command = command;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package service;
+
+import com.itextpdf.text.BaseColor;
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Element;
+import com.itextpdf.text.Font;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.pdf.PdfPCell;
+import com.itextpdf.text.pdf.PdfPTable;
+
+/**
+ * Ghi 1 bảng PDF theo từng khối dòng thay vì dựng cả PdfPTable trong bộ nhớ.
+ * Bảng được đánh dấu chưa hoàn tất (setComplete(false)); cứ FLUSH_ROWS dòng thì đưa vào
+ * document, iText dàn trang các dòng đó rồi bỏ chúng khỏi bảng, nên bộ nhớ dùng không phụ
+ * thuộc số dòng. Font và các ô mẫu được tạo 1 lần cho cả bảng.
+ */
+public class PdfTableStream {
+    public static final int FLUSH_ROWS = 500;
+
+    private final Document document;
+    private final PdfPTable table;
+    private final int columns;
+
+    private final Font dataFont = new Font(Font.FontFamily.HELVETICA, 8);
+    private final Font totalFont = new Font(Font.FontFamily.HELVETICA, 9, Font.BOLD);
+
+    // Ô mẫu: mỗi ô mới là bản sao của ô mẫu, chỉ thay nội dung
+    private final PdfPCell textCell;
+    private final PdfPCell numberCell;
+    private final PdfPCell totalCell;
+
+    private int cellsInRow;
+    private int pendingRows;
+
+    /**
+     * Tạo bảng và ghi dòng tiêu đề
+     * @param widths độ rộng tương đối các cột, null = chia đều
+     */
+    public PdfTableStream(Document document, String[] headers, float[] widths) throws DocumentException {
+        this.document = document;
+        this.columns = headers.length;
+        this.table = new PdfPTable(columns);
+        table.setWidthPercentage(100);
+        if (widths != null) {
+            table.setWidths(widths);
+        }
+        table.setComplete(false);
+
+        textCell = new PdfPCell();
+        numberCell = new PdfPCell();
+        numberCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
+        totalCell = new PdfPCell();
+        totalCell.setBackgroundColor(BaseColor.LIGHT_GRAY);
+        totalCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
+        totalCell.setPadding(4);
+
+        PdfPCell headerCell = new PdfPCell();
+        headerCell.setBackgroundColor(BaseColor.LIGHT_GRAY);
+        headerCell.setHorizontalAlignment(Element.ALIGN_CENTER);
+        headerCell.setPadding(4);
+        Font headerFont = new Font(Font.FontFamily.HELVETICA, 9, Font.BOLD);
+        for (String header : headers) {
+            add(headerCell, new Paragraph(header, headerFont));
+        }
+    }
+
+    /**
+     * Ô dữ liệu canh trái
+     */
+    public void text(String value) throws DocumentException {
+        add(textCell, new Paragraph(value, dataFont));
+    }
+
+    /**
+     * Ô dữ liệu canh phải (số)
+     */
+    public void number(String value) throws DocumentException {
+        add(numberCell, new Paragraph(value, dataFont));
+    }
+
+    /**
+     * Ô của dòng tổng (nền xám, canh phải)
+     */
+    public void total(String value) throws DocumentException {
+        total(value, 1, Element.ALIGN_RIGHT);
+    }
+
+    public void total(String value, int colspan, int alignment) throws DocumentException {
+        PdfPCell cell = new PdfPCell(totalCell);
+        cell.setHorizontalAlignment(alignment);
+        cell.setColspan(colspan);
+        cell.setPhrase(new Paragraph(value, totalFont));
+        addCell(cell);
+    }
+
+    /**
+     * Đưa các dòng còn lại vào document và đóng bảng
+     */
+    public void finish() throws DocumentException {
+        table.setComplete(true);
+        document.add(table);
+        pendingRows = 0;
+    }
+
+    private void add(PdfPCell template, Paragraph content) throws DocumentException {
+        PdfPCell cell = new PdfPCell(template);
+        cell.setPhrase(content);
+        addCell(cell);
+    }
+
+    private void addCell(PdfPCell cell) throws DocumentException {
+        table.addCell(cell);
+        cellsInRow += cell.getColspan();
+        if (cellsInRow < columns) {
+            return;
+        }
+        cellsInRow = 0;
+        if (++pendingRows >= FLUSH_ROWS) {
+            // Chỉ đưa vào document khi vừa hết 1 dòng, để không tách 1 dòng làm 2 lần dàn trang
+            document.add(table);
+            pendingRows = 0;
+        }
+    }
+}
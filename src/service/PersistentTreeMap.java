@@ -0,0 +1,219 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Map sắp xếp theo khóa, bất biến, dạng cây AVL dùng chung cấu trúc (persistent).
+ * plus()/minus() trả về map mới và chỉ tạo lại O(log n) nút trên đường đi từ gốc; phần còn lại
+ * của cây dùng chung với phiên bản cũ. Các snapshot liên tiếp vì thế không phải sao chép toàn bộ
+ * dữ liệu, và phiên bản cũ không bao giờ bị sửa nên đọc được từ nhiều luồng mà không cần khóa.
+ * @param <K> kiểu khóa
+ * @param <V> kiểu giá trị
+ */
+final class PersistentTreeMap<K, V> {
+    private final Comparator<? super K> comparator;
+    private final Node<K, V> root;
+
+    private PersistentTreeMap(Comparator<? super K> comparator, Node<K, V> root) {
+        this.comparator = comparator;
+        this.root = root;
+    }
+
+    static <K extends Comparable<? super K>, V> PersistentTreeMap<K, V> empty() {
+        return new PersistentTreeMap<>(Comparator.naturalOrder(), null);
+    }
+
+    static <K, V> PersistentTreeMap<K, V> empty(Comparator<? super K> comparator) {
+        return new PersistentTreeMap<>(comparator, null);
+    }
+
+    int size() {
+        return size(root);
+    }
+
+    boolean isEmpty() {
+        return root == null;
+    }
+
+    V get(K key) {
+        Node<K, V> node = root;
+        while (node != null) {
+            int cmp = comparator.compare(key, node.key);
+            if (cmp == 0) {
+                return node.value;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * Map mới có thêm (hoặc thay) giá trị của key
+     */
+    PersistentTreeMap<K, V> plus(K key, V value) {
+        Node<K, V> next = insert(root, key, value);
+        return next == root ? this : new PersistentTreeMap<>(comparator, next);
+    }
+
+    /**
+     * Map mới không còn key (trả về chính map này nếu không có key)
+     */
+    PersistentTreeMap<K, V> minus(K key) {
+        Node<K, V> next = delete(root, key);
+        return next == root ? this : new PersistentTreeMap<>(comparator, next);
+    }
+
+    /**
+     * Duyệt theo thứ tự khóa tăng dần
+     */
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        forEach(root, action);
+    }
+
+    /**
+     * Duyệt các khóa trong [from, to] theo thứ tự tăng dần: O(log n + số khóa trong khoảng)
+     */
+    void forEachInRange(K from, K to, BiConsumer<? super K, ? super V> action) {
+        if (comparator.compare(from, to) <= 0) {
+            forEachInRange(root, from, to, action);
+        }
+    }
+
+    /**
+     * Danh sách giá trị theo thứ tự khóa tăng dần
+     */
+    List<V> values() {
+        List<V> values = new ArrayList<>(size());
+        forEach((key, value) -> values.add(value));
+        return values;
+    }
+
+    private Node<K, V> insert(Node<K, V> node, K key, V value) {
+        if (node == null) {
+            return new Node<>(key, value, null, null);
+        }
+        int cmp = comparator.compare(key, node.key);
+        if (cmp == 0) {
+            return node.value == value ? node : new Node<>(node.key, value, node.left, node.right);
+        }
+        if (cmp < 0) {
+            Node<K, V> left = insert(node.left, key, value);
+            return left == node.left ? node : balance(node.key, node.value, left, node.right);
+        }
+        Node<K, V> right = insert(node.right, key, value);
+        return right == node.right ? node : balance(node.key, node.value, node.left, right);
+    }
+
+    private Node<K, V> delete(Node<K, V> node, K key) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = comparator.compare(key, node.key);
+        if (cmp < 0) {
+            Node<K, V> left = delete(node.left, key);
+            return left == node.left ? node : balance(node.key, node.value, left, node.right);
+        }
+        if (cmp > 0) {
+            Node<K, V> right = delete(node.right, key);
+            return right == node.right ? node : balance(node.key, node.value, node.left, right);
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        // Thay bằng nút nhỏ nhất của cây con phải
+        Node<K, V> successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor.key, successor.value, node.left, deleteMin(node.right));
+    }
+
+    private static <K, V> Node<K, V> deleteMin(Node<K, V> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node.key, node.value, deleteMin(node.left), node.right);
+    }
+
+    // Tạo nút với 2 cây con đã cân bằng, xoay 1 hoặc 2 lần nếu chênh lệch chiều cao > 1
+    private static <K, V> Node<K, V> balance(K key, V value, Node<K, V> left, Node<K, V> right) {
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        if (leftHeight > rightHeight + 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node<>(left.key, left.value, left.left, new Node<>(key, value, left.right, right));
+            }
+            Node<K, V> pivot = left.right;
+            return new Node<>(pivot.key, pivot.value,
+                    new Node<>(left.key, left.value, left.left, pivot.left),
+                    new Node<>(key, value, pivot.right, right));
+        }
+        if (rightHeight > leftHeight + 1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node<>(right.key, right.value, new Node<>(key, value, left, right.left), right.right);
+            }
+            Node<K, V> pivot = right.left;
+            return new Node<>(pivot.key, pivot.value,
+                    new Node<>(key, value, left, pivot.left),
+                    new Node<>(right.key, right.value, pivot.right, right.right));
+        }
+        return new Node<>(key, value, left, right);
+    }
+
+    private static <K, V> void forEach(Node<K, V> node, BiConsumer<? super K, ? super V> action) {
+        while (node != null) {
+            forEach(node.left, action);
+            action.accept(node.key, node.value);
+            node = node.right;
+        }
+    }
+
+    private void forEachInRange(Node<K, V> node, K from, K to, BiConsumer<? super K, ? super V> action) {
+        while (node != null) {
+            boolean afterFrom = comparator.compare(node.key, from) >= 0;
+            boolean beforeTo = comparator.compare(node.key, to) <= 0;
+            if (afterFrom) {
+                forEachInRange(node.left, from, to, action);
+            }
+            if (afterFrom && beforeTo) {
+                action.accept(node.key, node.value);
+            }
+            if (!beforeTo) {
+                return;
+            }
+            node = node.right;
+        }
+    }
+
+    private static int height(Node<?, ?> node) {
+        return node != null ? node.height : 0;
+    }
+
+    private static int size(Node<?, ?> node) {
+        return node != null ? node.size : 0;
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        final Node<K, V> left;
+        final Node<K, V> right;
+        final int height;
+        final int size;
+
+        Node(K key, V value, Node<K, V> left, Node<K, V> right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size = size(left) + size(right) + 1;
+        }
+    }
+}
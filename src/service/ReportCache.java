@@ -0,0 +1,118 @@
+package service;
+
+import interfaces.Reportable;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bộ nhớ đệm kết quả báo cáo, khóa theo loại báo cáo + tham số và đóng dấu phiên bản dữ liệu
+ * (InventorySnapshot.getVersion()). Mọi thay đổi qua WarehouseService hay CRUD repository đều
+ * làm SnapshotPublisher tăng phiên bản, nên báo cáo được lưu tự hết hạn khi dữ liệu đổi; yêu cầu
+ * lặp lại trên cùng phiên bản chỉ chép lại nội dung đã có.
+ * Khi tạo mới, nội dung vẫn được ghi thẳng ra nơi nhận và chỉ sao lại để lưu nếu không quá
+ * MAX_CACHED_CHARS ký tự, nên báo cáo rất lớn vẫn chạy theo luồng như trước.
+ */
+public class ReportCache {
+    public static final int MAX_CACHED_CHARS = 1 << 20;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Ghi báo cáo ra out: lấy từ bộ đệm nếu đã tạo trên đúng phiên bản dữ liệu này,
+     * nếu không thì chạy body và lưu lại kết quả
+     * @param version phiên bản của snapshot mà body đọc
+     * @param key loại báo cáo và tham số
+     */
+    public void write(long version, String key, Appendable out, Reportable.ReportBody body) throws IOException {
+        Entry cached = entries.get(key);
+        if (cached != null && cached.version == version) {
+            hits.incrementAndGet();
+            out.append(cached.content);
+            return;
+        }
+        misses.incrementAndGet();
+
+        Recorder recorder = new Recorder(out);
+        body.writeTo(recorder);
+        if (recorder.copy != null) {
+            store(key, new Entry(version, recorder.copy.toString()));
+        }
+    }
+
+    private void store(String key, Entry entry) {
+        // Phiên bản chỉ tăng: bỏ các báo cáo của phiên bản cũ, không để báo cáo cũ ghi đè báo cáo mới
+        entries.values().removeIf(e -> e.version < entry.version);
+        entries.merge(key, entry, (old, fresh) -> fresh.version >= old.version ? fresh : old);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static final class Entry {
+        private final long version;
+        private final String content;
+
+        private Entry(long version, String content) {
+            this.version = version;
+            this.content = content;
+        }
+    }
+
+    /**
+     * Chuyển tiếp mọi ký tự sang out và giữ 1 bản sao cho đến khi vượt MAX_CACHED_CHARS
+     */
+    private static final class Recorder implements Appendable {
+        private final Appendable out;
+        private StringBuilder copy = new StringBuilder();
+
+        private Recorder(Appendable out) {
+            this.out = out;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) throws IOException {
+            out.append(csq);
+            record(csq != null ? csq : "null");
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) throws IOException {
+            out.append(csq, start, end);
+            record((csq != null ? csq : "null").subSequence(start, end));
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException {
+            out.append(c);
+            record(String.valueOf(c));
+            return this;
+        }
+
+        private void record(CharSequence chars) {
+            if (copy == null) {
+                return;
+            }
+            if (copy.length() + chars.length() > MAX_CACHED_CHARS) {
+                copy = null; // quá lớn để lưu, chỉ ghi thẳng ra out
+            } else {
+                copy.append(chars);
+            }
+        }
+    }
+}
@@ -10,9 +10,6 @@ import com.itextpdf.text.Element;
 import com.itextpdf.text.Font;
 import com.itextpdf.text.Paragraph;
 import com.itextpdf.text.pdf.PdfWriter;
-import com.itextpdf.text.pdf.PdfPTable;
-import com.itextpdf.text.pdf.PdfPCell;
-import com.itextpdf.text.BaseColor;
 
 import java.io.*;
 import java.time.LocalDate;
@@ -23,49 +20,66 @@ import java.util.stream.Collectors;
 /**
  * Service tao bao cao va thong ke
  * CSV dep + PDF khong dau
+ * Moi bao cao chup 1 snapshot (SnapshotPublisher) luc bat dau va chi doc tren snapshot do,
+ * nen khong thay don xac nhan do dang va khong chan cac luong dang ghi kho.
+ * Bao cao dang text duoc luu theo phien ban snapshot: yeu cau lap lai khi du lieu chua doi
+ * khong phai tinh lai.
  */
 public class ReportService implements Reportable {
-    private final ProductRepository productRepository;
-    private final OrderRepository orderRepository;
+    private final SnapshotPublisher snapshots;
+    // Ket qua bao cao theo phien ban du lieu, tu het han khi kho thay doi
+    private final ReportCache cache = new ReportCache();
     private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy");
 
     public ReportService(ProductRepository productRepository, OrderRepository orderRepository) {
-        this.productRepository = productRepository;
-        this.orderRepository = orderRepository;
+        this(new SnapshotPublisher(productRepository, orderRepository));
+    }
+
+    /**
+     * @param snapshots dung chung voi WarehouseService de thay dung phien ban sau moi lan ghi
+     */
+    public ReportService(SnapshotPublisher snapshots) {
+        this.snapshots = snapshots;
+    }
+
+    public ReportCache getCache() {
+        return cache;
     }
 
     @Override
     public String generateInventoryReport() {
-        StringBuilder report = new StringBuilder();
+        return render(report -> generateInventoryReport(report));
+    }
+
+    @Override
+    public void generateInventoryReport(Appendable report) throws IOException {
+        InventorySnapshot snapshot = snapshots.snapshot();
+        cache.write(snapshot.getVersion(), "inventory|" + LocalDate.now(), report,
+                out -> writeInventoryReport(snapshot, out));
+    }
+
+    private void writeInventoryReport(InventorySnapshot snapshot, Appendable report) throws IOException {
         report.append("\n╔════════════════════════════════════════════════════════════════════════════════╗\n");
         report.append("║                          BAO CAO TON KHO                                       ║\n");
         report.append("╚════════════════════════════════════════════════════════════════════════════════╝\n");
         report.append("Ngay bao cao: ").append(LocalDate.now().format(DATE_FORMAT)).append("\n\n");
 
-        java.util.List<Product> products = productRepository.findAll();
-
-        Map<String, Long> countByType = products.stream()
-                .collect(Collectors.groupingBy(Product::getProductType, Collectors.counting()));
-
-        Map<String, Double> valueByType = products.stream()
-                .collect(Collectors.groupingBy(
-                        Product::getProductType,
-                        Collectors.summingDouble(p -> p.getStockQuantity() * p.getImportPrice())
-                ));
+        // Tong theo loai duoc cap nhat dan theo moi lan doi ton kho/gia (O(so loai))
+        InventoryTotals totals = snapshot.getTotals();
 
         report.append("1. THONG KE THEO LOAI SAN PHAM:\n");
         report.append(String.format("%-20s | %10s | %20s\n", "Loai", "So luong", "Gia tri ton kho"));
         report.append("-".repeat(60)).append("\n");
 
-        double totalValue = 0;
-        for (String type : countByType.keySet()) {
-            long count = countByType.get(type);
-            double value = valueByType.get(type);
-            totalValue += value;
-            report.append(String.format("%-20s | %,10d | %,20.0f VND\n", type, count, value));
+        for (String type : totals.getTypes()) {
+            InventoryTotals.TypeTotals typeTotals = totals.get(type);
+            report.append(String.format("%-20s | %,10d | %,20.0f VND\n",
+                    type, typeTotals.getCount(), typeTotals.getValue()));
         }
         report.append("-".repeat(60)).append("\n");
-        report.append(String.format("TONG CONG: %,20.0f VND\n\n", totalValue));
+        report.append(String.format("TONG CONG: %,20.0f VND\n\n", totals.getTotalValue()));
+
+        java.util.List<Product> products = snapshot.getProducts();
 
         report.append("2. CHI TIET TON KHO:\n");
         report.append(String.format("%-10s | %-25s | %-12s | %10s | %15s | %15s\n",
@@ -83,20 +97,29 @@ public class ReportService implements Reportable {
                     product.getImportPrice(),
                     product.getSalePrice()));
         }
-
-        return report.toString();
     }
 
     @Override
     public String generateImportExportReport(LocalDate fromDate, LocalDate toDate) {
-        StringBuilder report = new StringBuilder();
+        return render(report -> generateImportExportReport(fromDate, toDate, report));
+    }
+
+    @Override
+    public void generateImportExportReport(LocalDate fromDate, LocalDate toDate, Appendable report) throws IOException {
+        InventorySnapshot snapshot = snapshots.snapshot();
+        cache.write(snapshot.getVersion(), "import-export|" + fromDate + "|" + toDate, report,
+                out -> writeImportExportReport(snapshot, fromDate, toDate, out));
+    }
+
+    private void writeImportExportReport(InventorySnapshot snapshot, LocalDate fromDate, LocalDate toDate,
+                                         Appendable report) throws IOException {
         report.append("\n╔════════════════════════════════════════════════════════════════════════════════╗\n");
         report.append("║                       BAO CAO NHAP - XUAT - TON                                ║\n");
         report.append("╚════════════════════════════════════════════════════════════════════════════════╝\n");
         report.append(String.format("Tu ngay: %s den %s\n\n",
                 fromDate.format(DATE_FORMAT), toDate.format(DATE_FORMAT)));
 
-        java.util.List<ImportOrder> imports = orderRepository.getImportOrdersByDateRange(fromDate, toDate);
+        java.util.List<ImportOrder> imports = snapshot.getImportOrdersByDateRange(fromDate, toDate);
         double totalImport = imports.stream()
                 .filter(o -> o.getStatus() == OrderStatus.COMPLETED)
                 .mapToDouble(ImportOrder::getTotalAmount)
@@ -106,7 +129,7 @@ public class ReportService implements Reportable {
         report.append(String.format("   Tong so phieu: %d\n", imports.size()));
         report.append(String.format("   Tong gia tri: %,20.0f VND\n\n", totalImport));
 
-        java.util.List<ExportOrder> exports = orderRepository.getExportOrdersByDateRange(fromDate, toDate);
+        java.util.List<ExportOrder> exports = snapshot.getExportOrdersByDateRange(fromDate, toDate);
         double totalExport = exports.stream()
                 .filter(o -> o.getStatus() == OrderStatus.COMPLETED)
                 .mapToDouble(ExportOrder::getTotalAmount)
@@ -116,50 +139,39 @@ public class ReportService implements Reportable {
         report.append(String.format("   Tong so phieu: %d\n", exports.size()));
         report.append(String.format("   Tong gia tri: %,20.0f VND\n\n", totalExport));
 
-        java.util.List<Product> products = productRepository.findAll();
-        double inventoryValue = products.stream()
-                .mapToDouble(p -> p.getStockQuantity() * p.getImportPrice())
-                .sum();
+        InventoryTotals totals = snapshot.getTotals();
 
         report.append("3. TON KHO CUOI KY:\n");
-        report.append(String.format("   So loai san pham: %d\n", products.size()));
-        report.append(String.format("   Gia tri ton kho: %,20.0f VND\n\n", inventoryValue));
-
-        return report.toString();
+        report.append(String.format("   So loai san pham: %d\n", totals.getTotalCount()));
+        report.append(String.format("   Gia tri ton kho: %,20.0f VND\n\n", totals.getTotalValue()));
     }
 
     @Override
     public String generateRevenueReport(LocalDate fromDate, LocalDate toDate) {
-        StringBuilder report = new StringBuilder();
+        return render(report -> generateRevenueReport(fromDate, toDate, report));
+    }
+
+    @Override
+    public void generateRevenueReport(LocalDate fromDate, LocalDate toDate, Appendable report) throws IOException {
+        InventorySnapshot snapshot = snapshots.snapshot();
+        cache.write(snapshot.getVersion(), "revenue|" + fromDate + "|" + toDate, report,
+                out -> writeRevenueReport(snapshot, fromDate, toDate, out));
+    }
+
+    private void writeRevenueReport(InventorySnapshot snapshot, LocalDate fromDate, LocalDate toDate,
+                                    Appendable report) throws IOException {
         report.append("\n╔════════════════════════════════════════════════════════════════════════════════╗\n");
         report.append("║                          BAO CAO DOANH THU                                     ║\n");
         report.append("╚════════════════════════════════════════════════════════════════════════════════╝\n");
         report.append(String.format("Tu ngay: %s den %s\n\n",
                 fromDate.format(DATE_FORMAT), toDate.format(DATE_FORMAT)));
 
-        java.util.List<ExportOrder> exports = orderRepository.getExportOrdersByDateRange(fromDate, toDate)
-                .stream()
-                .filter(o -> o.getStatus() == OrderStatus.COMPLETED)
-                .collect(Collectors.toList());
-
-        double totalRevenue = 0;
-        double totalCost = 0;
-        double totalProfit = 0;
-
-        for (ExportOrder order : exports) {
-            double revenue = order.getTotalAmount();
-            double cost = 0;
-
-            for (OrderItem item : order.getItems()) {
-                cost += item.getProduct().getImportPrice() * item.getQuantity();
-            }
-
-            double profit = revenue - cost;
-
-            totalRevenue += revenue;
-            totalCost += cost;
-            totalProfit += profit;
-        }
+        // Doc cac o ngay trong ky cua khoi doanh so, khong duyet lai cac don
+        SalesCube.Measures sales = snapshot.getSales().query(fromDate, toDate);
+        double totalRevenue = sales.getRevenue();
+        double totalCost = sales.getCost();
+        double totalProfit = sales.getProfit();
+        long orderCount = sales.getOrders();
 
         report.append(String.format("Tong doanh thu:       %,20.0f VND\n", totalRevenue));
         report.append(String.format("Tong chi phi:         %,20.0f VND\n", totalCost));
@@ -167,59 +179,30 @@ public class ReportService implements Reportable {
         report.append(String.format("Ty suat loi nhuan:    %18.2f %%\n",
                 totalRevenue > 0 ? (totalProfit / totalRevenue * 100) : 0));
 
-        report.append(String.format("\nSo don hang:          %,20d\n", exports.size()));
+        report.append(String.format("\nSo don hang:          %,20d\n", orderCount));
         report.append(String.format("Gia tri TB/don:       %,20.0f VND\n",
-                exports.size() > 0 ? totalRevenue / exports.size() : 0));
-
-        return report.toString();
+                orderCount > 0 ? totalRevenue / orderCount : 0));
     }
 
     public String generateSeasonalTrendReport() {
-        StringBuilder report = new StringBuilder();
+        return render(report -> generateSeasonalTrendReport(report));
+    }
+
+    public void generateSeasonalTrendReport(Appendable report) throws IOException {
+        InventorySnapshot snapshot = snapshots.snapshot();
+        cache.write(snapshot.getVersion(), "seasonal", report,
+                out -> writeSeasonalTrendReport(snapshot, out));
+    }
+
+    private void writeSeasonalTrendReport(InventorySnapshot snapshot, Appendable report) throws IOException {
         report.append("\n╔════════════════════════════════════════════════════════════════════════════════╗\n");
         report.append("║                   BAO CAO XU HUONG BAN HANG THEO MUA                           ║\n");
         report.append("╚════════════════════════════════════════════════════════════════════════════════╝\n\n");
 
-        java.util.List<ExportOrder> allExports = orderRepository.findAllExportOrders()
-                .stream()
-                .filter(o -> o.getStatus() == OrderStatus.COMPLETED)
-                .collect(Collectors.toList());
-
-        if (allExports.isEmpty()) {
+        Map<String, SalesCube.Measures> seasons = seasonTotals(snapshot.getSales());
+        if (seasons == null) {
             report.append("Chua co du lieu ban hang!\n");
-            return report.toString();
-        }
-
-        Map<String, Double> seasonRevenue = new LinkedHashMap<>();
-        Map<String, Integer> seasonOrderCount = new LinkedHashMap<>();
-        Map<String, Integer> seasonQuantity = new LinkedHashMap<>();
-
-        seasonRevenue.put("Xuan (1-3)", 0.0);
-        seasonRevenue.put("Ha (4-6)", 0.0);
-        seasonRevenue.put("Thu (7-9)", 0.0);
-        seasonRevenue.put("Dong (10-12)", 0.0);
-
-        seasonOrderCount.put("Xuan (1-3)", 0);
-        seasonOrderCount.put("Ha (4-6)", 0);
-        seasonOrderCount.put("Thu (7-9)", 0);
-        seasonOrderCount.put("Dong (10-12)", 0);
-
-        seasonQuantity.put("Xuan (1-3)", 0);
-        seasonQuantity.put("Ha (4-6)", 0);
-        seasonQuantity.put("Thu (7-9)", 0);
-        seasonQuantity.put("Dong (10-12)", 0);
-
-        for (ExportOrder order : allExports) {
-            int month = order.getOrderDate().getMonthValue();
-            String season = getSeason(month);
-
-            seasonRevenue.put(season, seasonRevenue.get(season) + order.getTotalAmount());
-            seasonOrderCount.put(season, seasonOrderCount.get(season) + 1);
-
-            int quantity = order.getItems().stream()
-                    .mapToInt(OrderItem::getQuantity)
-                    .sum();
-            seasonQuantity.put(season, seasonQuantity.get(season) + quantity);
+            return;
         }
 
         report.append("1. THONG KE DOANH THU THEO MUA:\n");
@@ -228,13 +211,13 @@ public class ReportService implements Reportable {
         report.append("-".repeat(90)).append("\n");
 
         double totalRevenue = 0;
-        int totalOrders = 0;
-        int totalQuantity = 0;
+        long totalOrders = 0;
+        long totalQuantity = 0;
 
-        for (String season : seasonRevenue.keySet()) {
-            double revenue = seasonRevenue.get(season);
-            int orders = seasonOrderCount.get(season);
-            int quantity = seasonQuantity.get(season);
+        for (String season : seasons.keySet()) {
+            double revenue = seasons.get(season).getRevenue();
+            long orders = seasons.get(season).getOrders();
+            long quantity = seasons.get(season).getUnits();
             double avgPerOrder = orders > 0 ? revenue / orders : 0;
 
             totalRevenue += revenue;
@@ -249,7 +232,37 @@ public class ReportService implements Reportable {
         report.append(String.format("TONG CONG      | %,15d | %,15d | %,15.0f | %,20.0f\n",
                 totalOrders, totalQuantity, totalRevenue,
                 totalOrders > 0 ? totalRevenue / totalOrders : 0));
+    }
+
+    /**
+     * Tong doanh so theo mua, doc tu 12 thang cua khoi doanh so
+     * @return null neu chua co don xuat hoan tat nao
+     */
+    private Map<String, SalesCube.Measures> seasonTotals(SalesCube sales) {
+        Map<String, SalesCube.Measures> seasons = new LinkedHashMap<>();
+        seasons.put("Xuan (1-3)", SalesCube.Measures.ZERO);
+        seasons.put("Ha (4-6)", SalesCube.Measures.ZERO);
+        seasons.put("Thu (7-9)", SalesCube.Measures.ZERO);
+        seasons.put("Dong (10-12)", SalesCube.Measures.ZERO);
+
+        long orders = 0;
+        for (Map.Entry<Integer, SalesCube.Measures> month : sales.byMonth(null, null).entrySet()) {
+            seasons.merge(getSeason(month.getKey()), month.getValue(), SalesCube.Measures::plus);
+            orders += month.getValue().getOrders();
+        }
+        return orders > 0 ? seasons : null;
+    }
 
+    /**
+     * Ghi bao cao vao StringBuilder cho cac ham tra ve chuoi (StringBuilder khong nem IOException)
+     */
+    private static String render(ReportBody body) {
+        StringBuilder report = new StringBuilder();
+        try {
+            body.writeTo(report);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
         return report.toString();
     }
 
@@ -276,10 +289,28 @@ public class ReportService implements Reportable {
         System.out.println("Xuat CSV: " + filePath);
     }
 
+    @Override
+    public void exportToCSV(ReportBody report, String fileName) throws IOException {
+        File reportsDir = new File("reports");
+        if (!reportsDir.exists()) {
+            reportsDir.mkdirs();
+        }
+
+        // Bao cao ghi thang vao file qua bo dem, khong dung chuoi trung gian
+        String filePath = "reports/" + fileName;
+        try (BufferedWriter writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(filePath), "UTF-8"))) {
+            writer.write('\ufeff'); // UTF-8 BOM
+            report.writeTo(writer);
+        }
+        System.out.println("Xuat CSV: " + filePath);
+    }
+
     /**
      * XUAT CSV - FORMAT BANG DEP, DE DOC
      */
     public void exportToExcelCSV(String reportType, LocalDate fromDate, LocalDate toDate) throws IOException {
+        InventorySnapshot snapshot = snapshots.snapshot();
         File reportsDir = new File("reports");
         if (!reportsDir.exists()) {
             reportsDir.mkdirs();
@@ -304,7 +335,7 @@ public class ReportService implements Reportable {
                 writer.write("---,---,---,---,---,---,---\n");
 
                 // DATA
-                java.util.List<Product> products = productRepository.findAll();
+                java.util.List<Product> products = snapshot.getProducts();
                 double totalValue = 0;
 
                 for (Product product : products) {
@@ -341,7 +372,7 @@ public class ReportService implements Reportable {
                 writer.write("---,---,---,---,---,---\n");
 
                 // DATA
-                java.util.List<ExportOrder> exports = orderRepository.getExportOrdersByDateRange(
+                java.util.List<ExportOrder> exports = snapshot.getExportOrdersByDateRange(
                                 fromDate != null ? fromDate : LocalDate.now().minusMonths(1),
                                 toDate != null ? toDate : LocalDate.now())
                         .stream()
@@ -357,7 +388,7 @@ public class ReportService implements Reportable {
                     double cost = 0;
 
                     for (OrderItem item : order.getItems()) {
-                        cost += item.getProduct().getImportPrice() * item.getQuantity();
+                        cost += item.getUnitCost() * item.getQuantity();
                     }
                     double profit = revenue - cost;
 
@@ -436,16 +467,18 @@ public class ReportService implements Reportable {
         date.setAlignment(Element.ALIGN_CENTER);
         document.add(date);
 
+        // Ca file PDF dung chung 1 snapshot, ghi kho van tiep tuc trong luc xuat
+        InventorySnapshot snapshot = snapshots.snapshot();
         try {
             if (typeNormalized.contains("inventory")) {
                 System.out.println("-> Them bang TON KHO");
-                addInventoryTable(document);
+                addInventoryTable(document, snapshot);
             } else if (typeNormalized.contains("revenue")) {
                 System.out.println("-> Them bang DOANH THU");
-                addRevenueTable(document);
+                addRevenueTable(document, snapshot);
             } else if (typeNormalized.contains("seasonal")) {
                 System.out.println("-> Them bang XU HUONG MUA");
-                addSeasonalTable(document);
+                addSeasonalTable(document, snapshot);
             } else {
                 System.out.println("ERROR: reportType khong hop le");
                 Font errorFont = new Font(Font.FontFamily.HELVETICA, 10, Font.BOLD);
@@ -461,12 +494,12 @@ public class ReportService implements Reportable {
         System.out.println("=== KET THUC ===\n");
     }
 
-    private void addInventoryTable(Document document) throws DocumentException {
+    private void addInventoryTable(Document document, InventorySnapshot snapshot) throws DocumentException {
         Font titleFont = new Font(Font.FontFamily.HELVETICA, 11, Font.BOLD);
         Paragraph subtitle = new Paragraph("BAO CAO TON KHO\n\n", titleFont);
         document.add(subtitle);
 
-        java.util.List<Product> products = productRepository.findAll();
+        java.util.List<Product> products = snapshot.getProducts();
 
         if (products.isEmpty()) {
             Font warnFont = new Font(Font.FontFamily.HELVETICA, 10, Font.BOLD);
@@ -474,70 +507,32 @@ public class ReportService implements Reportable {
             return;
         }
 
-        PdfPTable table = new PdfPTable(7);
-        table.setWidthPercentage(100);
-        table.setWidths(new float[]{1, 2.5f, 1.5f, 1, 1.5f, 1.5f, 1.8f});
+        // Bang duoc ghi theo tung khoi dong, khong giu ca bang trong bo nho
+        PdfTableStream table = new PdfTableStream(document,
+                new String[]{"ID", "Ten San Pham", "Loai", "Ton Kho", "Gia Nhap", "Gia Ban", "Gia Tri Ton"},
+                new float[]{1, 2.5f, 1.5f, 1, 1.5f, 1.5f, 1.8f});
 
-        Font headerFont = new Font(Font.FontFamily.HELVETICA, 9, Font.BOLD);
-        String[] headers = {"ID", "Ten San Pham", "Loai", "Ton Kho", "Gia Nhap", "Gia Ban", "Gia Tri Ton"};
-
-        for (String header : headers) {
-            PdfPCell cell = new PdfPCell(new Paragraph(header, headerFont));
-            cell.setBackgroundColor(BaseColor.LIGHT_GRAY);
-            cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-            cell.setPadding(4);
-            table.addCell(cell);
-        }
-
-        Font dataFont = new Font(Font.FontFamily.HELVETICA, 8);
         double totalInventoryValue = 0;
 
         for (Product product : products) {
             double value = product.getStockQuantity() * product.getImportPrice();
             totalInventoryValue += value;
 
-            String productName = convertToNonDiacritic(product.getName());
-            String productType = convertToNonDiacritic(product.getProductType());
-
-            table.addCell(new PdfPCell(new Paragraph(product.getId(), dataFont)));
-            table.addCell(new PdfPCell(new Paragraph(productName, dataFont)));
-            table.addCell(new PdfPCell(new Paragraph(productType, dataFont)));
-
-            PdfPCell qtyCell = new PdfPCell(new Paragraph(String.valueOf(product.getStockQuantity()), dataFont));
-            qtyCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-            table.addCell(qtyCell);
-
-            PdfPCell importCell = new PdfPCell(new Paragraph(String.format("%.0f", product.getImportPrice()), dataFont));
-            importCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-            table.addCell(importCell);
-
-            PdfPCell saleCell = new PdfPCell(new Paragraph(String.format("%.0f", product.getSalePrice()), dataFont));
-            saleCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-            table.addCell(saleCell);
-
-            PdfPCell valueCell = new PdfPCell(new Paragraph(String.format("%.0f", value), dataFont));
-            valueCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-            table.addCell(valueCell);
+            table.text(product.getId());
+            table.text(convertToNonDiacritic(product.getName()));
+            table.text(convertToNonDiacritic(product.getProductType()));
+            table.number(String.valueOf(product.getStockQuantity()));
+            table.number(String.format("%.0f", product.getImportPrice()));
+            table.number(String.format("%.0f", product.getSalePrice()));
+            table.number(String.format("%.0f", value));
         }
 
-        Font totalFont = new Font(Font.FontFamily.HELVETICA, 9, Font.BOLD);
-        PdfPCell totalLabel = new PdfPCell(new Paragraph("TONG CONG", totalFont));
-        totalLabel.setColspan(6);
-        totalLabel.setBackgroundColor(BaseColor.LIGHT_GRAY);
-        totalLabel.setHorizontalAlignment(Element.ALIGN_RIGHT);
-        totalLabel.setPadding(4);
-        table.addCell(totalLabel);
-
-        PdfPCell totalValueCell = new PdfPCell(new Paragraph(String.format("%.0f", totalInventoryValue), totalFont));
-        totalValueCell.setBackgroundColor(BaseColor.LIGHT_GRAY);
-        totalValueCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-        totalValueCell.setPadding(4);
-        table.addCell(totalValueCell);
-
-        document.add(table);
+        table.total("TONG CONG", 6, Element.ALIGN_RIGHT);
+        table.total(String.format("%.0f", totalInventoryValue));
+        table.finish();
     }
 
-    private void addRevenueTable(Document document) throws DocumentException {
+    private void addRevenueTable(Document document, InventorySnapshot snapshot) throws DocumentException {
         Font titleFont = new Font(Font.FontFamily.HELVETICA, 11, Font.BOLD);
         Paragraph subtitle = new Paragraph("BAO CAO DOANH THU\n\n", titleFont);
         document.add(subtitle);
@@ -545,7 +540,7 @@ public class ReportService implements Reportable {
         LocalDate fromDate = LocalDate.now().minusMonths(1);
         LocalDate toDate = LocalDate.now();
 
-        java.util.List<ExportOrder> exports = orderRepository.getExportOrdersByDateRange(fromDate, toDate)
+        java.util.List<ExportOrder> exports = snapshot.getExportOrdersByDateRange(fromDate, toDate)
                 .stream()
                 .filter(o -> o.getStatus() == OrderStatus.COMPLETED)
                 .collect(Collectors.toList());
@@ -556,28 +551,16 @@ public class ReportService implements Reportable {
             return;
         }
 
-        PdfPTable table = new PdfPTable(6);
-        table.setWidthPercentage(100);
+        PdfTableStream table = new PdfTableStream(document,
+                new String[]{"ID Don", "Ngay", "Khach Hang", "Tong Tien", "Chi Phi", "Loi Nhuan"}, null);
 
-        Font headerFont = new Font(Font.FontFamily.HELVETICA, 9, Font.BOLD);
-        String[] headers = {"ID Don", "Ngay", "Khach Hang", "Tong Tien", "Chi Phi", "Loi Nhuan"};
-
-        for (String header : headers) {
-            PdfPCell cell = new PdfPCell(new Paragraph(header, headerFont));
-            cell.setBackgroundColor(BaseColor.LIGHT_GRAY);
-            cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-            cell.setPadding(4);
-            table.addCell(cell);
-        }
-
-        Font dataFont = new Font(Font.FontFamily.HELVETICA, 8);
         double totalRev = 0, totalCost = 0, totalProfit = 0;
 
         for (ExportOrder order : exports) {
             double revenue = order.getTotalAmount();
             double cost = 0;
             for (OrderItem item : order.getItems()) {
-                cost += item.getProduct().getImportPrice() * item.getQuantity();
+                cost += item.getUnitCost() * item.getQuantity();
             }
             double profit = revenue - cost;
 
@@ -589,175 +572,62 @@ public class ReportService implements Reportable {
                     ? convertToNonDiacritic(order.getCustomer().getName())
                     : "N/A";
 
-            table.addCell(new PdfPCell(new Paragraph(order.getId(), dataFont)));
-            table.addCell(new PdfPCell(new Paragraph(order.getOrderDate().format(DATE_FORMAT), dataFont)));
-            table.addCell(new PdfPCell(new Paragraph(custName, dataFont)));
-
-            PdfPCell revCell = new PdfPCell(new Paragraph(String.format("%.0f", revenue), dataFont));
-            revCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-            table.addCell(revCell);
-
-            PdfPCell costCell = new PdfPCell(new Paragraph(String.format("%.0f", cost), dataFont));
-            costCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-            table.addCell(costCell);
-
-            PdfPCell profitCell = new PdfPCell(new Paragraph(String.format("%.0f", profit), dataFont));
-            profitCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-            table.addCell(profitCell);
+            table.text(order.getId());
+            table.text(order.getOrderDate().format(DATE_FORMAT));
+            table.text(custName);
+            table.number(String.format("%.0f", revenue));
+            table.number(String.format("%.0f", cost));
+            table.number(String.format("%.0f", profit));
         }
 
-        Font totalFont = new Font(Font.FontFamily.HELVETICA, 9, Font.BOLD);
-        PdfPCell totalLabel = new PdfPCell(new Paragraph("TONG CONG", totalFont));
-        totalLabel.setColspan(3);
-        totalLabel.setBackgroundColor(BaseColor.LIGHT_GRAY);
-        totalLabel.setHorizontalAlignment(Element.ALIGN_RIGHT);
-        totalLabel.setPadding(4);
-        table.addCell(totalLabel);
-
-        PdfPCell totalRevCell = new PdfPCell(new Paragraph(String.format("%.0f", totalRev), totalFont));
-        totalRevCell.setBackgroundColor(BaseColor.LIGHT_GRAY);
-        totalRevCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-        totalRevCell.setPadding(4);
-        table.addCell(totalRevCell);
-
-        PdfPCell totalCostCell = new PdfPCell(new Paragraph(String.format("%.0f", totalCost), totalFont));
-        totalCostCell.setBackgroundColor(BaseColor.LIGHT_GRAY);
-        totalCostCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-        totalCostCell.setPadding(4);
-        table.addCell(totalCostCell);
-
-        PdfPCell totalProfitCell = new PdfPCell(new Paragraph(String.format("%.0f", totalProfit), totalFont));
-        totalProfitCell.setBackgroundColor(BaseColor.LIGHT_GRAY);
-        totalProfitCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-        totalProfitCell.setPadding(4);
-        table.addCell(totalProfitCell);
-
-        document.add(table);
+        table.total("TONG CONG", 3, Element.ALIGN_RIGHT);
+        table.total(String.format("%.0f", totalRev));
+        table.total(String.format("%.0f", totalCost));
+        table.total(String.format("%.0f", totalProfit));
+        table.finish();
     }
 
-    private void addSeasonalTable(Document document) throws DocumentException {
+    private void addSeasonalTable(Document document, InventorySnapshot snapshot) throws DocumentException {
         Font titleFont = new Font(Font.FontFamily.HELVETICA, 11, Font.BOLD);
         Paragraph subtitle = new Paragraph("BAO CAO XU HUONG BAN HANG THEO MUA\n\n", titleFont);
         document.add(subtitle);
 
-        java.util.List<ExportOrder> completedExports = orderRepository.findAllExportOrders()
-                .stream()
-                .filter(o -> o.getStatus() == OrderStatus.COMPLETED)
-                .collect(Collectors.toList());
-
-        if (completedExports.isEmpty()) {
+        Map<String, SalesCube.Measures> seasons = seasonTotals(snapshot.getSales());
+        if (seasons == null) {
             Font warnFont = new Font(Font.FontFamily.HELVETICA, 10, Font.BOLD);
             document.add(new Paragraph("KHONG CO DU LIEU BAN HANG!", warnFont));
             return;
         }
 
-        Map<String, Double> seasonRevenue = new LinkedHashMap<>();
-        Map<String, Integer> seasonOrders = new LinkedHashMap<>();
-        Map<String, Integer> seasonQty = new LinkedHashMap<>();
-
-        seasonRevenue.put("Xuan (1-3)", 0.0);
-        seasonRevenue.put("Ha (4-6)", 0.0);
-        seasonRevenue.put("Thu (7-9)", 0.0);
-        seasonRevenue.put("Dong (10-12)", 0.0);
-        seasonOrders.put("Xuan (1-3)", 0);
-        seasonOrders.put("Ha (4-6)", 0);
-        seasonOrders.put("Thu (7-9)", 0);
-        seasonOrders.put("Dong (10-12)", 0);
-        seasonQty.put("Xuan (1-3)", 0);
-        seasonQty.put("Ha (4-6)", 0);
-        seasonQty.put("Thu (7-9)", 0);
-        seasonQty.put("Dong (10-12)", 0);
-
-        for (ExportOrder order : completedExports) {
-            int month = order.getOrderDate().getMonthValue();
-            String season = getSeason(month);
-
-            seasonRevenue.put(season, seasonRevenue.get(season) + order.getTotalAmount());
-            seasonOrders.put(season, seasonOrders.get(season) + 1);
-
-            int qty = order.getItems().stream().mapToInt(OrderItem::getQuantity).sum();
-            seasonQty.put(season, seasonQty.get(season) + qty);
-        }
-
-        PdfPTable table = new PdfPTable(5);
-        table.setWidthPercentage(100);
-
-        Font headerFont = new Font(Font.FontFamily.HELVETICA, 9, Font.BOLD);
-        String[] headers = {"Mua", "So Don", "So Luong", "Doanh Thu", "Trung Binh/Don"};
-
-        for (String header : headers) {
-            PdfPCell cell = new PdfPCell(new Paragraph(header, headerFont));
-            cell.setBackgroundColor(BaseColor.LIGHT_GRAY);
-            cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-            cell.setPadding(4);
-            table.addCell(cell);
-        }
+        PdfTableStream table = new PdfTableStream(document,
+                new String[]{"Mua", "So Don", "So Luong", "Doanh Thu", "Trung Binh/Don"}, null);
 
-        Font dataFont = new Font(Font.FontFamily.HELVETICA, 8);
         double totalRev = 0;
-        int totalOrders = 0, totalQty = 0;
+        long totalOrders = 0, totalQty = 0;
 
-        for (String season : seasonRevenue.keySet()) {
-            double rev = seasonRevenue.get(season);
-            int ord = seasonOrders.get(season);
-            int qty = seasonQty.get(season);
+        for (String season : seasons.keySet()) {
+            double rev = seasons.get(season).getRevenue();
+            long ord = seasons.get(season).getOrders();
+            long qty = seasons.get(season).getUnits();
             double avg = ord > 0 ? rev / ord : 0;
 
             totalRev += rev;
             totalOrders += ord;
             totalQty += qty;
 
-            table.addCell(new PdfPCell(new Paragraph(season, dataFont)));
-
-            PdfPCell ordCell = new PdfPCell(new Paragraph(String.valueOf(ord), dataFont));
-            ordCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-            table.addCell(ordCell);
-
-            PdfPCell qtyCell = new PdfPCell(new Paragraph(String.valueOf(qty), dataFont));
-            qtyCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-            table.addCell(qtyCell);
-
-            PdfPCell revCell = new PdfPCell(new Paragraph(String.format("%.0f", rev), dataFont));
-            revCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-            table.addCell(revCell);
-
-            PdfPCell avgCell = new PdfPCell(new Paragraph(String.format("%.0f", avg), dataFont));
-            avgCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-            table.addCell(avgCell);
+            table.text(season);
+            table.number(String.valueOf(ord));
+            table.number(String.valueOf(qty));
+            table.number(String.format("%.0f", rev));
+            table.number(String.format("%.0f", avg));
         }
 
-        Font totalFont = new Font(Font.FontFamily.HELVETICA, 9, Font.BOLD);
-        PdfPCell totalLabel = new PdfPCell(new Paragraph("TONG CONG", totalFont));
-        totalLabel.setBackgroundColor(BaseColor.LIGHT_GRAY);
-        totalLabel.setPadding(4);
-        table.addCell(totalLabel);
-
-        PdfPCell totalOrdCell = new PdfPCell(new Paragraph(String.valueOf(totalOrders), totalFont));
-        totalOrdCell.setBackgroundColor(BaseColor.LIGHT_GRAY);
-        totalOrdCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-        totalOrdCell.setPadding(4);
-        table.addCell(totalOrdCell);
-
-        PdfPCell totalQtyCell = new PdfPCell(new Paragraph(String.valueOf(totalQty), totalFont));
-        totalQtyCell.setBackgroundColor(BaseColor.LIGHT_GRAY);
-        totalQtyCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-        totalQtyCell.setPadding(4);
-        table.addCell(totalQtyCell);
-
-        PdfPCell totalRevCell = new PdfPCell(new Paragraph(String.format("%.0f", totalRev), totalFont));
-        totalRevCell.setBackgroundColor(BaseColor.LIGHT_GRAY);
-        totalRevCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-        totalRevCell.setPadding(4);
-        table.addCell(totalRevCell);
-
-        PdfPCell totalAvgCell = new PdfPCell(new Paragraph(
-                String.format("%.0f", totalOrders > 0 ? totalRev / totalOrders : 0), totalFont));
-        totalAvgCell.setBackgroundColor(BaseColor.LIGHT_GRAY);
-        totalAvgCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-        totalAvgCell.setPadding(4);
-        table.addCell(totalAvgCell);
-
-        document.add(table);
+        table.total("TONG CONG", 1, Element.ALIGN_LEFT);
+        table.total(String.valueOf(totalOrders));
+        table.total(String.valueOf(totalQty));
+        table.total(String.format("%.0f", totalRev));
+        table.total(String.format("%.0f", totalOrders > 0 ? totalRev / totalOrders : 0));
+        table.finish();
     }
 
     /**
@@ -804,49 +674,48 @@ public class ReportService implements Reportable {
 
     @Override
     public java.util.List<String> getTopSellingProducts(int topN) {
-        Map<String, Integer> salesCount = new HashMap<>();
-        Map<String, String> productNames = new HashMap<>();
-
-        java.util.List<ExportOrder> exports = orderRepository.findAllExportOrders()
-                .stream()
-                .filter(o -> o.getStatus() == OrderStatus.COMPLETED)
-                .collect(Collectors.toList());
-
-        for (ExportOrder order : exports) {
-            for (OrderItem item : order.getItems()) {
-                String productId = item.getProduct().getId();
-                String productName = item.getProduct().getName();
+        return topSelling(snapshots.snapshot(), topN);
+    }
 
-                salesCount.put(productId,
-                        salesCount.getOrDefault(productId, 0) + item.getQuantity());
-                productNames.put(productId, productName);
-            }
-        }
+    private java.util.List<String> topSelling(InventorySnapshot snapshot, int topN) {
+        // So luong da ban duoc cap nhat san theo tung don hoan tat; chi lay top N bang heap
+        BestSellers bestSellers = snapshot.getBestSellers();
 
-        return salesCount.entrySet().stream()
-                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
-                .limit(topN)
+        return bestSellers.top(topN).stream()
                 .map(entry -> String.format("%s - %s: %,d san pham",
                         entry.getKey(),
-                        productNames.get(entry.getKey()),
+                        productName(snapshot, bestSellers, entry.getKey()),
                         entry.getValue()))
                 .collect(Collectors.toList());
     }
 
+    // Ten hien tai trong danh muc; san pham da bi xoa thi dung ten luc ban gan nhat
+    private static String productName(InventorySnapshot snapshot, BestSellers bestSellers, String productId) {
+        Product product = snapshot.findProduct(productId);
+        return product != null ? product.getName() : bestSellers.getProductName(productId);
+    }
+
     public String generateTopSellingReport(int topN) {
-        StringBuilder report = new StringBuilder();
+        return render(report -> generateTopSellingReport(topN, report));
+    }
+
+    public void generateTopSellingReport(int topN, Appendable report) throws IOException {
+        InventorySnapshot snapshot = snapshots.snapshot();
+        cache.write(snapshot.getVersion(), "top-selling|" + topN, report,
+                out -> writeTopSellingReport(snapshot, topN, out));
+    }
+
+    private void writeTopSellingReport(InventorySnapshot snapshot, int topN, Appendable report) throws IOException {
         report.append("\n╔════════════════════════════════════════════════════════════════════════════════╗\n");
         report.append(String.format("║                    TOP %d SAN PHAM BAN CHAY NHAT                              ║\n", topN));
         report.append("╚════════════════════════════════════════════════════════════════════════════════╝\n\n");
 
-        java.util.List<String> topProducts = getTopSellingProducts(topN);
+        java.util.List<String> topProducts = topSelling(snapshot, topN);
 
         int rank = 1;
         for (String product : topProducts) {
             report.append(String.format("%d. %s\n", rank++, product));
         }
-
-        return report.toString();
     }
 }
 
@@ -0,0 +1,162 @@
+package service;
+
+import domain.ExportOrder;
+import domain.OrderItem;
+import domain.OrderStatus;
+import domain.Product;
+import exception.OutOfStockException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sổ đặt trước hàng cho đơn xuất.
+ * Mỗi sản phẩm có: tồn kho thực tế (on-hand, nằm trong Product), số lượng đã đặt trước
+ * (reserved) và số lượng khả dụng = on-hand - reserved.
+ * Đơn xuất đặt trước khi tạo, trừ tồn kho thật khi xác nhận (commit), trả lại khi hủy (release).
+ * Số lượng đặt trước được cộng dồn theo sản phẩm nên kiểm tra khả dụng là O(1) mỗi item,
+ * không phải duyệt lại các đơn đang chờ.
+ */
+public class ReservationLedger {
+    private final Map<String, AtomicInteger> reservedByProduct; // productId -> số lượng đã đặt
+    private final Map<String, List<OrderItem>> reservedByOrder; // orderId -> các item đã đặt
+
+    public ReservationLedger() {
+        this.reservedByProduct = new ConcurrentHashMap<>();
+        this.reservedByOrder = new ConcurrentHashMap<>();
+    }
+
+    public int getReserved(String productId) {
+        AtomicInteger reserved = reservedByProduct.get(productId);
+        return reserved != null ? reserved.get() : 0;
+    }
+
+    /**
+     * Số lượng còn có thể đặt = tồn kho thực tế - đã đặt trước
+     */
+    public int getAvailable(Product product) {
+        return product.getStockQuantity() - getReserved(product.getId());
+    }
+
+    public boolean isReserved(String orderId) {
+        return reservedByOrder.containsKey(orderId);
+    }
+
+    /**
+     * Đặt trước toàn bộ item của đơn hoặc không đặt gì (không đủ hàng thì hoàn lại phần đã đặt)
+     * @throws OutOfStockException nếu 1 item không đủ hàng khả dụng
+     */
+    public void reserve(String orderId, List<OrderItem> items) throws OutOfStockException {
+        if (isReserved(orderId)) {
+            return;
+        }
+
+        for (int i = 0; i < items.size(); i++) {
+            OrderItem item = items.get(i);
+            Product product = item.getProduct();
+            if (!tryReserve(product, item.getQuantity())) {
+                for (int j = i - 1; j >= 0; j--) {
+                    unreserve(items.get(j).getProduct().getId(), items.get(j).getQuantity());
+                }
+                throw new OutOfStockException(
+                        product.getId(),
+                        product.getName(),
+                        item.getQuantity(),
+                        getAvailable(product)
+                );
+            }
+        }
+        reservedByOrder.put(orderId, new ArrayList<>(items));
+    }
+
+    // Tăng số đặt trước nếu còn đủ hàng khả dụng (compare-and-set)
+    private boolean tryReserve(Product product, int quantity) {
+        AtomicInteger reserved = reservedByProduct.computeIfAbsent(product.getId(), id -> new AtomicInteger());
+        while (true) {
+            int current = reserved.get();
+            if (product.getStockQuantity() - current < quantity) {
+                return false;
+            }
+            if (reserved.compareAndSet(current, current + quantity)) {
+                return true;
+            }
+        }
+    }
+
+    private void unreserve(String productId, int quantity) {
+        AtomicInteger reserved = reservedByProduct.get(productId);
+        if (reserved != null) {
+            reserved.addAndGet(-quantity);
+        }
+    }
+
+    /**
+     * Xác nhận đơn: trừ tồn kho thực tế rồi bỏ phần đặt trước.
+     * Tồn kho bị trừ trước nên số khả dụng không bao giờ bị tính dư trong lúc chuyển.
+     * @throws OutOfStockException nếu tồn kho thực tế đã bị giảm (ngoài sổ) xuống dưới số đã đặt;
+     *         khi đó đơn vẫn giữ phần đặt trước
+     */
+    public void commit(String orderId) throws OutOfStockException {
+        List<OrderItem> items = reservedByOrder.get(orderId);
+        if (items == null) {
+            return;
+        }
+
+        for (int i = 0; i < items.size(); i++) {
+            OrderItem item = items.get(i);
+            Product product = item.getProduct();
+            if (!product.tryDecreaseStock(item.getQuantity())) {
+                for (int j = i - 1; j >= 0; j--) {
+                    items.get(j).getProduct().increaseStock(items.get(j).getQuantity());
+                }
+                throw new OutOfStockException(
+                        product.getId(),
+                        product.getName(),
+                        item.getQuantity(),
+                        product.getStockQuantity()
+                );
+            }
+        }
+
+        reservedByOrder.remove(orderId);
+        for (OrderItem item : items) {
+            unreserve(item.getProduct().getId(), item.getQuantity());
+        }
+    }
+
+    /**
+     * Trả lại phần đặt trước của đơn (khi hủy)
+     */
+    public void release(String orderId) {
+        List<OrderItem> items = reservedByOrder.remove(orderId);
+        if (items == null) {
+            return;
+        }
+        for (OrderItem item : items) {
+            unreserve(item.getProduct().getId(), item.getQuantity());
+        }
+    }
+
+    /**
+     * Dựng lại sổ từ các đơn xuất chưa hoàn tất (sau khi load dữ liệu).
+     * Không kiểm tra khả dụng: các đơn này đã được hứa giao từ trước.
+     */
+    public void rebuild(Collection<ExportOrder> orders) {
+        reservedByProduct.clear();
+        reservedByOrder.clear();
+        for (ExportOrder order : orders) {
+            if (order.getStatus() != OrderStatus.PENDING && order.getStatus() != OrderStatus.PROCESSING) {
+                continue;
+            }
+            for (OrderItem item : order.getItems()) {
+                reservedByProduct.computeIfAbsent(item.getProduct().getId(), id -> new AtomicInteger())
+                        .addAndGet(item.getQuantity());
+            }
+            reservedByOrder.put(order.getId(), new ArrayList<>(order.getItems()));
+        }
+    }
+}
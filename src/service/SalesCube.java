@@ -0,0 +1,274 @@
+package service;
+
+import domain.CustomerType;
+import domain.ExportOrder;
+import domain.OrderItem;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Khối dữ liệu bán hàng tổng hợp sẵn (sales cube) của các đơn xuất đã hoàn tất, bất biến và
+ * đi kèm mỗi InventorySnapshot.
+ * Chiều: ngày (epoch day) x loại sản phẩm x loại khách hàng; mỗi chiều có thêm giá trị "tất cả"
+ * (null) được tổng hợp sẵn. Số đo: doanh thu, giá vốn, số lượng, số đơn.
+ * Ở ô "tất cả loại sản phẩm", doanh thu là tổng tiền của đơn và mỗi đơn đếm 1 lần; ở ô theo
+ * loại sản phẩm, doanh thu là tổng tiền các dòng hàng thuộc loại đó và số đơn là số đơn có
+ * dòng hàng loại đó. Báo cáo theo kỳ/theo mùa chỉ đọc các ô trong khoảng ngày, không duyệt
+ * lại lịch sử đơn hàng.
+ * Các ngày nằm trong PersistentTreeMap dùng chung với phiên bản trước, kèm bảng cộng dồn theo
+ * tháng trong năm (tối đa 12 tháng) để byMonth() không phải duyệt mọi ngày.
+ */
+public final class SalesCube {
+    public static final SalesCube EMPTY = new SalesCube(PersistentTreeMap.empty(), Collections.emptyMap(), 0);
+
+    private static final String ALL = "*";
+
+    // epoch day -> (loại sản phẩm/loại khách) -> số đo; các map không bị sửa sau khi tạo
+    private final PersistentTreeMap<Long, Map<String, Measures>> days;
+    // tháng (1-12) -> (loại sản phẩm/loại khách) -> tổng số đo của mọi ngày trong tháng đó
+    private final Map<Integer, Map<String, Measures>> months;
+    private final int cellCount;
+
+    private SalesCube(PersistentTreeMap<Long, Map<String, Measures>> days,
+                      Map<Integer, Map<String, Measures>> months, int cellCount) {
+        this.days = days;
+        this.months = months;
+        this.cellCount = cellCount;
+    }
+
+    /**
+     * Tổng doanh số trong [from, to] của tất cả loại sản phẩm và khách hàng
+     */
+    public Measures query(LocalDate from, LocalDate to) {
+        return query(from, to, null, null);
+    }
+
+    /**
+     * Tổng doanh số trong [from, to]
+     * @param productType loại sản phẩm, null = tất cả
+     * @param customerType loại khách hàng, null = tất cả
+     */
+    public Measures query(LocalDate from, LocalDate to, String productType, CustomerType customerType) {
+        Measures[] total = {Measures.ZERO};
+        String key = key(productType, customerType);
+        days.forEachInRange(from.toEpochDay(), to.toEpochDay(), (day, cells) -> {
+            Measures measures = cells.get(key);
+            if (measures != null) {
+                total[0] = total[0].plus(measures);
+            }
+        });
+        return total[0];
+    }
+
+    /**
+     * Tổng doanh số theo tháng trong năm (1-12) trên toàn bộ lịch sử, đọc từ bảng cộng dồn theo tháng
+     * @param productType loại sản phẩm, null = tất cả
+     * @param customerType loại khách hàng, null = tất cả
+     */
+    public Map<Integer, Measures> byMonth(String productType, CustomerType customerType) {
+        String key = key(productType, customerType);
+        Map<Integer, Measures> result = new TreeMap<>();
+        for (Map.Entry<Integer, Map<String, Measures>> month : months.entrySet()) {
+            Measures measures = month.getValue().get(key);
+            if (measures != null) {
+                result.put(month.getKey(), measures);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Số ô (theo ngày) đang có dữ liệu
+     */
+    public int cellCount() {
+        return cellCount;
+    }
+
+    /**
+     * Phiên bản kế tiếp: trừ phần đóng góp của các đơn không còn hoàn tất (hoặc đã sửa)
+     * và cộng phần của các đơn mới hoàn tất. Chỉ sao chép ô của các ngày và tháng bị ảnh hưởng;
+     * các ngày khác dùng chung cây với phiên bản trước (O(số ngày bị ảnh hưởng x log số ngày)).
+     */
+    SalesCube apply(Iterable<Contribution> removed, Iterable<Contribution> added) {
+        Map<Long, Map<String, Measures>> editedDays = new HashMap<>();
+        Map<Integer, Map<String, Measures>> editedMonths = new HashMap<>();
+
+        for (Contribution contribution : removed) {
+            subtract(editable(editedDays, contribution.epochDay, days::get), contribution.cells);
+            subtract(editable(editedMonths, monthOf(contribution.epochDay), months::get), contribution.cells);
+        }
+        for (Contribution contribution : added) {
+            add(editable(editedDays, contribution.epochDay, days::get), contribution.cells);
+            add(editable(editedMonths, monthOf(contribution.epochDay), months::get), contribution.cells);
+        }
+
+        PersistentTreeMap<Long, Map<String, Measures>> nextDays = days;
+        int nextCellCount = cellCount;
+        for (Map.Entry<Long, Map<String, Measures>> day : editedDays.entrySet()) {
+            Map<String, Measures> previous = days.get(day.getKey());
+            nextCellCount += day.getValue().size() - (previous != null ? previous.size() : 0);
+            nextDays = day.getValue().isEmpty()
+                    ? nextDays.minus(day.getKey())
+                    : nextDays.plus(day.getKey(), Collections.unmodifiableMap(day.getValue()));
+        }
+
+        Map<Integer, Map<String, Measures>> nextMonths = new HashMap<>(months);
+        for (Map.Entry<Integer, Map<String, Measures>> month : editedMonths.entrySet()) {
+            if (month.getValue().isEmpty()) {
+                nextMonths.remove(month.getKey());
+            } else {
+                nextMonths.put(month.getKey(), Collections.unmodifiableMap(month.getValue()));
+            }
+        }
+        return new SalesCube(nextDays, Collections.unmodifiableMap(nextMonths), nextCellCount);
+    }
+
+    // Bản sao sửa được của các ô tại key, tạo 1 lần cho mỗi key trong 1 lần apply()
+    private static <K> Map<String, Measures> editable(Map<K, Map<String, Measures>> edited, K key,
+                                                      Function<K, Map<String, Measures>> previous) {
+        return edited.computeIfAbsent(key, k -> {
+            Map<String, Measures> cells = previous.apply(k);
+            return cells != null ? new HashMap<>(cells) : new HashMap<>();
+        });
+    }
+
+    private static void subtract(Map<String, Measures> cells, Map<String, Measures> contribution) {
+        for (Map.Entry<String, Measures> cell : contribution.entrySet()) {
+            Measures remaining = cells.get(cell.getKey()).minus(cell.getValue());
+            if (remaining.orders == 0) {
+                cells.remove(cell.getKey());
+            } else {
+                cells.put(cell.getKey(), remaining);
+            }
+        }
+    }
+
+    private static void add(Map<String, Measures> cells, Map<String, Measures> contribution) {
+        for (Map.Entry<String, Measures> cell : contribution.entrySet()) {
+            cells.merge(cell.getKey(), cell.getValue(), Measures::plus);
+        }
+    }
+
+    private static int monthOf(long epochDay) {
+        return LocalDate.ofEpochDay(epochDay).getMonthValue();
+    }
+
+    private static String key(String productType, CustomerType customerType) {
+        return (productType != null ? productType : ALL) + "/" + (customerType != null ? customerType.name() : ALL);
+    }
+
+    /**
+     * Phần đóng góp của 1 đơn xuất hoàn tất vào các ô (giá vốn và loại khách lấy theo lúc xác nhận đơn)
+     */
+    static Contribution contributionOf(ExportOrder order) {
+        CustomerType customerType = order.getCustomerType();
+
+        // Gộp các dòng hàng theo loại sản phẩm
+        Map<String, Measures> byProductType = new LinkedHashMap<>();
+        Map<String, Integer> unitsByProduct = new HashMap<>();
+        Map<String, String> productNames = new HashMap<>();
+        long units = 0;
+        BigDecimal cost = BigDecimal.ZERO;
+        for (OrderItem item : order.getItems()) {
+            BigDecimal itemCost = new BigDecimal(item.getUnitCost())
+                    .multiply(BigDecimal.valueOf(item.getQuantity()));
+            Measures line = new Measures(0, item.getQuantity(), new BigDecimal(item.getSubtotal()), itemCost);
+            byProductType.merge(item.getProduct().getProductType(), line, Measures::plus);
+            unitsByProduct.merge(item.getProduct().getId(), item.getQuantity(), Integer::sum);
+            productNames.put(item.getProduct().getId(), item.getProduct().getName());
+            units += item.getQuantity();
+            cost = cost.add(itemCost);
+        }
+
+        Map<String, Measures> cells = new HashMap<>();
+        Measures whole = new Measures(1, units, new BigDecimal(order.getTotalAmount()), cost);
+        cells.put(key(null, null), whole);
+        if (customerType != null) {
+            cells.put(key(null, customerType), whole);
+        }
+        for (Map.Entry<String, Measures> entry : byProductType.entrySet()) {
+            Measures perType = entry.getValue().withOrders(1);
+            cells.put(key(entry.getKey(), null), perType);
+            if (customerType != null) {
+                cells.put(key(entry.getKey(), customerType), perType);
+            }
+        }
+        return new Contribution(order.getOrderDate().toEpochDay(), cells, unitsByProduct, productNames);
+    }
+
+    /**
+     * Các ô (và số lượng bán theo sản phẩm) mà 1 đơn đã cộng vào, giữ lại để trừ chính xác
+     * khi đơn bị hủy/sửa
+     */
+    static final class Contribution {
+        private final long epochDay;
+        private final Map<String, Measures> cells;
+        private final Map<String, Integer> unitsByProduct;
+        private final Map<String, String> productNames;
+
+        private Contribution(long epochDay, Map<String, Measures> cells,
+                             Map<String, Integer> unitsByProduct, Map<String, String> productNames) {
+            this.epochDay = epochDay;
+            this.cells = cells;
+            this.unitsByProduct = unitsByProduct;
+            this.productNames = productNames;
+        }
+
+        Map<String, Integer> unitsByProduct() {
+            return unitsByProduct;
+        }
+
+        Map<String, String> productNames() {
+            return productNames;
+        }
+    }
+
+    /**
+     * Số đo của 1 ô (hoặc tổng nhiều ô). Tiền cộng dồn bằng BigDecimal để cộng/trừ nhiều lần
+     * không bị sai số tích lũy.
+     */
+    public static final class Measures {
+        public static final Measures ZERO = new Measures(0, 0, BigDecimal.ZERO, BigDecimal.ZERO);
+
+        private final long orders;
+        private final long units;
+        private final BigDecimal revenue;
+        private final BigDecimal cost;
+
+        private Measures(long orders, long units, BigDecimal revenue, BigDecimal cost) {
+            this.orders = orders;
+            this.units = units;
+            this.revenue = revenue;
+            this.cost = cost;
+        }
+
+        Measures plus(Measures other) {
+            return new Measures(orders + other.orders, units + other.units,
+                    revenue.add(other.revenue), cost.add(other.cost));
+        }
+
+        Measures minus(Measures other) {
+            return new Measures(orders - other.orders, units - other.units,
+                    revenue.subtract(other.revenue), cost.subtract(other.cost));
+        }
+
+        private Measures withOrders(long orders) {
+            return new Measures(orders, units, revenue, cost);
+        }
+
+        // Số đơn
+        public long getOrders() { return orders; }
+        // Số lượng sản phẩm đã bán
+        public long getUnits() { return units; }
+        public double getRevenue() { return revenue.doubleValue(); }
+        public double getCost() { return cost.doubleValue(); }
+        public double getProfit() { return revenue.subtract(cost).doubleValue(); }
+    }
+}
@@ -0,0 +1,151 @@
+package service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Map ID -> entity bất biến của 1 snapshot, giữ thứ tự thêm vào như repository
+ * (sửa giữ nguyên vị trí, xóa rồi thêm lại thì xuống cuối).
+ * Dựng trên PersistentTreeMap nên put()/remove() tốn O(log n) và phiên bản mới dùng chung
+ * phần không đổi với phiên bản trước. Nếu có dateOf, map giữ thêm chỉ mục theo
+ * (ngày, thứ tự thêm vào) được cập nhật cùng lúc, nên truy vấn theo khoảng ngày không phải sắp xếp lại.
+ * @param <V> kiểu entity
+ */
+final class SnapshotMap<V> {
+    private static final Comparator<DateKey> BY_DATE = Comparator
+            .comparing((DateKey key) -> key.date)
+            .thenComparingLong(key -> key.sequence);
+
+    private final PersistentTreeMap<String, Entry<V>> byId;
+    private final PersistentTreeMap<Long, Entry<V>> bySequence;
+    private final PersistentTreeMap<DateKey, V> byDate; // null nếu không đánh chỉ mục theo ngày
+    private final Function<V, LocalDate> dateOf;
+    private final long nextSequence;
+
+    private SnapshotMap(PersistentTreeMap<String, Entry<V>> byId, PersistentTreeMap<Long, Entry<V>> bySequence,
+                        PersistentTreeMap<DateKey, V> byDate, Function<V, LocalDate> dateOf, long nextSequence) {
+        this.byId = byId;
+        this.bySequence = bySequence;
+        this.byDate = byDate;
+        this.dateOf = dateOf;
+        this.nextSequence = nextSequence;
+    }
+
+    static <V> SnapshotMap<V> empty() {
+        return new SnapshotMap<>(PersistentTreeMap.empty(), PersistentTreeMap.empty(), null, null, 0);
+    }
+
+    /**
+     * Map rỗng có chỉ mục theo ngày lấy từ dateOf
+     */
+    static <V> SnapshotMap<V> empty(Function<V, LocalDate> dateOf) {
+        return new SnapshotMap<>(PersistentTreeMap.empty(), PersistentTreeMap.empty(),
+                PersistentTreeMap.empty(BY_DATE), dateOf, 0);
+    }
+
+    /**
+     * Map rỗng cùng kiểu chỉ mục với map này
+     */
+    SnapshotMap<V> cleared() {
+        return dateOf != null ? empty(dateOf) : empty();
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    V get(String id) {
+        Entry<V> entry = byId.get(id);
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * Map mới có entity của id; id đã có thì giữ vị trí cũ, id mới thì xếp cuối
+     */
+    SnapshotMap<V> put(String id, V value) {
+        Entry<V> old = byId.get(id);
+        long sequence = old != null ? old.sequence : nextSequence;
+        Entry<V> entry = new Entry<>(id, sequence, value);
+        PersistentTreeMap<DateKey, V> dates = byDate;
+        if (dates != null) {
+            if (old != null) {
+                dates = dates.minus(new DateKey(dateOf.apply(old.value), sequence));
+            }
+            dates = dates.plus(new DateKey(dateOf.apply(value), sequence), value);
+        }
+        return new SnapshotMap<>(byId.plus(id, entry), bySequence.plus(sequence, entry), dates, dateOf,
+                old != null ? nextSequence : nextSequence + 1);
+    }
+
+    /**
+     * Map mới không còn id (trả về chính map này nếu không có id)
+     */
+    SnapshotMap<V> remove(String id) {
+        Entry<V> old = byId.get(id);
+        if (old == null) {
+            return this;
+        }
+        PersistentTreeMap<DateKey, V> dates = byDate;
+        if (dates != null) {
+            dates = dates.minus(new DateKey(dateOf.apply(old.value), old.sequence));
+        }
+        return new SnapshotMap<>(byId.minus(id), bySequence.minus(old.sequence), dates, dateOf, nextSequence);
+    }
+
+    /**
+     * Các ID theo thứ tự thêm vào
+     */
+    List<String> ids() {
+        List<String> ids = new ArrayList<>(size());
+        bySequence.forEach((sequence, entry) -> ids.add(entry.id));
+        return ids;
+    }
+
+    /**
+     * Các entity theo thứ tự thêm vào
+     */
+    List<V> values() {
+        List<V> values = new ArrayList<>(size());
+        bySequence.forEach((sequence, entry) -> values.add(entry.value));
+        return values;
+    }
+
+    /**
+     * Các entity có ngày trong [from, to], sắp theo ngày (cùng ngày giữ thứ tự thêm vào):
+     * O(log n + số kết quả). Chỉ dùng được với map tạo bằng empty(dateOf).
+     */
+    List<V> between(LocalDate from, LocalDate to) {
+        if (byDate == null) {
+            throw new IllegalStateException("Map không có chỉ mục theo ngày");
+        }
+        List<V> result = new ArrayList<>();
+        byDate.forEachInRange(new DateKey(from, Long.MIN_VALUE), new DateKey(to, Long.MAX_VALUE),
+                (key, value) -> result.add(value));
+        return result;
+    }
+
+    private static final class Entry<V> {
+        final String id;
+        final long sequence;
+        final V value;
+
+        Entry(String id, long sequence, V value) {
+            this.id = id;
+            this.sequence = sequence;
+            this.value = value;
+        }
+    }
+
+    private static final class DateKey {
+        final LocalDate date;
+        final long sequence;
+
+        DateKey(LocalDate date, long sequence) {
+            this.date = date;
+            this.sequence = sequence;
+        }
+    }
+}
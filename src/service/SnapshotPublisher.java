@@ -0,0 +1,280 @@
+package service;
+
+import domain.ExportOrder;
+import domain.ImportOrder;
+import domain.OrderStatus;
+import domain.Product;
+import repository.IndexedStore;
+import repository.OrderRepository;
+import repository.ProductRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Phát hành các InventorySnapshot có đánh số phiên bản (copy-on-write).
+ * - Repository báo các ID vừa thêm/sửa/xóa qua listener.
+ * - publish() chụp bản sao của riêng các entity đã đổi (O(số thay đổi)), trong lúc
+ *   chặn ngắn các thao tác ghi đang mở bằng beginWrite(), nên không chụp giữa 1 lần xác nhận.
+ * - current() gộp các bản sao đã chụp vào snapshot trước để tạo snapshot mới, chỉ khi có
+ *   người đọc; báo cáo giữ snapshot đó suốt quá trình chạy, không khóa ai. Các map của
+ *   snapshot dùng chung cấu trúc (SnapshotMap) nên mỗi phiên bản tốn O(số thay đổi x log n),
+ *   kể cả chỉ mục theo ngày của đơn hàng.
+ * - Tổng tồn kho theo loại, khối doanh số và số lượng đã bán theo sản phẩm đi kèm snapshot
+ *   cũng được cập nhật tăng dần theo đúng các entity đã đổi.
+ */
+public class SnapshotPublisher {
+    private final ProductRepository productRepository;
+    private final OrderRepository orderRepository;
+    // Thao tác ghi giữ khóa đọc (nhiều luồng ghi song song), publish() giữ khóa ghi
+    private final ReentrantReadWriteLock gate = new ReentrantReadWriteLock();
+
+    private final Tracker<Product> productChanges = new Tracker<>(Product::getId);
+    private final Tracker<ImportOrder> importChanges = new Tracker<>(ImportOrder::getId);
+    private final Tracker<ExportOrder> exportChanges = new Tracker<>(ExportOrder::getId);
+
+    // Phần đóng góp vào khối doanh số của từng đơn xuất hoàn tất (chỉ truy cập trong current())
+    private final Map<String, SalesCube.Contribution> salesContributions = new HashMap<>();
+
+    private long publishedVersion;
+    private InventorySnapshot current;
+
+    public SnapshotPublisher(ProductRepository productRepository, OrderRepository orderRepository) {
+        this.productRepository = productRepository;
+        this.orderRepository = orderRepository;
+        this.current = new InventorySnapshot(0, SnapshotMap.empty(),
+                SnapshotMap.empty(ImportOrder::getOrderDate), SnapshotMap.empty(ExportOrder::getOrderDate),
+                InventoryTotals.EMPTY, SalesCube.EMPTY, BestSellers.EMPTY);
+
+        productRepository.addChangeListener(productChanges);
+        orderRepository.addImportOrderListener(importChanges);
+        orderRepository.addExportOrderListener(exportChanges);
+        publish();
+    }
+
+    /**
+     * Mở 1 thao tác ghi (vd: xác nhận đơn); publish() chờ các thao tác đang mở xong
+     * để không chụp dữ liệu dở dang. Luôn kết thúc bằng endWrite() trong finally.
+     */
+    public void beginWrite() {
+        gate.readLock().lock();
+    }
+
+    /**
+     * Kết thúc thao tác ghi đã mở bằng beginWrite()
+     */
+    public void endWrite() {
+        gate.readLock().unlock();
+    }
+
+    /**
+     * Chụp các thay đổi kể từ lần phát hành trước thành 1 phiên bản mới
+     */
+    public synchronized void publish() {
+        boolean changed;
+        gate.writeLock().lock();
+        try {
+            changed = productChanges.capture(productRepository::findById, Product::copy)
+                    | importChanges.capture(orderRepository::findImportOrderById, ImportOrder::copy)
+                    | exportChanges.capture(orderRepository::findExportOrderById, ExportOrder::copy);
+        } finally {
+            gate.writeLock().unlock();
+        }
+        if (changed) {
+            publishedVersion++;
+        }
+    }
+
+    /**
+     * Snapshot của phiên bản đã phát hành gần nhất
+     */
+    public synchronized InventorySnapshot current() {
+        if (current.getVersion() != publishedVersion) {
+            // Tổng theo loại: chỉ cập nhật phần của các sản phẩm đã đổi
+            boolean reset = productChanges.isReset();
+            List<String> changedProducts = productChanges.capturedIds();
+            SnapshotMap<Product> products = productChanges.apply(current.productMap());
+            InventoryTotals totals = reset
+                    ? InventoryTotals.of(products.values())
+                    : current.getTotals().update(changedProducts, current.productMap()::get, products::get);
+
+            // Khối doanh số và số lượng đã bán: chỉ trừ/cộng phần của các đơn xuất đã đổi
+            boolean exportsReset = exportChanges.isReset();
+            List<String> changedExports = exportChanges.capturedIds();
+            SnapshotMap<ExportOrder> exports = exportChanges.apply(current.exportOrderMap());
+            SalesCube sales = current.getSales();
+            BestSellers bestSellers = current.getBestSellers();
+            if (exportsReset) {
+                salesContributions.clear();
+                sales = SalesCube.EMPTY;
+                bestSellers = BestSellers.EMPTY;
+            }
+            List<SalesCube.Contribution> removed = new ArrayList<>();
+            List<SalesCube.Contribution> added = new ArrayList<>();
+            collectSales(exportsReset ? exports.ids() : changedExports, exports, removed, added);
+            if (!removed.isEmpty() || !added.isEmpty()) {
+                sales = sales.apply(removed, added);
+                bestSellers = bestSellers.apply(removed, added);
+            }
+
+            current = new InventorySnapshot(publishedVersion,
+                    products,
+                    importChanges.apply(current.importOrderMap()),
+                    exports,
+                    totals,
+                    sales,
+                    bestSellers);
+        }
+        return current;
+    }
+
+    /**
+     * Gom phần đóng góp cũ (removed) và mới (added) của các đơn xuất đã đổi; chỉ đơn
+     * hoàn tất mới được tính vào doanh số
+     */
+    private void collectSales(Collection<String> changedIds, SnapshotMap<ExportOrder> exports,
+                              List<SalesCube.Contribution> removed, List<SalesCube.Contribution> added) {
+        for (String id : changedIds) {
+            SalesCube.Contribution old = salesContributions.remove(id);
+            if (old != null) {
+                removed.add(old);
+            }
+            ExportOrder order = exports.get(id);
+            if (order != null && order.getStatus() == OrderStatus.COMPLETED) {
+                SalesCube.Contribution contribution = SalesCube.contributionOf(order);
+                salesContributions.put(id, contribution);
+                added.add(contribution);
+            }
+        }
+    }
+
+    /**
+     * Phát hành các thay đổi chưa chụp rồi trả về snapshot mới nhất (dùng khi bắt đầu báo cáo)
+     */
+    public InventorySnapshot snapshot() {
+        publish();
+        return current();
+    }
+
+    /**
+     * Ghi nhận ID đã đổi (theo thứ tự) và giữ các bản sao đã chụp chưa gộp vào snapshot
+     */
+    private static final class Tracker<T> implements IndexedStore.SecondaryIndex<T> {
+        private final Function<T, String> idExtractor;
+        private final Set<String> changedIds = new LinkedHashSet<>();
+        private final Set<String> removedIds = new HashSet<>();
+        private boolean cleared;
+
+        // Đã chụp, chờ gộp (chỉ truy cập khi giữ khóa của SnapshotPublisher)
+        private final Map<String, T> captured = new LinkedHashMap<>();
+        private final Set<String> capturedRemovals = new HashSet<>();
+        private boolean capturedReset;
+
+        Tracker(Function<T, String> idExtractor) {
+            this.idExtractor = idExtractor;
+        }
+
+        @Override
+        public synchronized void put(T entity) {
+            changedIds.add(idExtractor.apply(entity));
+        }
+
+        @Override
+        public synchronized void remove(String id) {
+            changedIds.add(id);
+            removedIds.add(id);
+        }
+
+        @Override
+        public synchronized void clear() {
+            changedIds.clear();
+            removedIds.clear();
+            cleared = true;
+        }
+
+        /**
+         * Sao chép trạng thái hiện tại của các entity đã đổi
+         * @return true nếu có thay đổi
+         */
+        boolean capture(Function<String, T> lookup, UnaryOperator<T> copy) {
+            List<String> ids;
+            Set<String> removed;
+            // Lấy danh sách ID rồi mới tra cứu repository (ngoài khóa của tracker, vì repository
+            // gọi put()/remove() khi đang giữ khóa của nó)
+            synchronized (this) {
+                if (changedIds.isEmpty() && !cleared) {
+                    return false;
+                }
+                if (cleared) {
+                    captured.clear();
+                    capturedRemovals.clear();
+                    capturedReset = true;
+                    cleared = false;
+                }
+                ids = new ArrayList<>(changedIds);
+                removed = new HashSet<>(removedIds);
+                changedIds.clear();
+                removedIds.clear();
+            }
+
+            for (String id : ids) {
+                if (removed.contains(id)) {
+                    // Xóa rồi thêm lại thì entity chuyển xuống cuối như trong repository
+                    captured.remove(id);
+                    capturedRemovals.add(id);
+                }
+                T entity = lookup.apply(id);
+                if (entity != null) {
+                    captured.put(id, copy.apply(entity));
+                } else {
+                    captured.remove(id);
+                }
+            }
+            return true;
+        }
+
+        boolean isReset() {
+            return capturedReset;
+        }
+
+        // ID các entity đã chụp (thêm/sửa/xóa) chờ gộp, gọi trước apply()
+        List<String> capturedIds() {
+            List<String> ids = new ArrayList<>(capturedRemovals);
+            for (String id : captured.keySet()) {
+                if (!capturedRemovals.contains(id)) {
+                    ids.add(id);
+                }
+            }
+            return ids;
+        }
+
+        /**
+         * Tạo map mới = map của snapshot trước + các bản sao đã chụp; dùng chung phần không
+         * đổi với map trước nên chỉ tốn O(số bản sao x log n)
+         */
+        SnapshotMap<T> apply(SnapshotMap<T> previous) {
+            SnapshotMap<T> next = capturedReset ? previous.cleared() : previous;
+            for (String id : capturedRemovals) {
+                next = next.remove(id);
+            }
+            for (Map.Entry<String, T> entry : captured.entrySet()) {
+                next = next.put(entry.getKey(), entry.getValue());
+            }
+
+            captured.clear();
+            capturedRemovals.clear();
+            capturedReset = false;
+            return next;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package service;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Khóa phân dải (lock striping) theo khóa chuỗi, vd: ID sản phẩm.
+ * Mỗi khóa chuỗi ánh xạ vào 1 trong N khóa; các thao tác trên những khóa chuỗi khác dải
+ * chạy song song được. Khi cần nhiều khóa cùng lúc, các dải luôn được khóa theo thứ tự
+ * chỉ số tăng dần nên không thể xảy ra deadlock giữa các luồng.
+ */
+public class StripedLock {
+    private final ReentrantLock[] stripes;
+
+    /**
+     * @param minStripes số dải tối thiểu (làm tròn lên lũy thừa của 2)
+     */
+    public StripedLock(int minStripes) {
+        int size = Integer.highestOneBit(Math.max(1, minStripes - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Khóa dải của 1 khóa chuỗi
+     */
+    public Held lock(String key) {
+        return lockStripes(new int[]{stripeOf(key)});
+    }
+
+    /**
+     * Khóa tất cả các dải của các khóa chuỗi, theo thứ tự chỉ số dải tăng dần
+     */
+    public Held lockAll(Collection<String> keys) {
+        int[] indexes = new int[keys.size()];
+        int count = 0;
+        for (String key : keys) {
+            indexes[count++] = stripeOf(key);
+        }
+        Arrays.sort(indexes);
+
+        // Bỏ trùng: nhiều khóa chuỗi có thể cùng dải
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || indexes[i] != indexes[distinct - 1]) {
+                indexes[distinct++] = indexes[i];
+            }
+        }
+        return lockStripes(Arrays.copyOf(indexes, distinct));
+    }
+
+    private Held lockStripes(int[] indexes) {
+        int locked = 0;
+        try {
+            for (int index : indexes) {
+                stripes[index].lock();
+                locked++;
+            }
+        } catch (RuntimeException | Error e) {
+            for (int i = locked - 1; i >= 0; i--) {
+                stripes[indexes[i]].unlock();
+            }
+            throw e;
+        }
+        return new Held(indexes);
+    }
+
+    private int stripeOf(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16); // Trộn bit cao xuống để chuỗi gần giống nhau vẫn tản đều
+        return h & (stripes.length - 1);
+    }
+
+    /**
+     * Các dải đang giữ, mở khóa bằng unlock() trong finally
+     */
+    public final class Held {
+        private final int[] indexes;
+
+        private Held(int[] indexes) {
+            this.indexes = indexes;
+        }
+
+        public void unlock() {
+            for (int i = indexes.length - 1; i >= 0; i--) {
+                stripes[indexes[i]].unlock();
+            }
+        }
+    }
+}
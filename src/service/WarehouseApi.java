@@ -0,0 +1,180 @@
+package service;
+
+import domain.*;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lớp gọi nghiệp vụ kho bằng chương trình (không qua ConsoleMenu).
+ * Mỗi yêu cầu chạy trên 1 luồng riêng: virtual thread nếu JVM hỗ trợ (Java 21+), nếu không thì
+ * luồng daemon trong cached thread pool. Nhiều client/tác vụ tích hợp trong cùng JVM có thể
+ * gọi song song; WarehouseService tự khóa theo đơn/sản phẩm nên các yêu cầu không cần xếp hàng.
+ * Kết quả trả về dạng CompletableFuture; lỗi nghiệp vụ (vd: OutOfStockException) được giữ
+ * nguyên làm nguyên nhân khi future thất bại.
+ */
+public class WarehouseApi implements AutoCloseable {
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+    private final WarehouseService warehouseService;
+    private final ReportService reportService;
+    private final ExecutorService executor;
+
+    public WarehouseApi(WarehouseService warehouseService, ReportService reportService) {
+        this.warehouseService = warehouseService;
+        this.reportService = reportService;
+        this.executor = newRequestExecutor();
+    }
+
+    /**
+     * Executor 1 luồng cho mỗi yêu cầu: dùng Executors.newVirtualThreadPerTaskExecutor()
+     * (gọi qua reflection để vẫn chạy được trên JDK cũ hơn 21)
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "warehouse-api");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Chạy 1 yêu cầu bất kỳ trên luồng của API
+     */
+    public <T> CompletableFuture<T> submit(Request<T> request) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                result.complete(request.execute(warehouseService, reportService));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    // ========== ĐƠN HÀNG ==========
+
+    public CompletableFuture<ImportOrder> createImportOrder(String supplierId, String warehouseLocation,
+                                                            List<OrderItem> items) {
+        return submit((warehouse, reports) -> warehouse.createImportOrder(supplierId, warehouseLocation, items));
+    }
+
+    public CompletableFuture<ExportOrder> createExportOrder(String customerId, String deliveryAddress,
+                                                            List<OrderItem> items) {
+        return submit((warehouse, reports) -> warehouse.createExportOrder(customerId, deliveryAddress, items));
+    }
+
+    public CompletableFuture<Void> confirmImport(String orderId) {
+        return submit((warehouse, reports) -> {
+            warehouse.confirmImport(orderId);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> confirmExport(String orderId) {
+        return submit((warehouse, reports) -> {
+            warehouse.confirmExport(orderId);
+            return null;
+        });
+    }
+
+    public CompletableFuture<List<ConfirmationResult>> confirmImports(Collection<String> orderIds) {
+        return submit((warehouse, reports) -> warehouse.confirmImports(orderIds));
+    }
+
+    public CompletableFuture<List<ConfirmationResult>> confirmExports(Collection<String> orderIds) {
+        return submit((warehouse, reports) -> warehouse.confirmExports(orderIds));
+    }
+
+    /**
+     * @param orderType "IMPORT" hoặc "EXPORT"
+     */
+    public CompletableFuture<Void> cancelOrder(String orderId, String orderType) {
+        return submit((warehouse, reports) -> {
+            warehouse.cancelOrder(orderId, orderType);
+            return null;
+        });
+    }
+
+    // ========== TRA CỨU ==========
+
+    public CompletableFuture<Product> findProduct(String productId) {
+        return submit((warehouse, reports) -> warehouse.getProductRepository().findById(productId));
+    }
+
+    public CompletableFuture<List<Product>> searchProducts(String criteria) {
+        return submit((warehouse, reports) -> warehouse.getProductRepository().search(criteria));
+    }
+
+    public CompletableFuture<ImportOrder> findImportOrder(String orderId) {
+        return submit((warehouse, reports) -> warehouse.getOrderRepository().findImportOrderById(orderId));
+    }
+
+    public CompletableFuture<ExportOrder> findExportOrder(String orderId) {
+        return submit((warehouse, reports) -> warehouse.getOrderRepository().findExportOrderById(orderId));
+    }
+
+    /**
+     * Số lượng còn có thể xuất (tồn kho trừ phần đã đặt trước), -1 nếu không có sản phẩm
+     */
+    public CompletableFuture<Integer> getAvailableStock(String productId) {
+        return submit((warehouse, reports) -> {
+            Product product = warehouse.getProductRepository().findById(productId);
+            return product != null ? warehouse.getReservations().getAvailable(product) : -1;
+        });
+    }
+
+    // ========== BÁO CÁO ==========
+
+    public CompletableFuture<String> inventoryReport() {
+        return submit((warehouse, reports) -> reports.generateInventoryReport());
+    }
+
+    public CompletableFuture<String> importExportReport(LocalDate fromDate, LocalDate toDate) {
+        return submit((warehouse, reports) -> reports.generateImportExportReport(fromDate, toDate));
+    }
+
+    public CompletableFuture<String> revenueReport(LocalDate fromDate, LocalDate toDate) {
+        return submit((warehouse, reports) -> reports.generateRevenueReport(fromDate, toDate));
+    }
+
+    public CompletableFuture<List<String>> topSellingProducts(int topN) {
+        return submit((warehouse, reports) -> reports.getTopSellingProducts(topN));
+    }
+
+    /**
+     * Không nhận yêu cầu mới, chờ các yêu cầu đang chạy xong (tối đa 30 giây);
+     * quá hạn hoặc bị ngắt khi đang chờ thì ngắt các yêu cầu còn chạy
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 1 yêu cầu nghiệp vụ, có thể ném exception nghiệp vụ hoặc IOException
+     */
+    public interface Request<T> {
+        T execute(WarehouseService warehouse, ReportService reports) throws Exception;
+    }
+}
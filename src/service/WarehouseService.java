@@ -6,25 +6,119 @@ import repository.*;
 
 import java.io.IOException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
- * Service xử lý logic nghiệp vụ nhập/xuất kho
+ * Service xử lý logic nghiệp vụ nhập/xuất kho.
+ * An toàn khi nhiều quầy (luồng) dùng chung 1 instance: thao tác trên cùng 1 đơn được
+ * khóa theo ID đơn. Tồn kho là ô nguyên tử (CAS) nên nhập kho và đặt trước đơn 1 sản phẩm
+ * không cần khóa sản phẩm; đặt trước đơn nhiều sản phẩm khóa phân dải theo ID sản phẩm.
+ * Đơn xuất giữ hàng trong sổ đặt trước từ lúc tạo, trừ tồn kho thật khi xác nhận
+ * và trả lại khi hủy. Việc lưu file đi qua GroupCommitWriter: nhiều quầy xác nhận cùng lúc
+ * được gộp thành 1 lần ghi + fsync. Mỗi thao tác ghi mở 1 phiên trong SnapshotPublisher
+ * và phát hành snapshot mới sau khi lưu, để báo cáo không thấy đơn xác nhận dở dang.
+ * Mọi biến động tồn kho (nhập, xuất, điều chỉnh tay, hủy đơn xuất) được ghi thành sự kiện
+ * trong StockLedger; tồn kho lúc khởi động được chiếu lại từ sổ cái (restoreStock()).
+ * Thứ tự khóa luôn là: đơn hàng trước, sau đó các dải sản phẩm theo thứ tự tăng dần.
  */
 public class WarehouseService {
+    private static final int LOCK_STRIPES = Runtime.getRuntime().availableProcessors() * 16;
+
     private ProductRepository productRepository;
     private OrderRepository orderRepository;
     private CustomerRepository customerRepository;
     private SupplierRepository supplierRepository;
+    private final StripedLock orderLocks = new StripedLock(LOCK_STRIPES);
+    private final StripedLock productLocks = new StripedLock(LOCK_STRIPES);
+    private final ReservationLedger reservations = new ReservationLedger();
+    private final GroupCommitWriter commitWriter;
+    private final SnapshotPublisher snapshots;
+    private final StockLedger stockLedger;
 
+    /**
+     * Service dùng riêng snapshot, sổ cái (data/stock.ledger cạnh file sản phẩm) và writer ghi gộp
+     * của nó; người tạo phải đóng writer (getCommitWriter().close()) khi không dùng nữa
+     */
     public WarehouseService(ProductRepository productRepository,
                             OrderRepository orderRepository,
                             CustomerRepository customerRepository,
                             SupplierRepository supplierRepository) {
+        this(productRepository, orderRepository, customerRepository, supplierRepository,
+                new SnapshotPublisher(productRepository, orderRepository),
+                StockLedger.besides(productRepository.getFilePath()));
+    }
+
+    private WarehouseService(ProductRepository productRepository,
+                             OrderRepository orderRepository,
+                             CustomerRepository customerRepository,
+                             SupplierRepository supplierRepository,
+                             SnapshotPublisher snapshots,
+                             StockLedger stockLedger) {
+        this(productRepository, orderRepository, customerRepository, supplierRepository, snapshots,
+                stockLedger, new GroupCommitWriter(stockLedger, productRepository, orderRepository));
+    }
+
+    /**
+     * @param snapshots nơi phát hành snapshot cho báo cáo (dùng chung với ReportService)
+     * @param stockLedger sổ cái tồn kho
+     * @param commitWriter writer ghi gộp dùng chung, lưu stockLedger trước (ghi trước - write-ahead)
+     *                     rồi productRepository và orderRepository; người tạo sở hữu và đóng nó
+     */
+    public WarehouseService(ProductRepository productRepository,
+                            OrderRepository orderRepository,
+                            CustomerRepository customerRepository,
+                            SupplierRepository supplierRepository,
+                            SnapshotPublisher snapshots,
+                            StockLedger stockLedger,
+                            GroupCommitWriter commitWriter) {
         this.productRepository = productRepository;
         this.orderRepository = orderRepository;
         this.customerRepository = customerRepository;
         this.supplierRepository = supplierRepository;
+        this.stockLedger = stockLedger;
+        this.commitWriter = commitWriter;
+        this.snapshots = snapshots;
+        rebuildReservations();
+    }
+
+    /**
+     * Chiếu lại tồn kho từ sổ cái (checkpoint + phần đuôi) và ghi đè vào sản phẩm.
+     * Gọi 1 lần sau khi load dữ liệu, trước rebuildReservations() và trước mọi thao tác ghi
+     * (sổ cái phải được đọc lại để số thứ tự sự kiện mới nối tiếp file đang có).
+     * Sản phẩm chưa có trong sổ cái được lấy tồn kho hiện tại làm mốc.
+     */
+    public void restoreStock() throws IOException {
+        snapshots.beginWrite();
+        try {
+            stockLedger.save();
+            stockLedger.load();
+            for (Product product : stockLedger.project(productRepository.findAll())) {
+                try {
+                    productRepository.update(product);
+                } catch (ProductNotFoundException e) {
+                    // Sản phẩm vừa bị xóa - bỏ qua
+                }
+            }
+        } finally {
+            snapshots.endWrite();
+        }
+
+        commitWriter.commit();
+        snapshots.publish();
+    }
+
+    /**
+     * Dựng lại sổ đặt trước từ các đơn xuất chưa hoàn tất (gọi lại sau khi load dữ liệu)
+     */
+    public void rebuildReservations() {
+        reservations.rebuild(orderRepository.findAllExportOrders());
     }
 
     /**
@@ -74,6 +168,66 @@ public class WarehouseService {
      * @param orderId ID đơn nhập
      */
     public void confirmImport(String orderId) throws OrderNotFoundException, IOException {
+        ImportOrder order;
+        StripedLock.Held orderLock = orderLocks.lock(orderId);
+        snapshots.beginWrite();
+        try {
+            order = findUnconfirmedImport(orderId);
+            applyImports(List.of(order));
+        } finally {
+            snapshots.endWrite();
+            orderLock.unlock();
+        }
+
+        // Lưu changes (ngoài khóa để các đơn khác không phải chờ ghi file)
+        commitWriter.commit();
+        snapshots.publish();
+
+        System.out.println("✅ Đã nhập kho thành công đơn: " + orderId);
+        System.out.println("   Tổng giá trị: " + String.format("%,.0f", order.getTotalAmount()) + " VNĐ");
+    }
+
+    /**
+     * Xác nhận nhiều đơn nhập cùng lúc: tồn kho được cộng gộp theo sản phẩm (mỗi sản phẩm
+     * cập nhật 1 lần) và chỉ lưu file 1 lần cho cả lô.
+     * Đơn lỗi (không tồn tại, đã xác nhận) được ghi vào kết quả, không làm dừng cả lô.
+     * @param orderIds ID các đơn nhập
+     * @return kết quả của từng đơn theo thứ tự truyền vào
+     */
+    public List<ConfirmationResult> confirmImports(Collection<String> orderIds) throws IOException {
+        List<ConfirmationResult> results = new ArrayList<>();
+        List<ImportOrder> confirmed = new ArrayList<>();
+
+        StripedLock.Held orderLock = orderLocks.lockAll(orderIds);
+        snapshots.beginWrite();
+        try {
+            Set<String> seen = new HashSet<>();
+            for (String orderId : orderIds) {
+                try {
+                    ImportOrder order = findUnconfirmedImport(orderId);
+                    if (!seen.add(orderId)) {
+                        throw new IllegalStateException("Đơn hàng đã được xác nhận trước đó");
+                    }
+                    confirmed.add(order);
+                    results.add(ConfirmationResult.confirmed(orderId));
+                } catch (OrderNotFoundException | IllegalStateException e) {
+                    results.add(ConfirmationResult.failed(orderId, e.getMessage()));
+                }
+            }
+            applyImports(confirmed);
+        } finally {
+            snapshots.endWrite();
+            orderLock.unlock();
+        }
+
+        if (!confirmed.isEmpty()) {
+            commitWriter.commit();
+            snapshots.publish();
+        }
+        return results;
+    }
+
+    private ImportOrder findUnconfirmedImport(String orderId) throws OrderNotFoundException {
         ImportOrder order = orderRepository.findImportOrderById(orderId);
         if (order == null) {
             throw new OrderNotFoundException(orderId, "IMPORT");
@@ -82,11 +236,35 @@ public class WarehouseService {
         if (order.getStatus() == OrderStatus.COMPLETED) {
             throw new IllegalStateException("Đơn hàng đã được xác nhận trước đó");
         }
+        return order;
+    }
 
-        // Cập nhật tồn kho cho từng sản phẩm
-        for (OrderItem item : order.getItems()) {
-            Product product = item.getProduct();
-            product.increaseStock(item.getQuantity());
+    /**
+     * Cộng tồn kho của các đơn nhập (gộp số lượng theo sản phẩm trước) và đổi trạng thái đơn.
+     * Gọi khi đang giữ khóa của các đơn.
+     */
+    private void applyImports(List<ImportOrder> orders) {
+        Map<String, Product> products = new LinkedHashMap<>();
+        Map<String, Integer> deltas = new HashMap<>();
+        for (ImportOrder order : orders) {
+            for (OrderItem item : order.getItems()) {
+                Product product = item.getProduct();
+                products.putIfAbsent(product.getId(), product);
+                deltas.merge(product.getId(), item.getQuantity(), Integer::sum);
+            }
+        }
+
+        // Mỗi dòng hàng là 1 sự kiện nhập trong sổ cái
+        for (ImportOrder order : orders) {
+            for (OrderItem item : order.getItems()) {
+                stockLedger.record(item.getProduct().getId(), StockLedger.Reason.IMPORT,
+                        item.getQuantity(), order.getId());
+            }
+        }
+
+        // Cập nhật tồn kho cho từng sản phẩm (cộng nguyên tử, không cần khóa sản phẩm)
+        for (Product product : products.values()) {
+            product.increaseStock(deltas.get(product.getId()));
 
             try {
                 productRepository.update(product);
@@ -97,14 +275,10 @@ public class WarehouseService {
         }
 
         // Đổi trạng thái order
-        order.setStatus(OrderStatus.COMPLETED);
-
-        // Lưu changes
-        productRepository.save();
-        orderRepository.save();
-
-        System.out.println("✅ Đã nhập kho thành công đơn: " + orderId);
-        System.out.println("   Tổng giá trị: " + String.format("%,.0f", order.getTotalAmount()) + " VNĐ");
+        for (ImportOrder order : orders) {
+            order.setStatus(OrderStatus.COMPLETED);
+            orderRepository.updateImportOrder(order);
+        }
     }
 
     /**
@@ -124,7 +298,7 @@ public class WarehouseService {
             throw new Exception("Không tìm thấy khách hàng với ID: " + customerId);
         }
 
-        // Validate items và kiểm tra tồn kho
+        // Validate items
         if (items == null || items.isEmpty()) {
             throw new InvalidQuantityException("Đơn xuất hàng phải có ít nhất 1 sản phẩm");
         }
@@ -133,17 +307,6 @@ public class WarehouseService {
             if (item.getQuantity() <= 0) {
                 throw InvalidQuantityException.negative(item.getQuantity());
             }
-
-            // Kiểm tra tồn kho
-            Product product = item.getProduct();
-            if (!product.hasEnoughStock(item.getQuantity())) {
-                throw new OutOfStockException(
-                        product.getId(),
-                        product.getName(),
-                        item.getQuantity(),
-                        product.getStockQuantity()
-                );
-            }
         }
 
         // Tạo đơn xuất
@@ -154,6 +317,9 @@ public class WarehouseService {
             order.addItem(item);
         }
 
+        // Đặt trước hàng (kiểm tra theo số lượng khả dụng, không đủ thì không tạo đơn)
+        reserve(order);
+
         // Lưu order
         orderRepository.addExportOrder(order);
 
@@ -167,6 +333,62 @@ public class WarehouseService {
     public void confirmExport(String orderId)
             throws OrderNotFoundException, OutOfStockException, IOException, ProductNotFoundException {
 
+        ExportOrder order;
+        StripedLock.Held orderLock = orderLocks.lock(orderId);
+        snapshots.beginWrite();
+        try {
+            order = findUnconfirmedExport(orderId);
+            applyExport(order);
+        } finally {
+            snapshots.endWrite();
+            orderLock.unlock();
+        }
+
+        // Lưu changes (ngoài khóa để các đơn khác không phải chờ ghi file)
+        commitWriter.commit();
+        snapshots.publish();
+
+        System.out.println("✅ Đã xuất kho thành công đơn: " + orderId);
+        System.out.println("   Tổng giá trị: " + String.format("%,.0f", order.getTotalAmount()) + " VNĐ");
+    }
+
+    /**
+     * Xác nhận nhiều đơn xuất cùng lúc và chỉ lưu file 1 lần cho cả lô.
+     * Mỗi đơn vẫn trừ tồn kho theo kiểu tất cả hoặc không (qua sổ đặt trước); đơn lỗi
+     * (không tồn tại, đã xác nhận, không đủ hàng) được ghi vào kết quả, không làm dừng cả lô.
+     * @param orderIds ID các đơn xuất
+     * @return kết quả của từng đơn theo thứ tự truyền vào
+     */
+    public List<ConfirmationResult> confirmExports(Collection<String> orderIds) throws IOException {
+        List<ConfirmationResult> results = new ArrayList<>();
+        boolean changed = false;
+
+        StripedLock.Held orderLock = orderLocks.lockAll(orderIds);
+        snapshots.beginWrite();
+        try {
+            for (String orderId : orderIds) {
+                try {
+                    applyExport(findUnconfirmedExport(orderId));
+                    changed = true;
+                    results.add(ConfirmationResult.confirmed(orderId));
+                } catch (OrderNotFoundException | OutOfStockException | ProductNotFoundException
+                         | IllegalStateException e) {
+                    results.add(ConfirmationResult.failed(orderId, e.getMessage()));
+                }
+            }
+        } finally {
+            snapshots.endWrite();
+            orderLock.unlock();
+        }
+
+        if (changed) {
+            commitWriter.commit();
+            snapshots.publish();
+        }
+        return results;
+    }
+
+    private ExportOrder findUnconfirmedExport(String orderId) throws OrderNotFoundException {
         ExportOrder order = orderRepository.findExportOrderById(orderId);
         if (order == null) {
             throw new OrderNotFoundException(orderId, "EXPORT");
@@ -175,36 +397,36 @@ public class WarehouseService {
         if (order.getStatus() == OrderStatus.COMPLETED) {
             throw new IllegalStateException("Đơn hàng đã được xác nhận trước đó");
         }
+        return order;
+    }
 
-        // Kiểm tra lại tồn kho (phòng trường hợp thay đổi)
+    /**
+     * Trừ tồn kho của đơn xuất và đổi trạng thái đơn. Gọi khi đang giữ khóa của đơn.
+     */
+    private void applyExport(ExportOrder order) throws OutOfStockException, ProductNotFoundException {
+        // Kiểm tra mọi sản phẩm trước khi trừ tồn kho: update() lỗi sau commit() sẽ để lại đơn
+        // chưa xác nhận nhưng tồn kho (trong bộ nhớ và sổ cái) đã bị trừ
         for (OrderItem item : order.getItems()) {
-            Product product = item.getProduct();
-            if (!product.hasEnoughStock(item.getQuantity())) {
-                throw new OutOfStockException(
-                        product.getId(),
-                        product.getName(),
-                        item.getQuantity(),
-                        product.getStockQuantity()
-                );
+            String productId = item.getProduct().getId();
+            if (productRepository.findById(productId) == null) {
+                throw new ProductNotFoundException(productId, "ID");
             }
         }
 
-        // Trừ tồn kho cho từng sản phẩm
+        // Đơn chưa giữ hàng (vd: đã bị hủy trước đó) thì đặt trước lại,
+        // sau đó trừ tồn kho thật và bỏ phần đặt trước
+        reserve(order);
+        reservations.commit(order.getId());
         for (OrderItem item : order.getItems()) {
-            Product product = item.getProduct();
-            product.decreaseStock(item.getQuantity());
-            productRepository.update(product);
+            stockLedger.record(item.getProduct().getId(), StockLedger.Reason.EXPORT,
+                    -item.getQuantity(), order.getId());
+            productRepository.update(item.getProduct());
         }
 
-        // Đổi trạng thái order
+        // Đổi trạng thái order, giữ lại giá vốn và loại khách lúc xác nhận
+        order.captureConfirmationValues();
         order.setStatus(OrderStatus.COMPLETED);
-
-        // Lưu changes
-        productRepository.save();
-        orderRepository.save();
-
-        System.out.println("✅ Đã xuất kho thành công đơn: " + orderId);
-        System.out.println("   Tổng giá trị: " + String.format("%,.0f", order.getTotalAmount()) + " VNĐ");
+        orderRepository.updateExportOrder(order);
     }
 
     /**
@@ -215,22 +437,134 @@ public class WarehouseService {
     public void cancelOrder(String orderId, String orderType)
             throws OrderNotFoundException, IOException {
 
+        StripedLock.Held orderLock = orderLocks.lock(orderId);
+        snapshots.beginWrite();
+        try {
+            applyCancel(orderId, orderType);
+        } finally {
+            snapshots.endWrite();
+            orderLock.unlock();
+        }
+
+        commitWriter.commit();
+        snapshots.publish();
+        System.out.println("✅ Đã hủy đơn: " + orderId);
+    }
+
+    /**
+     * Hủy đơn (đơn xuất thì trả lại phần đặt trước). Gọi khi đang giữ khóa của đơn.
+     */
+    private void applyCancel(String orderId, String orderType) throws OrderNotFoundException {
         if (orderType.equals("IMPORT")) {
             ImportOrder order = orderRepository.findImportOrderById(orderId);
             if (order == null) {
                 throw new OrderNotFoundException(orderId, "IMPORT");
             }
             order.setStatus(OrderStatus.CANCELLED);
+            orderRepository.updateImportOrder(order);
         } else {
             ExportOrder order = orderRepository.findExportOrderById(orderId);
             if (order == null) {
                 throw new OrderNotFoundException(orderId, "EXPORT");
             }
+            if (reservations.isReserved(orderId)) {
+                for (OrderItem item : order.getItems()) {
+                    stockLedger.record(item.getProduct().getId(), StockLedger.Reason.CANCEL,
+                            item.getQuantity(), orderId);
+                }
+                reservations.release(orderId);
+            }
             order.setStatus(OrderStatus.CANCELLED);
+            orderRepository.updateExportOrder(order);
         }
+    }
 
-        orderRepository.save();
-        System.out.println("✅ Đã hủy đơn: " + orderId);
+    /**
+     * Thực hiện tuần tự 1 lô lệnh (do luồng ghi của OrderPipeline gọi) và chỉ lưu file
+     * 1 lần cho cả lô. Khóa các đơn trong lô 1 lần (không bị tranh chấp khi mọi thao tác
+     * ghi đều đi qua pipeline) để vẫn an toàn nếu có luồng khác gọi trực tiếp service.
+     * @return kết quả của từng lệnh theo thứ tự truyền vào
+     */
+    List<ConfirmationResult> execute(List<OrderCommand> commands) throws IOException {
+        List<String> orderIds = new ArrayList<>();
+        for (OrderCommand command : commands) {
+            orderIds.add(command.getOrderId());
+        }
+
+        List<ConfirmationResult> results = new ArrayList<>();
+        boolean changed = false;
+        StripedLock.Held orderLock = orderLocks.lockAll(orderIds);
+        snapshots.beginWrite();
+        try {
+            for (OrderCommand command : commands) {
+                String orderId = command.getOrderId();
+                try {
+                    switch (command.getType()) {
+                        case CONFIRM_IMPORT:
+                            applyImports(List.of(findUnconfirmedImport(orderId)));
+                            results.add(ConfirmationResult.confirmed(orderId));
+                            break;
+                        case CONFIRM_EXPORT:
+                            applyExport(findUnconfirmedExport(orderId));
+                            results.add(ConfirmationResult.confirmed(orderId));
+                            break;
+                        case CANCEL_IMPORT:
+                            applyCancel(orderId, "IMPORT");
+                            results.add(ConfirmationResult.cancelled(orderId));
+                            break;
+                        default:
+                            applyCancel(orderId, "EXPORT");
+                            results.add(ConfirmationResult.cancelled(orderId));
+                            break;
+                    }
+                    changed = true;
+                } catch (OrderNotFoundException | OutOfStockException | ProductNotFoundException
+                         | IllegalStateException e) {
+                    results.add(ConfirmationResult.failed(orderId, e.getMessage()));
+                }
+            }
+        } finally {
+            snapshots.endWrite();
+            orderLock.unlock();
+        }
+
+        if (changed) {
+            commitWriter.commit();
+            snapshots.publish();
+        }
+        return results;
+    }
+
+    /**
+     * Điều chỉnh tay tồn kho của sản phẩm (vd: sau kiểm kê); chênh lệch so với tồn kho cũ
+     * được ghi thành sự kiện ADJUSTMENT trong sổ cái
+     * @param productId ID sản phẩm
+     * @param quantity tồn kho mới
+     */
+    public void adjustStock(String productId, int quantity)
+            throws ProductNotFoundException, InvalidQuantityException, IOException {
+        if (quantity < 0) {
+            throw InvalidQuantityException.negative(quantity);
+        }
+
+        snapshots.beginWrite();
+        // Giữ dải của sản phẩm như khi đặt trước, để không đặt trước dựa trên tồn kho cũ
+        StripedLock.Held stockLock = productLocks.lock(productId);
+        try {
+            Product product = productRepository.findById(productId);
+            if (product == null) {
+                throw new ProductNotFoundException(productId, "ID");
+            }
+            int previous = product.replaceStock(quantity);
+            stockLedger.record(productId, StockLedger.Reason.ADJUSTMENT, quantity - previous, "");
+            productRepository.update(product);
+        } finally {
+            stockLock.unlock();
+            snapshots.endWrite();
+        }
+
+        commitWriter.commit();
+        snapshots.publish();
     }
 
     /**
@@ -279,11 +613,41 @@ public class WarehouseService {
         return report.toString();
     }
 
+    /**
+     * Đặt trước hàng cho đơn xuất, giữ các dải sản phẩm của đơn: các đơn nhiều sản phẩm không
+     * làm nhau phải hoàn lại, và adjustStock() (cũng giữ dải) không thể đổi tồn kho giữa lúc
+     * kiểm tra khả dụng và lúc cộng số đặt trước. Đơn 1 sản phẩm chỉ giữ 1 dải.
+     */
+    private void reserve(ExportOrder order) throws OutOfStockException {
+        List<OrderItem> items = order.getItems();
+        StripedLock.Held stockLock = items.size() == 1
+                ? productLocks.lock(items.get(0).getProduct().getId())
+                : productLocks.lockAll(productIds(order));
+        try {
+            reservations.reserve(order.getId(), items);
+        } finally {
+            stockLock.unlock();
+        }
+    }
+
+    // ID các sản phẩm trong đơn (để khóa dải tồn kho)
+    private static List<String> productIds(Order order) {
+        List<String> ids = new ArrayList<>();
+        for (OrderItem item : order.getItems()) {
+            ids.add(item.getProduct().getId());
+        }
+        return ids;
+    }
+
     // Getters
     public ProductRepository getProductRepository() { return productRepository; }
     public OrderRepository getOrderRepository() { return orderRepository; }
     public CustomerRepository getCustomerRepository() { return customerRepository; }
     public SupplierRepository getSupplierRepository() { return supplierRepository; }
+    public ReservationLedger getReservations() { return reservations; }
+    public SnapshotPublisher getSnapshots() { return snapshots; }
+    public StockLedger getStockLedger() { return stockLedger; }
+    public GroupCommitWriter getCommitWriter() { return commitWriter; }
 }
 
 
@@ -2,6 +2,7 @@ package ui;
 
 import domain.*;
 import exception.*;
+import interfaces.Reportable;
 import repository.*;
 import service.*;
 
@@ -26,6 +27,7 @@ public class ConsoleMenu {
     private CustomerRepository customerRepository;
     private SupplierRepository supplierRepository;
     private OrderRepository orderRepository;
+    private GroupCommitWriter commitWriter;
 
     private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
@@ -49,26 +51,41 @@ public class ConsoleMenu {
         orderRepository.setCustomerRepository(customerRepository);
         orderRepository.setSupplierRepository(supplierRepository);
         orderRepository.setProductRepository(productRepository);
+
+        // Chế độ nhật ký: mỗi lần lưu chỉ ghi nối phần thay đổi
+        productRepository.setJournalEnabled(true);
+        customerRepository.setJournalEnabled(true);
+        supplierRepository.setJournalEnabled(true);
+        orderRepository.setJournalEnabled(true);
     }
 
     private void initializeServices() {
+        // Báo cáo đọc snapshot do WarehouseService phát hành sau mỗi lần ghi
+        SnapshotPublisher snapshots = new SnapshotPublisher(productRepository, orderRepository);
+        StockLedger stockLedger = StockLedger.besides(productRepository.getFilePath());
+        commitWriter = new GroupCommitWriter(stockLedger, productRepository, orderRepository);
         warehouseService = new WarehouseService(
                 productRepository,
                 orderRepository,
                 customerRepository,
-                supplierRepository
+                supplierRepository,
+                snapshots,
+                stockLedger,
+                commitWriter
         );
-        reportService = new ReportService(productRepository, orderRepository);
+        reportService = new ReportService(snapshots);
     }
 
     private void loadData() {
         try {
             System.out.println("Đang tải dữ liệu...");
-            productRepository.load();
-            customerRepository.load();
-            supplierRepository.load();
-            orderRepository.load();
+            StartupLoader loader = new StartupLoader(productRepository, customerRepository,
+                    supplierRepository, orderRepository);
+            loader.load();
+            warehouseService.restoreStock();
+            warehouseService.rebuildReservations();
             System.out.println("Đã tải dữ liệu thành công!");
+            loader.printTimings();
         } catch (IOException e) {
             System.out.println("Lỗi khi tải dữ liệu: " + e.getMessage());
         }
@@ -86,6 +103,31 @@ public class ConsoleMenu {
         }
     }
 
+    // Gộp nhật ký vào các file CSV (khi thoát chương trình)
+    private void compactData() {
+        try {
+            productRepository.compact();
+            customerRepository.compact();
+            supplierRepository.compact();
+            orderRepository.compact();
+            warehouseService.getStockLedger().checkpoint();
+        } catch (IOException e) {
+            System.out.println("Lỗi khi gộp nhật ký: " + e.getMessage());
+        }
+    }
+
+    // Ghi snapshot nhị phân để lần khởi động sau đọc nhanh hơn (sau khi đã gộp nhật ký)
+    private void saveSnapshots() {
+        try {
+            productRepository.saveSnapshot();
+            customerRepository.saveSnapshot();
+            supplierRepository.saveSnapshot();
+            orderRepository.saveSnapshot();
+        } catch (IOException e) {
+            System.out.println("Lỗi khi ghi snapshot: " + e.getMessage());
+        }
+    }
+
     public void start() {
         System.out.println("\n╔════════════════════════════════════════════════════════════════╗");
         System.out.println("║        HỆ THỐNG QUẢN LÝ KHO XUẤT NHẬP HÀNG                     ║");
@@ -105,7 +147,11 @@ public class ConsoleMenu {
                 case 6: inventoryMenu(); break;
                 case 7: reportMenu(); break;
                 case 8:
+                    // Ghi nốt các lần lưu đang chờ và dừng luồng ghi trước khi lưu toàn bộ
+                    commitWriter.close();
                     saveData();
+                    compactData();
+                    saveSnapshots();
                     System.out.println("\nCảm ơn bạn đã sử dụng hệ thống!");
                     running = false;
                     break;
@@ -273,12 +319,20 @@ public class ConsoleMenu {
         double newSalePrice = getDoubleInput("Giá bán mới (0 để giữ nguyên): ");
         if (newSalePrice > 0) product.setSalePrice(newSalePrice);
 
+        int newStock = getIntInput("Tồn kho mới (-1 để giữ nguyên): ");
+
         try {
             productRepository.update(product);
+            if (newStock >= 0) {
+                // Ghi chênh lệch vào sổ cái tồn kho
+                warehouseService.adjustStock(id, newStock);
+            }
             saveData();
             System.out.println(" Đã cập nhật sản phẩm!");
-        } catch (ProductNotFoundException e) {
+        } catch (ProductNotFoundException | InvalidQuantityException e) {
             System.out.println("NO" + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("Lỗi khi lưu dữ liệu: " + e.getMessage());
         }
     }
 
@@ -450,6 +504,7 @@ public class ConsoleMenu {
         System.out.println("║ 2. Xem phiếu nhập        ║");
         System.out.println("║ 3. Xác nhận nhập kho     ║");
         System.out.println("║ 4. Hủy phiếu nhập        ║");
+        System.out.println("║ 5. Xác nhận hàng loạt    ║");
         System.out.println("║ 0. Quay lại              ║");
         System.out.println("╚══════════════════════════╝");
 
@@ -459,6 +514,7 @@ public class ConsoleMenu {
             case 2: viewImportOrders(); break;
             case 3: confirmImportOrder(); break;
             case 4: cancelImportOrder(); break;
+            case 5: confirmImportOrders(); break;
             case 0: break;
             default: System.out.println("Lựa chọn không hợp lệ!");
         }
@@ -563,6 +619,23 @@ public class ConsoleMenu {
         }
     }
 
+    private void confirmImportOrders() {
+        List<String> orderIds = readOrderIds();
+        if (orderIds.isEmpty()) {
+            for (ImportOrder order : orderRepository.findAllImportOrders()) {
+                if (order.getStatus() == OrderStatus.PENDING) {
+                    orderIds.add(order.getId());
+                }
+            }
+        }
+
+        try {
+            printConfirmationResults(warehouseService.confirmImports(orderIds));
+        } catch (IOException e) {
+            System.out.println("Lỗi: " + e.getMessage());
+        }
+    }
+
     private void cancelImportOrder() {
         System.out.print("\nNhập ID phiếu nhập cần hủy: ");
         String orderId = scanner.nextLine();
@@ -581,6 +654,7 @@ public class ConsoleMenu {
         System.out.println("║ 2. Xem phiếu xuất        ║");
         System.out.println("║ 3. Xác nhận xuất kho     ║");
         System.out.println("║ 4. Hủy phiếu xuất        ║");
+        System.out.println("║ 5. Xác nhận hàng loạt    ║");
         System.out.println("║ 0. Quay lại              ║");
         System.out.println("╚══════════════════════════╝");
 
@@ -590,6 +664,7 @@ public class ConsoleMenu {
             case 2: viewExportOrders(); break;
             case 3: confirmExportOrder(); break;
             case 4: cancelExportOrder(); break;
+            case 5: confirmExportOrders(); break;
             case 0: break;
             default: System.out.println("Lựa chọn không hợp lệ!");
         }
@@ -638,12 +713,13 @@ public class ConsoleMenu {
             }
 
             System.out.println("Sản phẩm: " + product.getName());
-            System.out.println("Tồn kho: " + product.getStockQuantity());
+            int available = warehouseService.getReservations().getAvailable(product);
+            System.out.println("Tồn kho: " + product.getStockQuantity() + " (khả dụng: " + available + ")");
 
             int quantity = getIntInput("Số lượng: ");
 
-            if (quantity > product.getStockQuantity()) {
-                System.out.println("Cảnh báo: Không đủ hàng! Tồn kho chỉ còn: " + product.getStockQuantity());
+            if (quantity > available) {
+                System.out.println("Cảnh báo: Không đủ hàng! Khả dụng chỉ còn: " + available);
                 System.out.print("Vẫn muốn thêm? (y/n): ");
                 String confirm = scanner.nextLine();
                 if (!confirm.equalsIgnoreCase("y")) {
@@ -708,6 +784,46 @@ public class ConsoleMenu {
         }
     }
 
+    private void confirmExportOrders() {
+        List<String> orderIds = readOrderIds();
+        if (orderIds.isEmpty()) {
+            for (ExportOrder order : orderRepository.findAllExportOrders()) {
+                if (order.getStatus() == OrderStatus.PENDING) {
+                    orderIds.add(order.getId());
+                }
+            }
+        }
+
+        try {
+            printConfirmationResults(warehouseService.confirmExports(orderIds));
+        } catch (IOException e) {
+            System.out.println("Lỗi: " + e.getMessage());
+        }
+    }
+
+    // Đọc danh sách ID cách nhau bởi dấu phẩy (để trống = tất cả phiếu đang chờ)
+    private List<String> readOrderIds() {
+        System.out.print("\nNhập các ID phiếu (cách nhau bởi dấu phẩy, để trống = tất cả phiếu đang chờ): ");
+        List<String> orderIds = new ArrayList<>();
+        for (String id : scanner.nextLine().split(",")) {
+            if (!id.trim().isEmpty()) {
+                orderIds.add(id.trim());
+            }
+        }
+        return orderIds;
+    }
+
+    private void printConfirmationResults(List<ConfirmationResult> results) {
+        int confirmed = 0;
+        for (ConfirmationResult result : results) {
+            System.out.println(result);
+            if (result.isSuccess()) {
+                confirmed++;
+            }
+        }
+        System.out.println("\nĐã xác nhận " + confirmed + "/" + results.size() + " phiếu");
+    }
+
     private void cancelExportOrder() {
         System.out.print("\nNhập ID phiếu xuất cần hủy: ");
         String orderId = scanner.nextLine();
@@ -827,8 +943,7 @@ public class ConsoleMenu {
     }
 
     private void showInventoryReport() {
-        String report = reportService.generateInventoryReport();
-        System.out.println(report);
+        printReport(report -> reportService.generateInventoryReport(report));
     }
 
     private void showImportExportReport() {
@@ -843,8 +958,7 @@ public class ConsoleMenu {
             return;
         }
 
-        String report = reportService.generateImportExportReport(fromDate, toDate);
-        System.out.println(report);
+        printReport(report -> reportService.generateImportExportReport(fromDate, toDate, report));
     }
 
     private void showRevenueReport() {
@@ -859,21 +973,31 @@ public class ConsoleMenu {
             return;
         }
 
-        String report = reportService.generateRevenueReport(fromDate, toDate);
-        System.out.println(report);
+        printReport(report -> reportService.generateRevenueReport(fromDate, toDate, report));
     }
 
     private void showTopSellingProducts() {
         int topN = getIntInput("\nTop bao nhiêu sản phẩm (mặc định 5): ");
         if (topN <= 0) topN = 5;
 
-        String report = reportService.generateTopSellingReport(topN);
-        System.out.println(report);
+        int top = topN;
+        printReport(report -> reportService.generateTopSellingReport(top, report));
     }
 
     private void showSeasonalTrend() {
-        String report = reportService.generateSeasonalTrendReport();
-        System.out.println(report);
+        printReport(report -> reportService.generateSeasonalTrendReport(report));
+    }
+
+    /**
+     * In báo cáo thẳng ra console trong lúc tạo, không dựng cả báo cáo thành chuỗi
+     */
+    private void printReport(Reportable.ReportBody body) {
+        try {
+            body.writeTo(System.out);
+            System.out.println();
+        } catch (IOException e) {
+            System.out.println("Lỗi khi in báo cáo: " + e.getMessage());
+        }
     }
 
     private void exportReportToFile() {
@@ -909,8 +1033,8 @@ public class ConsoleMenu {
                     break;
                 case 3:
                     System.out.println("Dang xuat CSV xu huong...");
-                    String report3 = reportService.generateSeasonalTrendReport();
-                    reportService.exportToCSV(report3, "seasonal_trend_" + LocalDate.now() + ".csv");
+                    reportService.exportToCSV(report -> reportService.generateSeasonalTrendReport(report),
+                            "seasonal_trend_" + LocalDate.now() + ".csv");
                     System.out.println("Hoan thanh!");
                     break;
                 case 4:
@@ -0,0 +1,19 @@
+/**
+ * Chạy lần lượt các test (mỗi test là 1 lớp có main, ném AssertionError khi sai).
+ * Chạy từ thư mục gốc dự án vì test chép dữ liệu mẫu từ data/.
+ */
+public class RunTests {
+
+    public static void main(String[] args) throws Exception {
+        domain.ProductStockStressTest.main(args);
+        service.ConfirmExportStressTest.main(args);
+        service.ReservationLedgerStressTest.main(args);
+        service.SnapshotMapTest.main(args);
+        service.SalesSnapshotTest.main(args);
+        repository.GroupCommitWriterTest.main(args);
+        repository.ChangeJournalTest.main(args);
+        repository.StockLedgerTest.main(args);
+
+        System.out.println("Tất cả test đều đạt");
+    }
+}
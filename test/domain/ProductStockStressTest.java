@@ -0,0 +1,85 @@
+package domain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Nhiều luồng cùng gọi tryDecreaseStock() (xen kẽ nhập thêm hàng) trên 1 sản phẩm có tồn kho
+ * nhỏ: tồn kho không bao giờ âm và tồn cuối = tồn đầu + đã nhập - đã lấy.
+ */
+public class ProductStockStressTest {
+    private static final int THREADS = 16;
+    private static final int ATTEMPTS_PER_THREAD = 200_000;
+    private static final int INITIAL_STOCK = 10;
+
+    public static void main(String[] args) throws Exception {
+        Product product = new Electronics("P-TEST", "Stress", "Test", 1, 2, INITIAL_STOCK, 12);
+        AtomicLong taken = new AtomicLong();
+        AtomicLong added = new AtomicLong();
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicBoolean sawNegative = new AtomicBoolean();
+
+        // Luồng theo dõi: đọc tồn kho liên tục trong suốt quá trình chạy
+        Thread watcher = new Thread(() -> {
+            while (!done.get()) {
+                if (product.getStockQuantity() < 0) {
+                    sawNegative.set(true);
+                }
+                Thread.yield();
+            }
+        });
+        watcher.start();
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int quantity = t % 2 + 1;
+            workers.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    // Cứ 3 lần lấy thì nhập lại 1 sản phẩm để tồn kho luôn quanh mức 0
+                    if (i % 4 == 0) {
+                        product.increaseStock(1);
+                        added.incrementAndGet();
+                    } else if (product.tryDecreaseStock(quantity)) {
+                        taken.addAndGet(quantity);
+                    }
+                    if (product.getStockQuantity() < 0) {
+                        sawNegative.set(true);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        pool.shutdown();
+        done.set(true);
+        watcher.join();
+
+        int stock = product.getStockQuantity();
+        check(!sawNegative.get(), "tồn kho bị âm trong lúc chạy");
+        check(stock >= 0, "tồn kho cuối âm: " + stock);
+        check(stock == INITIAL_STOCK + added.get() - taken.get(),
+                "tồn kho không bảo toàn: " + stock + " != " + INITIAL_STOCK + " + " + added + " - " + taken);
+        check(!product.tryDecreaseStock(stock + 1), "trừ được nhiều hơn tồn kho");
+        check(product.getStockQuantity() == stock, "lần trừ thất bại làm đổi tồn kho");
+
+        System.out.println("ProductStockStressTest OK: lấy " + taken + ", nhập " + added + ", còn " + stock);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
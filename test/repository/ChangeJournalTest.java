@@ -0,0 +1,52 @@
+package repository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Ghi lại toàn bộ file CSV (tắt chế độ nhật ký): đánh dấu thêm trong lúc đang ghi không bị xóa
+ * theo, và khi ghi lỗi các đánh dấu đang chờ được trả lại để lần lưu sau ghi tiếp.
+ */
+public class ChangeJournalTest {
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("change-journal-test");
+        try {
+            ChangeJournal journal = new ChangeJournal(dir.resolve("items.csv").toString());
+
+            // Đánh dấu thêm trong lúc ghi phải còn cho lần lưu sau
+            journal.markChanged("A");
+            journal.rewrite(() -> journal.markChanged("B"));
+            check(journal.hasPendingChanges(), "đánh dấu thêm trong lúc ghi bị xóa mất");
+            journal.rewrite(() -> { });
+            check(!journal.hasPendingChanges(), "ghi xong vẫn còn đánh dấu");
+
+            // Ghi lỗi: các đánh dấu đã lấy ra được trả lại
+            journal.markChanged("C");
+            try {
+                journal.rewrite(() -> {
+                    throw new IOException("đĩa đầy");
+                });
+                throw new AssertionError("rewrite() phải ném lại lỗi ghi");
+            } catch (IOException expected) {
+                // đúng
+            }
+            check(journal.hasPendingChanges(), "ghi lỗi nhưng đánh dấu bị xóa mất");
+
+            System.out.println("ChangeJournalTest OK");
+        } finally {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package repository;
+
+import domain.*;
+import service.TestWarehouse;
+
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Nhiều quầy cùng xác nhận nhập ở chế độ nhật ký: số lần ghi + fsync ít hơn số yêu cầu lưu,
+ * mọi xác nhận đã trả về đều nằm trên đĩa, và close() ghi nốt các yêu cầu đang chờ rồi
+ * từ chối yêu cầu mới thay vì để người gọi chờ mãi.
+ */
+public class GroupCommitWriterTest {
+    private static final int THREADS = 8;
+    private static final int ORDERS = 400;
+
+    public static void main(String[] args) throws Exception {
+        PrintStream out = TestWarehouse.silenceStdout();
+        TestWarehouse warehouse = TestWarehouse.copyOfData();
+        try {
+            groupsConcurrentCommits(warehouse, out);
+            closeDrainsAndRejects(warehouse, out);
+        } finally {
+            System.setOut(out);
+            warehouse.delete();
+        }
+    }
+
+    private static void groupsConcurrentCommits(TestWarehouse warehouse, PrintStream out) throws Exception {
+        Supplier supplier = warehouse.suppliers.findAll().get(0);
+        List<Product> products = warehouse.products.findAll();
+        List<String> orderIds = new ArrayList<>();
+        for (int i = 0; i < ORDERS; i++) {
+            ImportOrder order = new ImportOrder(LocalDate.now(), supplier, "Kho test");
+            Product product = products.get(i % products.size());
+            order.addItem(new OrderItem(product, 1, product.getImportPrice()));
+            warehouse.orders.addImportOrder(order);
+            orderIds.add(order.getId());
+        }
+        warehouse.orders.save();
+        long stockBefore = totalStock(warehouse.products);
+        GroupCommitWriter writer = warehouse.commitWriter;
+        long commitsBefore = writer.getCommitCount();
+        long flushesBefore = writer.getFlushCount();
+
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> counters = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            counters.add(pool.submit(() -> {
+                start.await();
+                int i;
+                while ((i = next.getAndIncrement()) < ORDERS) {
+                    warehouse.service.confirmImport(orderIds.get(i));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> counter : counters) {
+            counter.get();
+        }
+        pool.shutdown();
+
+        long commits = writer.getCommitCount() - commitsBefore;
+        long flushes = writer.getFlushCount() - flushesBefore;
+        check(commits == ORDERS, "số yêu cầu lưu " + commits + " != " + ORDERS);
+        check(flushes < commits, "không gộp được lần ghi nào: " + flushes + " lần ghi cho " + commits + " yêu cầu");
+
+        // Đọc lại từ đĩa (nhật ký đã fsync) phải thấy đủ phần nhập của mọi xác nhận đã trả về
+        check(totalStock(warehouse.products) == stockBefore + ORDERS, "tồn kho trong bộ nhớ lệch");
+        check(totalStock(warehouse.reloadProducts()) == stockBefore + ORDERS, "tồn kho trên đĩa lệch");
+
+        out.println("GroupCommitWriterTest: " + commits + " yêu cầu lưu, " + flushes + " lần ghi + fsync");
+    }
+
+    private static void closeDrainsAndRejects(TestWarehouse warehouse, PrintStream out) throws Exception {
+        GroupCommitWriter writer = warehouse.commitWriter;
+        AtomicInteger committed = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> callers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            callers.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < 50; i++) {
+                    try {
+                        writer.commit();
+                        committed.incrementAndGet();
+                    } catch (IllegalStateException e) {
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        // Đóng khi các luồng vẫn đang lưu
+        while (committed.get() < THREADS) {
+            Thread.sleep(1);
+        }
+        writer.close();
+        for (Future<?> caller : callers) {
+            // Yêu cầu xếp hàng trước close() phải được ghi, không được treo
+            caller.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        check(committed.get() + rejected.get() == THREADS * 50, "có yêu cầu lưu không kết thúc");
+        check(rejected.get() > 0, "close() không chặn yêu cầu mới");
+        try {
+            writer.commit();
+            throw new AssertionError("commit() sau close() phải bị từ chối");
+        } catch (IllegalStateException expected) {
+            // đúng
+        }
+        writer.close(); // đóng lần 2 không làm gì
+
+        out.println("GroupCommitWriterTest OK: sau close() ghi " + committed + ", từ chối " + rejected);
+    }
+
+    private static long totalStock(ProductRepository products) {
+        long total = 0;
+        for (Product product : products.findAll()) {
+            total += product.getStockQuantity();
+        }
+        return total;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package repository;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Ghi nhiều lần checkpoint: số file lưu trữ stock.ledger.&lt;số thứ tự&gt; không vượt MAX_ARCHIVES
+ * và sổ cái đọc lại (checkpoint + phần đuôi) cho đúng tồn kho.
+ */
+public class StockLedgerTest {
+    private static final int EVENTS = StockLedger.CHECKPOINT_INTERVAL * 6 + 123;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("stock-ledger-test");
+        try {
+            String path = dir.resolve("stock.ledger").toString();
+            StockLedger ledger = new StockLedger(path);
+            ledger.record("P1", StockLedger.Reason.OPENING, 100, "");
+            ledger.record("P2", StockLedger.Reason.OPENING, 50, "");
+            for (int i = 0; i < EVENTS; i++) {
+                if (i % 2 == 0) {
+                    ledger.record("P1", StockLedger.Reason.IMPORT, 3, "IMP-" + i);
+                } else {
+                    ledger.record("P2", StockLedger.Reason.EXPORT, -1, "EXP-" + i);
+                }
+                ledger.save();
+            }
+            ledger.sync();
+
+            int archives = countArchives(dir);
+            check(archives > 0, "không có checkpoint nào được ghi");
+            check(archives <= StockLedger.MAX_ARCHIVES,
+                    archives + " file lưu trữ, tối đa " + StockLedger.MAX_ARCHIVES);
+            check(ledger.getTailSize() < StockLedger.CHECKPOINT_INTERVAL, "phần đuôi không được checkpoint");
+
+            StockLedger reloaded = new StockLedger(path);
+            reloaded.load();
+            check(reloaded.getStock("P1") == ledger.getStock("P1"), "P1 đọc lại lệch");
+            check(reloaded.getStock("P2") == ledger.getStock("P2"), "P2 đọc lại lệch");
+            check(reloaded.getSequence() == ledger.getSequence(), "số thứ tự đọc lại lệch");
+            check(ledger.getStock("P1") == 100 + 3 * ((EVENTS + 1) / 2), "P1 chiếu sai");
+            check(ledger.getStock("P2") == 50 - EVENTS / 2, "P2 chiếu sai");
+
+            System.out.println("StockLedgerTest OK: " + archives + " file lưu trữ sau "
+                    + ledger.getSequence() + " sự kiện");
+        } finally {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    private static int countArchives(Path dir) throws IOException {
+        int count = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "stock.ledger.*")) {
+            for (Path ignored : files) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package service;
+
+import domain.*;
+import exception.OutOfStockException;
+import exception.ProductNotFoundException;
+
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Nhiều quầy cùng xác nhận xuất các đơn chưa giữ hàng (1 và nhiều sản phẩm) trên vài sản phẩm
+ * có rất ít hàng khả dụng: tồn kho không bao giờ âm, số bị trừ đúng bằng tổng các đơn
+ * xác nhận thành công, không đơn nào thất bại còn giữ hàng và sổ cái khớp tồn kho.
+ * Số khả dụng chỉ kiểm tra sau khi chạy xong: lúc xác nhận, tồn kho bị trừ trước khi bỏ phần
+ * đặt trước nên số khả dụng có thể tạm thời âm.
+ * Sau đó: xác nhận đơn có sản phẩm đã bị xóa khỏi danh mục phải thất bại mà không trừ tồn kho
+ * của các sản phẩm còn lại (trong bộ nhớ lẫn sổ cái).
+ */
+public class ConfirmExportStressTest {
+    private static final int THREADS = 16;
+    private static final int ORDERS = 300;
+    private static final int AVAILABLE = 20;
+
+    public static void main(String[] args) throws Exception {
+        PrintStream out = TestWarehouse.silenceStdout();
+        TestWarehouse warehouse = TestWarehouse.copyOfData();
+        try {
+            run(warehouse, out);
+            missingProductKeepsStock(warehouse, out);
+        } finally {
+            System.setOut(out);
+            warehouse.delete();
+        }
+    }
+
+    private static void run(TestWarehouse warehouse, PrintStream out) throws Exception {
+        WarehouseService service = warehouse.service;
+        ReservationLedger reservations = service.getReservations();
+
+        // 3 sản phẩm, mỗi sản phẩm chỉ còn AVAILABLE khả dụng ngoài phần các đơn cũ đã đặt trước
+        List<Product> hot = warehouse.products.findAll().subList(0, 3);
+        Map<String, Integer> stockBefore = new HashMap<>();
+        Map<String, Integer> reservedBefore = new HashMap<>();
+        for (Product product : hot) {
+            int reserved = reservations.getReserved(product.getId());
+            service.adjustStock(product.getId(), reserved + AVAILABLE);
+            stockBefore.put(product.getId(), product.getStockQuantity());
+            reservedBefore.put(product.getId(), reserved);
+        }
+
+        // Đơn thêm thẳng vào repository nên chưa giữ hàng: xác nhận phải tự đặt trước
+        Customer customer = warehouse.customers.findAll().get(0);
+        Random random = new Random(42);
+        List<ExportOrder> orders = new ArrayList<>();
+        for (int i = 0; i < ORDERS; i++) {
+            ExportOrder order = new ExportOrder(LocalDate.now(), customer, "Stress");
+            Product first = hot.get(random.nextInt(2));
+            order.addItem(new OrderItem(first, 1 + random.nextInt(3), first.getSalePrice()));
+            if (i % 3 == 0) {
+                Product last = hot.get(2);
+                order.addItem(new OrderItem(last, 1 + random.nextInt(2), last.getSalePrice()));
+            }
+            warehouse.orders.addExportOrder(order);
+            orders.add(order);
+        }
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicBoolean sawNegative = new AtomicBoolean();
+        Thread watcher = new Thread(() -> {
+            while (!done.get()) {
+                for (Product product : hot) {
+                    if (product.getStockQuantity() < 0) {
+                        sawNegative.set(true);
+                    }
+                }
+                Thread.yield();
+            }
+        });
+        watcher.start();
+
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> counters = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            counters.add(pool.submit(() -> {
+                start.await();
+                int i;
+                while ((i = next.getAndIncrement()) < ORDERS) {
+                    try {
+                        service.confirmExport(orders.get(i).getId());
+                    } catch (OutOfStockException e) {
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> counter : counters) {
+            counter.get();
+        }
+        pool.shutdown();
+        done.set(true);
+        watcher.join();
+
+        Map<String, Integer> shipped = new HashMap<>();
+        int confirmed = 0;
+        for (ExportOrder order : orders) {
+            if (order.getStatus() != OrderStatus.COMPLETED) {
+                check(!reservations.isReserved(order.getId()), "đơn thất bại vẫn giữ hàng: " + order.getId());
+                continue;
+            }
+            confirmed++;
+            for (OrderItem item : order.getItems()) {
+                shipped.merge(item.getProduct().getId(), item.getQuantity(), Integer::sum);
+            }
+        }
+
+        check(!sawNegative.get(), "tồn kho bị âm trong lúc chạy");
+        check(confirmed + rejected.get() == ORDERS,
+                "số đơn không khớp: " + confirmed + " xác nhận + " + rejected + " từ chối != " + ORDERS);
+        check(confirmed > 0 && rejected.get() > 0, "kịch bản không tạo tranh chấp hết hàng");
+        for (Product product : hot) {
+            String id = product.getId();
+            int stock = product.getStockQuantity();
+            check(stock >= 0, id + ": tồn kho cuối âm " + stock);
+            check(reservations.getAvailable(product) >= 0, id + ": đặt vượt số khả dụng");
+            check(stock == stockBefore.get(id) - shipped.getOrDefault(id, 0),
+                    id + ": tồn kho không bảo toàn " + stock + " != " + stockBefore.get(id)
+                            + " - " + shipped.getOrDefault(id, 0));
+            check(reservations.getReserved(id) == reservedBefore.get(id), id + ": số đặt trước bị lệch");
+            check(service.getStockLedger().getStock(id) == stock, id + ": sổ cái lệch tồn kho");
+        }
+
+        out.println("ConfirmExportStressTest OK: " + confirmed + " đơn xác nhận, " + rejected + " đơn hết hàng");
+    }
+
+    private static void missingProductKeepsStock(TestWarehouse warehouse, PrintStream out) throws Exception {
+        WarehouseService service = warehouse.service;
+        Product kept = warehouse.products.findAll().get(3);
+        service.adjustStock(kept.getId(), service.getReservations().getReserved(kept.getId()) + 10);
+        Product removed = new Electronics("P-GONE", "Removed", "Test", 1, 2, 10, 12);
+        warehouse.products.add(removed);
+
+        ExportOrder order = new ExportOrder(LocalDate.now(), warehouse.customers.findAll().get(0), "Missing");
+        order.addItem(new OrderItem(kept, 2, kept.getSalePrice()));
+        order.addItem(new OrderItem(removed, 1, removed.getSalePrice()));
+        warehouse.orders.addExportOrder(order);
+        warehouse.products.delete(removed.getId());
+
+        int stockBefore = kept.getStockQuantity();
+        int ledgerBefore = service.getStockLedger().getStock(kept.getId());
+        try {
+            service.confirmExport(order.getId());
+            throw new AssertionError("xác nhận đơn có sản phẩm đã xóa phải thất bại");
+        } catch (ProductNotFoundException expected) {
+            // đúng
+        }
+        check(order.getStatus() != OrderStatus.COMPLETED, "đơn lỗi bị đánh dấu hoàn tất");
+        check(kept.getStockQuantity() == stockBefore, "đơn lỗi vẫn trừ tồn kho");
+        check(service.getStockLedger().getStock(kept.getId()) == ledgerBefore, "đơn lỗi vẫn ghi sổ cái");
+
+        out.println("ConfirmExportStressTest OK: đơn có sản phẩm đã xóa không trừ tồn kho");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package service;
+
+import domain.*;
+import repository.StockLedger;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * So sánh xác nhận xuất trực tiếp qua WarehouseService (mỗi quầy tự khóa) với qua OrderPipeline
+ * (1 luồng ghi): vòng kín, mỗi quầy xác nhận đơn kế tiếp ngay khi đơn trước xong, ORDERS đơn
+ * 1 sản phẩm rải trên 4 sản phẩm bán chạy. In số đơn/giây, p50 và p99 độ trễ cho 1, 8, 32 quầy.
+ * Mỗi lượt kiểm tra tồn kho bảo toàn; cuối cùng kiểm tra sổ cái khớp tồn kho.
+ * Không nằm trong RunTests (chạy lâu); chạy riêng:
+ *   java -cp out/test:lib/itextpdf-5.5.13.3.jar service.OrderPipelineBenchmark [số đơn]
+ */
+public class OrderPipelineBenchmark {
+    private static final int[] COUNTERS = {1, 8, 32};
+    private static final int HOT_PRODUCTS = 4;
+
+    public static void main(String[] args) throws Exception {
+        int orders = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        PrintStream out = TestWarehouse.silenceStdout();
+        TestWarehouse warehouse = TestWarehouse.copyOfData();
+        try {
+            run(warehouse, orders, out);
+        } finally {
+            System.setOut(out);
+            warehouse.delete();
+        }
+    }
+
+    private static void run(TestWarehouse warehouse, int orders, PrintStream out) throws Exception {
+        WarehouseService service = warehouse.service;
+        List<Product> hot = warehouse.products.findAll().subList(0, HOT_PRODUCTS);
+        for (Product product : hot) {
+            service.adjustStock(product.getId(), 1_000_000);
+        }
+        String customerId = warehouse.customers.findAll().get(0).getId();
+
+        out.printf("%-8s | %7s | %10s | %8s | %8s%n", "mode", "threads", "ops/s", "p50 ms", "p99 ms");
+        for (int threads : COUNTERS) {
+            for (boolean pipelined : new boolean[]{false, true}) {
+                List<String> orderIds = new ArrayList<>();
+                for (int i = 0; i < orders; i++) {
+                    Product product = hot.get(i % HOT_PRODUCTS);
+                    orderIds.add(service.createExportOrder(customerId, "Benchmark",
+                            List.of(new OrderItem(product, 1, product.getSalePrice()))).getId());
+                }
+                long stockBefore = totalStock(hot);
+
+                OrderPipeline pipeline = pipelined ? new OrderPipeline(service) : null;
+                long[] latencies = new long[orders];
+                AtomicInteger next = new AtomicInteger();
+                AtomicInteger confirmed = new AtomicInteger();
+                ExecutorService pool = Executors.newFixedThreadPool(threads);
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> counters = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    counters.add(pool.submit(() -> {
+                        start.await();
+                        int i;
+                        while ((i = next.getAndIncrement()) < orders) {
+                            long begin = System.nanoTime();
+                            if (pipeline == null) {
+                                service.confirmExport(orderIds.get(i));
+                                confirmed.incrementAndGet();
+                            } else if (pipeline.confirmExport(orderIds.get(i)).join().isSuccess()) {
+                                confirmed.incrementAndGet();
+                            }
+                            latencies[i] = System.nanoTime() - begin;
+                        }
+                        return null;
+                    }));
+                }
+                long begin = System.nanoTime();
+                start.countDown();
+                for (Future<?> counter : counters) {
+                    counter.get();
+                }
+                long elapsed = System.nanoTime() - begin;
+                pool.shutdown();
+                if (pipeline != null) {
+                    pipeline.close();
+                }
+
+                check(confirmed.get() == orders, "chỉ xác nhận được " + confirmed + "/" + orders + " đơn");
+                check(totalStock(hot) == stockBefore - orders, "tồn kho không bảo toàn");
+                Arrays.sort(latencies);
+                out.printf("%-8s | %7d | %10.0f | %8.2f | %8.2f%n", pipelined ? "pipeline" : "sync", threads,
+                        orders * 1e9 / elapsed, latencies[orders / 2] / 1e6, latencies[orders * 99 / 100] / 1e6);
+            }
+        }
+
+        StockLedger ledger = service.getStockLedger();
+        for (Product product : warehouse.products.findAll()) {
+            check(ledger.getStock(product.getId()) == product.getStockQuantity(),
+                    product.getId() + ": sổ cái lệch tồn kho");
+        }
+        out.println("OrderPipelineBenchmark OK: tồn kho bảo toàn, sổ cái khớp");
+    }
+
+    private static long totalStock(List<Product> products) {
+        long total = 0;
+        for (Product product : products) {
+            total += product.getStockQuantity();
+        }
+        return total;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
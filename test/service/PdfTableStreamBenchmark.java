@@ -0,0 +1,105 @@
+package service;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.Element;
+import com.itextpdf.text.PageSize;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.pdf.PdfPTable;
+import com.itextpdf.text.pdf.PdfWriter;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * Ghi 1 bảng PDF 7 cột với số dòng lớn (mặc định 1.000.000) ra luồng bỏ đi, in thời gian và
+ * đỉnh bộ nhớ heap. Chế độ "stream" dùng PdfTableStream (bộ nhớ không phụ thuộc số dòng);
+ * chế độ "full" dựng cả PdfPTable rồi mới add như cách cũ, để so sánh.
+ * Chạy với heap nhỏ (vd: -Xmx64m): chế độ stream chạy hết 1.000.000 dòng, chế độ full hết bộ
+ * nhớ (OutOfMemoryError) từ khoảng 100.000 dòng.
+ * Không nằm trong RunTests (chạy lâu); chạy riêng:
+ *   java -Xmx64m -cp out/test:lib/itextpdf-5.5.13.3.jar service.PdfTableStreamBenchmark [số dòng] [stream|full]
+ */
+public class PdfTableStreamBenchmark {
+    private static final String[] HEADERS = {"ID", "Tên", "Loại", "Giá nhập", "Giá bán", "Tồn kho", "Giá trị"};
+    private static final float[] WIDTHS = {1.2f, 3f, 1.5f, 1.5f, 1.5f, 1f, 1.8f};
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        boolean full = args.length > 1 && args[1].equals("full");
+
+        Document document = new Document(PageSize.A4.rotate());
+        PdfWriter.getInstance(document, OutputStream.nullOutputStream());
+        document.open();
+        document.add(new Paragraph("PdfTableStreamBenchmark"));
+
+        resetPeakHeap();
+        long begin = System.nanoTime();
+        if (full) {
+            writeFullTable(document, rows);
+        } else {
+            writeStreamed(document, rows);
+        }
+        document.close();
+        long elapsed = System.nanoTime() - begin;
+
+        System.out.printf("%s | %,d dòng | %.1f s | đỉnh heap %d MB (tối đa %d MB)%n",
+                full ? "full" : "stream", rows, elapsed / 1e9, peakHeap() >> 20,
+                Runtime.getRuntime().maxMemory() >> 20);
+    }
+
+    private static void writeStreamed(Document document, int rows) throws Exception {
+        PdfTableStream table = new PdfTableStream(document, HEADERS, WIDTHS);
+        for (int i = 0; i < rows; i++) {
+            table.text("P" + i);
+            table.text("Sản phẩm " + i);
+            table.text(i % 2 == 0 ? "ELECTRONICS" : "FOOD");
+            table.number(String.format("%,d", 1000 + i % 997));
+            table.number(String.format("%,d", 1500 + i % 991));
+            table.number(Integer.toString(i % 500));
+            table.number(String.format("%,d", (1000 + i % 997) * (i % 500)));
+        }
+        table.total("TỔNG", 6, Element.ALIGN_RIGHT);
+        table.total(Integer.toString(rows));
+        table.finish();
+    }
+
+    private static void writeFullTable(Document document, int rows) throws Exception {
+        PdfPTable table = new PdfPTable(HEADERS.length);
+        table.setWidthPercentage(100);
+        table.setWidths(WIDTHS);
+        for (String header : HEADERS) {
+            table.addCell(header);
+        }
+        for (int i = 0; i < rows; i++) {
+            table.addCell("P" + i);
+            table.addCell("Sản phẩm " + i);
+            table.addCell(i % 2 == 0 ? "ELECTRONICS" : "FOOD");
+            table.addCell(String.format("%,d", 1000 + i % 997));
+            table.addCell(String.format("%,d", 1500 + i % 991));
+            table.addCell(Integer.toString(i % 500));
+            table.addCell(String.format("%,d", (1000 + i % 997) * (i % 500)));
+        }
+        document.add(table);
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    // Tổng đỉnh sử dụng của các vùng heap (xấp xỉ trên của đỉnh heap thực tế)
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,128 @@
+package service;
+
+import domain.Electronics;
+import domain.OrderItem;
+import domain.Product;
+import exception.OutOfStockException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Nhiều luồng cùng đặt trước, xác nhận (commit) và hủy (release) các đơn nhiều sản phẩm trên
+ * vài sản phẩm ít hàng: không đặt vượt số khả dụng, tồn kho chỉ giảm đúng phần đã commit và
+ * số còn đặt trước bằng tổng các đơn chưa commit/release.
+ * Số khả dụng chỉ được kiểm tra sau khi các luồng dừng: commit() trừ tồn kho trước rồi mới bỏ
+ * phần đặt trước, nên trong lúc chuyển số khả dụng có thể tạm thời bị tính thiếu (âm).
+ */
+public class ReservationLedgerStressTest {
+    private static final int THREADS = 8;
+    private static final int ORDERS_PER_THREAD = 20_000;
+    private static final int INITIAL_STOCK = 30;
+
+    public static void main(String[] args) throws Exception {
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            products.add(new Electronics("P-RES" + i, "Reserve " + i, "Test", 1, 2, INITIAL_STOCK, 12));
+        }
+        ReservationLedger ledger = new ReservationLedger();
+        AtomicLong committedUnits = new AtomicLong();
+        AtomicLong restocked = new AtomicLong();
+        AtomicInteger reservedOrders = new AtomicInteger();
+        AtomicInteger rejectedOrders = new AtomicInteger();
+        Map<String, List<OrderItem>> held = new ConcurrentHashMap<>();
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            workers.add(pool.submit(() -> {
+                Random random = new Random(thread);
+                start.await();
+                for (int i = 0; i < ORDERS_PER_THREAD; i++) {
+                    String orderId = "O-" + thread + "-" + i;
+                    List<OrderItem> items = new ArrayList<>();
+                    for (Product product : products) {
+                        if (random.nextBoolean()) {
+                            items.add(new OrderItem(product, 1 + random.nextInt(3), 1));
+                        }
+                    }
+                    if (items.isEmpty()) {
+                        continue;
+                    }
+
+                    try {
+                        ledger.reserve(orderId, items);
+                        reservedOrders.incrementAndGet();
+                    } catch (OutOfStockException e) {
+                        rejectedOrders.incrementAndGet();
+                        // Nhập thêm 1 sản phẩm để kho không cạn hẳn
+                        items.get(0).getProduct().increaseStock(1);
+                        restocked.incrementAndGet();
+                        continue;
+                    }
+                    switch (random.nextInt(3)) {
+                        case 0:
+                            ledger.commit(orderId);
+                            for (OrderItem item : items) {
+                                committedUnits.addAndGet(item.getQuantity());
+                            }
+                            break;
+                        case 1:
+                            ledger.release(orderId);
+                            break;
+                        default:
+                            held.put(orderId, items);
+                            break;
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        pool.shutdown();
+
+        long stock = 0;
+        long reserved = 0;
+        for (Product product : products) {
+            check(product.getStockQuantity() >= 0, product.getId() + ": tồn kho âm");
+            check(ledger.getAvailable(product) >= 0, product.getId() + ": đặt vượt số khả dụng");
+            stock += product.getStockQuantity();
+            reserved += ledger.getReserved(product.getId());
+        }
+        long heldUnits = 0;
+        for (Map.Entry<String, List<OrderItem>> order : held.entrySet()) {
+            check(ledger.isReserved(order.getKey()), "đơn đang giữ mất phần đặt trước: " + order.getKey());
+            for (OrderItem item : order.getValue()) {
+                heldUnits += item.getQuantity();
+            }
+        }
+
+        check(reservedOrders.get() > 0 && rejectedOrders.get() > 0, "kịch bản không tạo tranh chấp hết hàng");
+        check(stock == 3L * INITIAL_STOCK + restocked.get() - committedUnits.get(),
+                "tồn kho không bảo toàn: " + stock);
+        check(reserved == heldUnits, "số đặt trước " + reserved + " != phần của các đơn đang giữ " + heldUnits);
+
+        System.out.println("ReservationLedgerStressTest OK: " + reservedOrders + " đơn đặt được, "
+                + rejectedOrders + " đơn hết hàng, " + held.size() + " đơn còn giữ");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package service;
+
+import domain.*;
+
+import java.io.PrintStream;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Giá vốn và loại khách của đơn xuất được chụp lúc xác nhận: sửa giá nhập sản phẩm và loại
+ * khách hàng ngay sau khi xác nhận (trước khi có báo cáo nào đọc snapshot) không làm đổi
+ * doanh số của đơn đó; snapshot giữ bản sao item/sản phẩm riêng, không phải đối tượng đang dùng.
+ * Báo cáo bán chạy in tên hiện tại của sản phẩm đã đổi tên, không phải tên lúc bán.
+ */
+public class SalesSnapshotTest {
+    private static final LocalDate DAY = LocalDate.of(2099, 1, 1);
+
+    public static void main(String[] args) throws Exception {
+        PrintStream out = TestWarehouse.silenceStdout();
+        TestWarehouse warehouse = TestWarehouse.copyOfData();
+        try {
+            run(warehouse, out);
+            renamedProductShowsCurrentName(warehouse, out);
+        } finally {
+            System.setOut(out);
+            warehouse.delete();
+        }
+    }
+
+    private static void run(TestWarehouse warehouse, PrintStream out) throws Exception {
+        WarehouseService service = warehouse.service;
+        Product product = warehouse.products.findAll().get(0);
+        Customer customer = warehouse.customers.findAll().get(0);
+        CustomerType typeAtConfirmation = customer.getType();
+        CustomerType otherType = CustomerType.values()[(typeAtConfirmation.ordinal() + 1) % CustomerType.values().length];
+        service.adjustStock(product.getId(), service.getReservations().getReserved(product.getId()) + 10);
+
+        ExportOrder order = new ExportOrder(DAY, customer, "Snapshot");
+        order.addItem(new OrderItem(product, 3, product.getSalePrice()));
+        warehouse.orders.addExportOrder(order);
+        service.confirmExport(order.getId());
+        double costAtConfirmation = 3 * product.getImportPrice();
+
+        // Sửa giá nhập và loại khách trước khi snapshot gộp đơn vào khối doanh số
+        product.setImportPrice(product.getImportPrice() * 2 + 1000);
+        warehouse.products.update(product);
+        customer.setType(otherType);
+        warehouse.customers.update(customer);
+
+        InventorySnapshot snapshot = service.getSnapshots().snapshot();
+        SalesCube.Measures day = snapshot.getSales().query(DAY, DAY);
+        check(day.getOrders() == 1, "đơn không có trong khối doanh số");
+        check(day.getCost() == costAtConfirmation, "giá vốn lấy theo giá nhập sau khi xác nhận: " + day.getCost());
+        check(snapshot.getSales().query(DAY, DAY, null, typeAtConfirmation).getOrders() == 1,
+                "loại khách lấy theo lúc snapshot thay vì lúc xác nhận");
+        check(snapshot.getSales().query(DAY, DAY, null, otherType).getOrders() == 0,
+                "đơn bị tính vào loại khách mới");
+
+        ExportOrder captured = snapshot.getExportOrdersByDateRange(DAY, DAY).get(0);
+        OrderItem item = captured.getItems().get(0);
+        check(captured != order && item != order.getItems().get(0) && item.getProduct() != product,
+                "snapshot dùng chung item/sản phẩm với dữ liệu đang sửa");
+        check(item.getUnitCost() * item.getQuantity() == costAtConfirmation, "item trong snapshot mất giá vốn");
+
+        out.println("SalesSnapshotTest OK: giá vốn và loại khách giữ theo lúc xác nhận");
+    }
+
+    private static void renamedProductShowsCurrentName(TestWarehouse warehouse, PrintStream out) throws Exception {
+        Product product = warehouse.products.findAll().get(0); // đã bán ở bước trước
+        product.setName("Tên mới sau khi bán");
+        warehouse.products.update(product);
+
+        ReportService reports = new ReportService(warehouse.service.getSnapshots());
+        List<String> top = reports.getTopSellingProducts(warehouse.products.findAll().size());
+        String line = null;
+        for (String entry : top) {
+            if (entry.startsWith(product.getId() + " - ")) {
+                line = entry;
+            }
+        }
+        check(line != null, product.getId() + " không có trong danh sách bán chạy");
+        check(line.contains("Tên mới sau khi bán"), "báo cáo bán chạy in tên cũ: " + line);
+
+        out.println("SalesSnapshotTest OK: báo cáo bán chạy dùng tên hiện tại");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
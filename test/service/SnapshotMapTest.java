@@ -0,0 +1,102 @@
+package service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Thêm/sửa/xóa ngẫu nhiên trên SnapshotMap và trên LinkedHashMap làm mốc: thứ tự thêm vào,
+ * tra cứu và truy vấn theo khoảng ngày (sắp theo ngày, cùng ngày giữ thứ tự thêm vào) phải
+ * khớp nhau; các phiên bản cũ giữ nguyên nội dung sau khi đã tạo phiên bản mới.
+ */
+public class SnapshotMapTest {
+    private static final int OPERATIONS = 20_000;
+    private static final int IDS = 500;
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        SnapshotMap<Item> map = SnapshotMap.empty(item -> item.date);
+        Map<String, Item> expected = new LinkedHashMap<>();
+        List<SnapshotMap<Item>> versions = new ArrayList<>();
+        List<List<Item>> versionValues = new ArrayList<>();
+
+        for (int i = 0; i < OPERATIONS; i++) {
+            String id = "ID" + random.nextInt(IDS);
+            if (random.nextInt(4) == 0) {
+                map = map.remove(id);
+                expected.remove(id);
+            } else {
+                Item item = new Item(id, START.plusDays(random.nextInt(60)), i);
+                map = map.put(id, item);
+                expected.put(id, item);
+            }
+
+            if (i % 1000 == 0) {
+                versions.add(map);
+                versionValues.add(new ArrayList<>(expected.values()));
+            }
+            if (i % 97 == 0) {
+                LocalDate from = START.plusDays(random.nextInt(60));
+                LocalDate to = from.plusDays(random.nextInt(20) - 2);
+                check(map.between(from, to).equals(range(expected, from, to)),
+                        "khoảng " + from + ".." + to + " lệch ở thao tác " + i);
+            }
+        }
+
+        check(map.size() == expected.size(), "kích thước lệch");
+        check(map.values().equals(new ArrayList<>(expected.values())), "thứ tự thêm vào lệch");
+        check(map.ids().equals(new ArrayList<>(expected.keySet())), "thứ tự ID lệch");
+        for (int i = 0; i < IDS; i++) {
+            String id = "ID" + i;
+            check(map.get(id) == expected.get(id), "tra cứu " + id + " lệch");
+        }
+        for (int i = 0; i < versions.size(); i++) {
+            check(versions.get(i).values().equals(versionValues.get(i)), "phiên bản cũ " + i + " bị đổi");
+        }
+        check(map.cleared().size() == 0 && map.cleared().between(START, START.plusDays(60)).isEmpty(),
+                "cleared() còn dữ liệu");
+
+        System.out.println("SnapshotMapTest OK: " + map.size() + " phần tử, " + versions.size() + " phiên bản cũ");
+    }
+
+    // Cách làm cũ: sắp ổn định toàn bộ theo ngày rồi lọc
+    private static List<Item> range(Map<String, Item> items, LocalDate from, LocalDate to) {
+        List<Item> sorted = new ArrayList<>(items.values());
+        sorted.sort(Comparator.comparing(item -> item.date));
+        List<Item> result = new ArrayList<>();
+        for (Item item : sorted) {
+            if (!item.date.isBefore(from) && !item.date.isAfter(to)) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    private static final class Item {
+        final String id;
+        final LocalDate date;
+        final int revision;
+
+        Item(String id, LocalDate date, int revision) {
+            this.id = id;
+            this.date = date;
+            this.revision = revision;
+        }
+
+        @Override
+        public String toString() {
+            return id + "@" + date + "#" + revision;
+        }
+    }
+}
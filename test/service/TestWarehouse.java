@@ -0,0 +1,105 @@
+package service;
+
+import repository.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Kho dùng cho test: bản sao thư mục data/ trong 1 thư mục tạm, dựng đủ repository
+ * và WarehouseService giống ConsoleMenu (chế độ nhật ký bật, tải dữ liệu, chiếu lại tồn kho).
+ */
+public final class TestWarehouse {
+    public final Path dir;
+    public final ProductRepository products;
+    public final CustomerRepository customers;
+    public final SupplierRepository suppliers;
+    public final OrderRepository orders;
+    public final GroupCommitWriter commitWriter;
+    public final WarehouseService service;
+
+    private TestWarehouse(Path dir) throws IOException {
+        this.dir = dir;
+        products = new ProductRepository(file("products.csv"));
+        customers = new CustomerRepository(file("customers.csv"));
+        suppliers = new SupplierRepository(file("suppliers.csv"));
+        orders = new OrderRepository(file("import_orders.csv"), file("export_orders.csv"),
+                file("order_items.csv"));
+        orders.setCustomerRepository(customers);
+        orders.setSupplierRepository(suppliers);
+        orders.setProductRepository(products);
+
+        products.setJournalEnabled(true);
+        customers.setJournalEnabled(true);
+        suppliers.setJournalEnabled(true);
+        orders.setJournalEnabled(true);
+
+        StockLedger stockLedger = StockLedger.besides(products.getFilePath());
+        commitWriter = new GroupCommitWriter(stockLedger, products, orders);
+        service = new WarehouseService(products, orders, customers, suppliers,
+                new SnapshotPublisher(products, orders), stockLedger, commitWriter);
+        try {
+            new StartupLoader(products, customers, suppliers, orders).load();
+            service.restoreStock();
+            service.rebuildReservations();
+        } catch (IOException | RuntimeException e) {
+            commitWriter.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Chép các file CSV của data/ (thư mục làm việc) sang thư mục tạm rồi tải lên
+     */
+    public static TestWarehouse copyOfData() throws IOException {
+        Path dir = Files.createTempDirectory("warehouse-test");
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get("data"), "*.csv")) {
+            for (Path file : files) {
+                Files.copy(file, dir.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        return new TestWarehouse(dir);
+    }
+
+    /**
+     * Repository sản phẩm mới đọc lại từ đĩa (kiểm tra dữ liệu đã lưu bền)
+     */
+    public ProductRepository reloadProducts() throws IOException {
+        ProductRepository reloaded = new ProductRepository(file("products.csv"));
+        reloaded.setJournalEnabled(true);
+        reloaded.load();
+        return reloaded;
+    }
+
+    public String file(String name) {
+        return dir.resolve(name).toString();
+    }
+
+    /**
+     * Đóng writer ghi gộp rồi xóa thư mục tạm
+     */
+    public void delete() throws IOException {
+        commitWriter.close();
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * Tắt System.out (service in 1 dòng cho mỗi đơn xác nhận)
+     * @return System.out cũ để trả lại sau khi chạy
+     */
+    public static PrintStream silenceStdout() {
+        PrintStream previous = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        return previous;
+    }
+}